@@ -0,0 +1,60 @@
+package com.harvestdirect.app.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Moves existing tables from identity columns to the pooled id sequences. Each
+ * sequence is advanced past the highest id already in its table, and the old
+ * identity default is dropped so that an insert without an id fails instead of
+ * taking a value from the retired identity sequence. Runs once the schema is
+ * updated and before any runner or request can insert rows; every step is a
+ * no-op on an aligned database.
+ */
+@Slf4j
+@Component
+public class IdSequenceAligner implements SmartInitializingSingleton {
+
+    private static final Map<String, String> SEQUENCES_BY_TABLE = Map.of(
+            "users", "users_seq",
+            "products", "products_seq",
+            "orders", "orders_seq",
+            "order_items", "order_items_seq",
+            "cart_items", "cart_items_seq");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    public IdSequenceAligner(
+            JdbcTemplate jdbcTemplate,
+            @Value("${spring.datasource.url:}") String datasourceUrl) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = datasourceUrl.startsWith("jdbc:postgresql:");
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        SEQUENCES_BY_TABLE.forEach(this::align);
+    }
+
+    private void align(String table, String sequence) {
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id DROP IDENTITY IF EXISTS");
+
+        // The pooled optimizer treats the sequence value as the top of the last block handed out
+        Long alignedTo = jdbcTemplate.query(
+                "SELECT setval('" + sequence + "', t.max_id) FROM (SELECT MAX(id) AS max_id FROM " + table + ") t, "
+                        + sequence + " s WHERE t.max_id >= s.last_value",
+                rs -> rs.next() ? rs.getLong(1) : null);
+        if (alignedTo != null) {
+            log.info("Advanced sequence {} past existing {} ids to {}", sequence, table, alignedTo);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.harvestdirect.app.config;
+
+import com.harvestdirect.app.service.AnalyticsCache;
+import com.harvestdirect.app.service.SalesRollupService;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfills or verifies the daily sales rollups at startup when the application
+ * is started with {@code --rebuild-sales-rollup} or {@code --check-sales-rollup}
+ */
+@Component
+public class SalesRollupCommand implements ApplicationRunner {
+
+    private final SalesRollupService salesRollupService;
+    private final AnalyticsCache analyticsCache;
+
+    public SalesRollupCommand(SalesRollupService salesRollupService, AnalyticsCache analyticsCache) {
+        this.salesRollupService = salesRollupService;
+        this.analyticsCache = analyticsCache;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (args.containsOption("rebuild-sales-rollup")) {
+            SalesRollupService.RollupReport report = salesRollupService.rebuild();
+            analyticsCache.invalidateAll();
+            System.out.println("Rebuilt sales rollup in " + report.chunks() + " chunks ("
+                    + report.elapsedMillis() + " ms)");
+        }
+        if (args.containsOption("check-sales-rollup")) {
+            SalesRollupService.RollupReport report = salesRollupService.checkDrift();
+            System.out.println("Sales rollup drift check: " + report.driftRows() + " rows differ from orders");
+        }
+    }
+}
@@ -44,8 +44,10 @@ public class SecurityConfig {
                 .requestMatchers("/products").permitAll()
                 .requestMatchers("/api/products").permitAll()
                 .requestMatchers("/api/products/search").permitAll()
+                .requestMatchers("/api/products/suggest").permitAll()
                 .requestMatchers("/api/products/category/**").permitAll()
                 .requestMatchers("/admin/**").hasRole("ADMIN")
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
                 .requestMatchers("/seller/**").hasAnyRole("FARMER", "FISHERMAN")
                 .requestMatchers("/wholesaler/**").hasRole("WHOLESALER")
                 .anyRequest().authenticated()
@@ -2,7 +2,10 @@ package com.harvestdirect.app.controller;
 
 import com.harvestdirect.app.model.User;
 import com.harvestdirect.app.service.AnalyticsService;
+import com.harvestdirect.app.service.DashboardMetricsLoader;
+import com.harvestdirect.app.service.DashboardMetricsLoader.DashboardMetrics;
 import com.harvestdirect.app.service.UserService;
+import com.harvestdirect.app.util.TimeSeries;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -15,8 +18,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @Controller
 @RequestMapping("/analytics")
@@ -24,10 +30,15 @@ public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
     private final UserService userService;
+    private final DashboardMetricsLoader dashboardMetricsLoader;
 
-    public AnalyticsController(AnalyticsService analyticsService, UserService userService) {
+    public AnalyticsController(
+            AnalyticsService analyticsService,
+            UserService userService,
+            DashboardMetricsLoader dashboardMetricsLoader) {
         this.analyticsService = analyticsService;
         this.userService = userService;
+        this.dashboardMetricsLoader = dashboardMetricsLoader;
     }
 
     @GetMapping
@@ -35,6 +46,7 @@ public class AnalyticsController {
             Authentication authentication,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false, defaultValue = "day") String granularity,
             Model model) {
         
         String username = authentication.getName();
@@ -48,6 +60,7 @@ public class AnalyticsController {
         if (endDate == null) {
             endDate = LocalDate.now();
         }
+        TimeSeries.Granularity bucketSize = TimeSeries.Granularity.from(granularity);
         
         // Convert LocalDate to Date for service methods
         Date start = Date.from(startDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
@@ -56,33 +69,42 @@ public class AnalyticsController {
         model.addAttribute("user", user);
         model.addAttribute("startDate", startDate);
         model.addAttribute("endDate", endDate);
+        model.addAttribute("granularity", bucketSize.name().toLowerCase());
         
         // Different analytics based on user role
         if (user.getRole() == User.UserRole.FARMER || user.getRole() == User.UserRole.FISHERMAN) {
-            // Seller analytics
-            Map<LocalDate, BigDecimal> salesOverTime = analyticsService.getSellerSalesOverTime(user, start, end);
-            BigDecimal totalSales = analyticsService.getSellerTotalSales(user, start, end);
-            Map<String, BigDecimal> salesByCategory = analyticsService.getSellerSalesByCategory(user, start, end);
-            Map<String, Object> topProducts = Map.of("products", analyticsService.getTopSellingProducts(user, start, end, 5));
-            Map<String, Object> orderStatusData = Map.of("statusCounts", analyticsService.getOrderCountByStatus(user, start, end));
+            // Seller analytics, the metrics are independent and may load concurrently
+            DashboardMetrics metrics = dashboardMetricsLoader.load(Map.<String, Supplier<?>>of(
+                    "salesOverTime", () -> analyticsService.getSellerSalesOverTime(user, start, end),
+                    "salesByCategory", () -> analyticsService.getSellerSalesByCategory(user, start, end),
+                    "topProducts", () -> analyticsService.getTopSellingProducts(user, start, end, 5),
+                    "orderStatusData", () -> analyticsService.getOrderCountByStatus(user, start, end)));
+            TimeSeries salesOverTime = metrics.get("salesOverTime", null);
             
-            model.addAttribute("salesOverTime", salesOverTime);
-            model.addAttribute("totalSales", totalSales);
-            model.addAttribute("salesByCategory", salesByCategory);
-            model.addAttribute("topProducts", topProducts);
-            model.addAttribute("orderStatusData", orderStatusData);
+            model.addAttribute("salesOverTime", salesOverTime != null ? salesOverTime.toMap(bucketSize) : Collections.emptyMap());
+            model.addAttribute("totalSales", salesOverTime != null ? salesOverTime.total() : null);
+            model.addAttribute("salesByCategory", metrics.get("salesByCategory", Collections.emptyMap()));
+            model.addAttribute("topProducts", Map.of("products", metrics.get("topProducts", List.of())));
+            model.addAttribute("orderStatusData", Map.of("statusCounts", metrics.get("orderStatusData", Collections.emptyMap())));
+            model.addAttribute("unavailableMetrics", metrics.unavailable());
             
             return "analytics/seller";
         }
         else if (user.getRole() == User.UserRole.WHOLESALER) {
-            // Buyer analytics
-            Map<LocalDate, BigDecimal> purchasesOverTime = analyticsService.getBuyerPurchasesOverTime(user, start, end);
-            Map<String, BigDecimal> purchasesByCategory = analyticsService.getBuyerPurchasesByCategory(user, start, end);
-            Map<String, Object> frequentProducts = Map.of("products", analyticsService.getFrequentlyPurchasedProducts(user, 5));
+            // Buyer analytics, the metrics are independent and may load concurrently
+            DashboardMetrics metrics = dashboardMetricsLoader.load(Map.<String, Supplier<?>>of(
+                    "purchasesOverTime", () -> analyticsService.getBuyerPurchasesOverTime(user, start, end),
+                    "purchasesByCategory", () -> analyticsService.getBuyerPurchasesByCategory(user, start, end),
+                    "frequentProducts", () -> analyticsService.getFrequentlyPurchasedProducts(user, 5)));
+            TimeSeries purchasesOverTime = metrics.get("purchasesOverTime", null);
+            Map<LocalDate, BigDecimal> purchaseAmounts = purchasesOverTime != null
+                    ? purchasesOverTime.toMap(bucketSize)
+                    : Collections.emptyMap();
             
-            model.addAttribute("purchasesOverTime", purchasesOverTime);
-            model.addAttribute("purchasesByCategory", purchasesByCategory);
-            model.addAttribute("frequentProducts", frequentProducts);
+            model.addAttribute("purchasesOverTime", purchaseAmounts);
+            model.addAttribute("purchasesByCategory", metrics.get("purchasesByCategory", Collections.emptyMap()));
+            model.addAttribute("frequentProducts", Map.of("products", metrics.get("frequentProducts", List.of())));
+            model.addAttribute("unavailableMetrics", metrics.unavailable());
             
             return "analytics/buyer";
         }
@@ -1,51 +1,78 @@
 package com.harvestdirect.app.controller;
 
+import com.harvestdirect.app.dto.ExportJobStatus;
+import com.harvestdirect.app.export.AnalyticsExportFormat;
 import com.harvestdirect.app.model.User;
-import com.harvestdirect.app.service.AnalyticsExportService;
+import com.harvestdirect.app.service.ExportFileCache;
+import com.harvestdirect.app.service.ExportFileCache.OpenExport;
+import com.harvestdirect.app.service.ExportJob;
+import com.harvestdirect.app.service.ExportJobService;
+import com.harvestdirect.app.service.MonthlyReportService;
 import com.harvestdirect.app.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.ZoneId;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Controller
 @RequestMapping("/analytics/export")
 public class AnalyticsExportController {
 
-    private final AnalyticsExportService analyticsExportService;
+    private final ExportFileCache exportFileCache;
+    private final ExportJobService exportJobService;
+    private final MonthlyReportService monthlyReportService;
     private final UserService userService;
 
-    public AnalyticsExportController(AnalyticsExportService analyticsExportService, UserService userService) {
-        this.analyticsExportService = analyticsExportService;
+    public AnalyticsExportController(
+            ExportFileCache exportFileCache,
+            ExportJobService exportJobService,
+            MonthlyReportService monthlyReportService,
+            UserService userService) {
+        this.exportFileCache = exportFileCache;
+        this.exportJobService = exportJobService;
+        this.monthlyReportService = monthlyReportService;
         this.userService = userService;
     }
 
     @GetMapping("/download")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<byte[]> downloadAnalyticsData(
+    public void downloadAnalyticsData(
             Authentication authentication,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
             @RequestParam(required = false, defaultValue = "csv") String format,
-            @RequestParam(required = false, defaultValue = "overview,sales,products,orders,purchases") List<String> sections) throws IOException {
+            @RequestParam(required = false, defaultValue = "overview,sales,products,orders,purchases") List<String> sections,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
         
-        String username = authentication.getName();
-        User user = userService.getUserByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        User user = getCurrentUser(authentication);
         
         // Set default date range if not provided
         if (startDate == null) {
@@ -59,36 +86,204 @@ public class AnalyticsExportController {
         Date start = Date.from(startDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
         Date end = Date.from(endDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
         
-        // Prepare the response headers
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(getContentType(format));
-        headers.setContentDispositionFormData("attachment", getFilename(user, format));
-        
-        // Generate the export data based on user role
-        byte[] data;
-        if (user.getRole() == User.UserRole.FARMER || user.getRole() == User.UserRole.FISHERMAN) {
-            data = analyticsExportService.exportSellerAnalyticsCSV(user, start, end, sections);
-        } else if (user.getRole() == User.UserRole.WHOLESALER) {
-            data = analyticsExportService.exportBuyerAnalyticsCSV(user, start, end, sections);
-        } else if (user.getRole() == User.UserRole.ADMIN) {
-            data = analyticsExportService.exportAdminAnalyticsCSV(sections);
+        // Reuse the stored export while the user's data is unchanged, PDF and unknown formats are exported as CSV
+        AnalyticsExportFormat exportFormat = AnalyticsExportFormat.from(format);
+        String key = exportFileCache.keyFor(user, start, end, sections, exportFormat);
+        String etag = "\"" + key + "\"";
+        
+        response.setContentType(exportFormat.getContentType().toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(getFilename(user, exportFormat)).build().toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        
+        // The client already has this export; the key is known without generating it
+        if (matchesEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), key)) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        
+        try (OpenExport export = exportFileCache.open(key, user, start, end, sections, exportFormat)) {
+            sendExport(export, etag, request, response);
+        }
+    }
+    
+    private void sendExport(OpenExport export, String etag, HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
+        // Ranges refer to the uncompressed file, and are ignored if the client's copy is outdated
+        long size = export.file().size();
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                HttpRange requested = ranges.get(0);
+                long first = requested.getRangeStart(size);
+                long last = requested.getRangeEnd(size);
+                response.setHeader(HttpHeaders.ETAG, etag);
+                if (first >= size || first > last) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + first + "-" + last + "/" + size);
+                sendFile(export.file(), first, last - first + 1, response);
+                return;
+            }
+        }
+        
+        // Whole file, precompressed when the client accepts gzip
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (export.gzipFile() != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.setHeader(HttpHeaders.ETAG, "\"" + export.key() + "-gz\"");
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            sendFile(export.gzipFile(), 0, export.gzipFile().size(), response);
         } else {
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            sendFile(export.file(), 0, size, response);
+        }
+    }
+    
+    @GetMapping("/monthly")
+    @PreAuthorize("hasAnyRole('FARMER', 'FISHERMAN')")
+    public void downloadMonthlyReport(
+            Authentication authentication,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        
+        User user = getCurrentUser(authentication);
+        
+        // Months that have not been pre-generated are exported on demand
+        Optional<Path> report = monthlyReportService.findReport(user, month);
+        if (report.isEmpty()) {
+            response.sendRedirect(request.getContextPath()
+                    + "/analytics/export/download?format=csv&sections=overview,sales,products,orders"
+                    + "&startDate=" + month.atDay(1) + "&endDate=" + month.atEndOfMonth());
+            return;
         }
         
-        return new ResponseEntity<>(data, headers, HttpStatus.OK);
+        response.setContentType(AnalyticsExportFormat.CSV.getContentType().toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("harvestdirect_seller_report_" + month + ".csv").build().toString());
+        sendFile(report.get(), 0, Files.size(report.get()), response);
     }
     
-    private MediaType getContentType(String format) {
-        return switch (format.toLowerCase()) {
-            case "xlsx" -> MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            case "pdf" -> MediaType.APPLICATION_PDF;
-            case "json" -> MediaType.APPLICATION_JSON;
-            default -> MediaType.TEXT_PLAIN;
-        };
+    /**
+     * Check an If-None-Match header against an export, whichever encoding the client received
+     */
+    private boolean matchesEtag(String ifNoneMatch, String key) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String value = tag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals("\"" + key + "\"") || value.equals("\"" + key + "-gz\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @PostMapping("/jobs")
+    @PreAuthorize("isAuthenticated()")
+    @ResponseBody
+    public ResponseEntity<ExportJobStatus> submitExportJob(
+            Authentication authentication,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false, defaultValue = "csv") String format,
+            @RequestParam(required = false, defaultValue = "overview,sales,products,orders,purchases") List<String> sections) throws IOException {
+        
+        User user = getCurrentUser(authentication);
+        
+        // Set default date range if not provided
+        if (startDate == null) {
+            startDate = LocalDate.now().minusDays(30);
+        }
+        if (endDate == null) {
+            endDate = LocalDate.now();
+        }
+        
+        Date start = Date.from(startDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Date end = Date.from(endDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        
+        try {
+            ExportJob job = exportJobService.submit(user, start, end, AnalyticsExportFormat.from(format), sections);
+            return new ResponseEntity<>(job.toStatus(), HttpStatus.ACCEPTED);
+        } catch (IllegalStateException e) {
+            ExportJobStatus rejected = new ExportJobStatus(null, "REJECTED", format, 0, 0, e.getMessage());
+            return new ResponseEntity<>(rejected, HttpStatus.TOO_MANY_REQUESTS);
+        }
+    }
+    
+    @GetMapping("/jobs/{id}")
+    @PreAuthorize("isAuthenticated()")
+    @ResponseBody
+    public ResponseEntity<ExportJobStatus> getExportJobStatus(Authentication authentication, @PathVariable String id) {
+        User user = getCurrentUser(authentication);
+        return exportJobService.getJob(id, user)
+                .map(job -> ResponseEntity.ok(job.toStatus()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+    
+    @GetMapping("/jobs/{id}/file")
+    @PreAuthorize("isAuthenticated()")
+    public void downloadExportJobFile(
+            Authentication authentication,
+            @PathVariable String id,
+            HttpServletResponse response) throws IOException {
+        
+        User user = getCurrentUser(authentication);
+        ExportJob job = exportJobService.getJob(id, user).orElse(null);
+        if (job == null || job.getStatus() != ExportJob.Status.COMPLETED) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        
+        response.setContentType(job.getFormat().getContentType().toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(getFilename(user, job.getFormat())).build().toString());
+        sendFile(job.getFile(), 0, Files.size(job.getFile()), response);
+    }
+    
+    /**
+     * Send part of a file as the response body, handing it to the response channel
+     * without copying it through the heap
+     */
+    private void sendFile(Path path, long position, long length, HttpServletResponse response) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            sendFile(file, position, length, response);
+        }
+    }
+    
+    private void sendFile(FileChannel file, long position, long length, HttpServletResponse response) throws IOException {
+        response.setContentLengthLong(length);
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        long end = position + length;
+        while (position < end) {
+            position += file.transferTo(position, end - position, out);
+        }
+    }
+    
+    private User getCurrentUser(Authentication authentication) {
+        String username = authentication.getName();
+        return userService.getUserByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
     }
     
-    private String getFilename(User user, String format) {
+    private String getFilename(User user, AnalyticsExportFormat format) {
         String userType = switch (user.getRole()) {
             case FARMER, FISHERMAN -> "seller";
             case WHOLESALER -> "buyer";
@@ -97,6 +292,6 @@ public class AnalyticsExportController {
         };
         
         String timestamp = LocalDate.now().toString();
-        return "harvestdirect_" + userType + "_analytics_" + timestamp + "." + format.toLowerCase();
+        return "harvestdirect_" + userType + "_analytics_" + timestamp + "." + format.getExtension();
     }
-}
\ No newline at end of file
+}
@@ -1,49 +1,137 @@
 package com.harvestdirect.app.controller;
 
-import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.dto.FacetedProductPage;
+import com.harvestdirect.app.dto.ProductFilter;
+import com.harvestdirect.app.dto.ProductPage;
+import com.harvestdirect.app.model.User;
 import com.harvestdirect.app.service.ProductService;
+import com.harvestdirect.app.service.ProductSort;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Controller
 public class HomeController {
 
     private final ProductService productService;
+    private final int pageSize;
+    private final int featuredSize;
 
-    public HomeController(ProductService productService) {
+    public HomeController(
+            ProductService productService,
+            @Value("${catalog.page-size:24}") int pageSize,
+            @Value("${catalog.featured-size:8}") int featuredSize) {
         this.productService = productService;
+        this.pageSize = pageSize;
+        this.featuredSize = featuredSize;
     }
 
     @GetMapping("/")
     public String homePage(Model model) {
-        List<Product> featuredProducts = productService.getAvailableProducts();
-        model.addAttribute("products", featuredProducts);
+        ProductPage featuredProducts = productService.getAvailableProductPage(ProductSort.NEWEST, null, featuredSize);
+        model.addAttribute("products", featuredProducts.products());
         return "home";
     }
 
     @GetMapping("/products")
     public String productsPage(
-            @RequestParam(required = false) String category,
+            @RequestParam(required = false) List<String> category,
             @RequestParam(required = false) String search,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Boolean available,
+            @RequestParam(required = false) List<String> role,
+            @RequestParam(required = false) List<String> price,
+            @RequestParam(required = false) List<String> unit,
             Model model) {
         
-        List<Product> products;
+        ProductSort productSort = ProductSort.from(sort);
+        model.addAttribute("sort", productSort.getParameter());
         
-        if (category != null && !category.isEmpty()) {
-            products = productService.getProductsByCategory(category);
-            model.addAttribute("categoryFilter", category);
-        } else if (search != null && !search.isEmpty()) {
-            products = productService.searchProducts(search);
+        Set<String> categories = nonEmpty(category);
+        // Category listings include unavailable products and the full catalog listing does
+        // not; the facet path defaults to the same, so a URL lists the same products either way
+        boolean listingAvailableOnly = categories.isEmpty();
+        ProductFilter filter = new ProductFilter(categories, available != null ? available : listingAvailableOnly,
+                sellerRoles(role), nonEmpty(price), nonEmpty(unit));
+        // Filters beyond a single category are answered from the facet index
+        boolean faceted = productService.isFacetFilteringAvailable()
+                && (categories.size() > 1 || filter.availableOnly() != listingAvailableOnly
+                    || !filter.sellerRoles().isEmpty() || !filter.priceBands().isEmpty() || !filter.units().isEmpty());
+        
+        if (search != null && !search.isEmpty() && categories.isEmpty()) {
+            // Search results are ranked by relevance and already bounded
+            model.addAttribute("products", productService.searchProducts(search, faceted ? filter : null));
             model.addAttribute("searchQuery", search);
-        } else {
-            products = productService.getAvailableProducts();
+            return "products";
+        }
+        
+        if (!categories.isEmpty()) {
+            model.addAttribute("categoryFilter", String.join(", ", categories));
+        }
+        
+        if (faceted) {
+            FacetedProductPage page;
+            try {
+                page = productService.getFilteredProductPage(filter, cursor, pageSize);
+            } catch (IllegalArgumentException e) {
+                page = productService.getFilteredProductPage(filter, null, pageSize);
+            }
+            model.addAttribute("products", page.products());
+            model.addAttribute("nextCursor", page.nextCursor());
+            model.addAttribute("totalMatches", page.totalMatches());
+            model.addAttribute("facets", page.facets());
+            return "products";
+        }
+        
+        String singleCategory = categories.isEmpty() ? null : categories.iterator().next();
+        ProductPage page;
+        try {
+            page = loadPage(singleCategory, productSort, cursor);
+        } catch (IllegalArgumentException e) {
+            // A cursor from another sort order or a mangled link; start over
+            page = loadPage(singleCategory, productSort, null);
         }
         
-        model.addAttribute("products", products);
+        model.addAttribute("products", page.products());
+        model.addAttribute("nextCursor", page.nextCursor());
+        if (productService.isFacetFilteringAvailable()) {
+            model.addAttribute("facets", productService.getFacetCounts(filter));
+        }
         return "products";
     }
-}
\ No newline at end of file
+
+    private ProductPage loadPage(String category, ProductSort sort, String cursor) {
+        if (category != null && !category.isEmpty()) {
+            return productService.getCategoryProductPage(category, sort, cursor, pageSize);
+        }
+        return productService.getAvailableProductPage(sort, cursor, pageSize);
+    }
+
+    private static Set<String> nonEmpty(List<String> values) {
+        Set<String> result = new HashSet<>();
+        if (values != null) {
+            values.stream().filter(value -> value != null && !value.isBlank()).forEach(result::add);
+        }
+        return result;
+    }
+
+    private static Set<User.UserRole> sellerRoles(List<String> roles) {
+        Set<User.UserRole> result = EnumSet.noneOf(User.UserRole.class);
+        for (String role : nonEmpty(roles)) {
+            for (User.UserRole candidate : User.UserRole.values()) {
+                if (candidate.name().equalsIgnoreCase(role)) {
+                    result.add(candidate);
+                }
+            }
+        }
+        return result;
+    }
+}
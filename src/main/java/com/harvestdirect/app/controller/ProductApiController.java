@@ -0,0 +1,45 @@
+package com.harvestdirect.app.controller;
+
+import com.harvestdirect.app.search.ProductSuggestionIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/products")
+public class ProductApiController {
+
+    private final ProductSuggestionIndex productSuggestionIndex;
+    private final int maxSuggestions;
+
+    public ProductApiController(
+            ProductSuggestionIndex productSuggestionIndex,
+            @Value("${search.suggest.max-results:10}") int maxSuggestions) {
+        this.productSuggestionIndex = productSuggestionIndex;
+        this.maxSuggestions = maxSuggestions;
+    }
+
+    /**
+     * Get search box completions for the text typed so far
+     * @param query the prefix
+     * @param limit the maximum number of completions
+     * @return the completions, most relevant first
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<String>> suggest(
+            @RequestParam(name = "q", required = false, defaultValue = "") String query,
+            @RequestParam(required = false) Integer limit) {
+        int count = limit != null ? Math.min(Math.max(limit, 0), maxSuggestions) : maxSuggestions;
+        // Suggestions change slowly, so let browsers reuse them while the user retypes
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(1)).cachePublic())
+                .body(productSuggestionIndex.suggest(query, count));
+    }
+}
@@ -1,10 +1,12 @@
 package com.harvestdirect.app.controller;
 
+import com.harvestdirect.app.dto.ProductCard;
 import com.harvestdirect.app.model.Product;
 import com.harvestdirect.app.model.User;
 import com.harvestdirect.app.service.ProductService;
 import com.harvestdirect.app.service.UserService;
 import jakarta.validation.Valid;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
@@ -13,6 +15,8 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.Objects;
+
 @Controller
 @RequestMapping("/products")
 public class ProductController {
@@ -27,7 +31,7 @@ public class ProductController {
 
     @GetMapping("/{id}")
     public String viewProduct(@PathVariable Long id, Model model) {
-        Product product = productService.getProductById(id)
+        ProductCard product = productService.getProductCard(id)
                 .orElseThrow(() -> new RuntimeException("Product not found"));
 
         model.addAttribute("product", product);
@@ -108,6 +112,12 @@ public class ProductController {
             throw new RuntimeException("You are not authorized to edit this product");
         }
 
+        // The form carries the version it was rendered from, so values edited before a
+        // sale or another edit cannot overwrite the stock that changed since
+        if (!Objects.equals(product.getVersion(), existingProduct.getVersion())) {
+            return redirectToConflict(id, redirectAttributes);
+        }
+
         // Update only editable fields
         existingProduct.setName(product.getName());
         existingProduct.setDescription(product.getDescription());
@@ -117,13 +127,24 @@ public class ProductController {
         existingProduct.setUnit(product.getUnit());
         existingProduct.setImageUrl(product.getImageUrl());
         existingProduct.setIsAvailable(product.getIsAvailable());
+        existingProduct.setFlashSale(product.getFlashSale());
 
-        productService.updateProduct(existingProduct);
+        try {
+            productService.updateProduct(existingProduct);
+        } catch (OptimisticLockingFailureException e) {
+            return redirectToConflict(id, redirectAttributes);
+        }
 
         redirectAttributes.addFlashAttribute("success", "Product updated successfully");
         return "redirect:/dashboard";
     }
 
+    private String redirectToConflict(Long id, RedirectAttributes redirectAttributes) {
+        redirectAttributes.addFlashAttribute("error",
+                "This product changed while you were editing it. Review the current values and save again.");
+        return "redirect:/products/edit/" + id;
+    }
+
     @PostMapping("/delete/{id}")
     @PreAuthorize("hasAnyRole('FARMER', 'FISHERMAN')")
     public String deleteProduct(
@@ -0,0 +1,7 @@
+package com.harvestdirect.app.dto;
+
+/**
+ * Number of products in one category, aggregated in the database
+ */
+public record CategoryCount(String category, Long count) {
+}
@@ -0,0 +1,9 @@
+package com.harvestdirect.app.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Sales or purchase total for one product category, aggregated in the database
+ */
+public record CategoryTotal(String category, BigDecimal total) {
+}
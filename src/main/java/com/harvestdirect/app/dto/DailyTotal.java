@@ -0,0 +1,9 @@
+package com.harvestdirect.app.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Sales or purchase total for one day, in cents
+ */
+public record DailyTotal(LocalDate day, Long cents) {
+}
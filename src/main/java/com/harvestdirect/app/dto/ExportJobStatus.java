@@ -0,0 +1,13 @@
+package com.harvestdirect.app.dto;
+
+/**
+ * Progress of a background analytics export, as reported to the client
+ */
+public record ExportJobStatus(
+        String id,
+        String status,
+        String format,
+        long rowsWritten,
+        int percentComplete,
+        String error) {
+}
@@ -0,0 +1,11 @@
+package com.harvestdirect.app.dto;
+
+/**
+ * Number of products matching the current filters that also carry one facet value
+ * @param value the value as used in filter parameters
+ * @param label the value as shown to buyers
+ * @param count the number of matching products
+ * @param selected whether the value is part of the current filters
+ */
+public record FacetCount(String value, String label, long count, boolean selected) {
+}
@@ -0,0 +1,18 @@
+package com.harvestdirect.app.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of a filtered catalog listing, with the facet counts for the filters
+ * @param products the products on this page
+ * @param nextCursor the cursor of the following page, or null if this is the last page
+ * @param totalMatches the number of products matching the filters
+ * @param facets the counts per facet value, by facet name
+ */
+public record FacetedProductPage(
+        List<ProductCard> products,
+        String nextCursor,
+        long totalMatches,
+        Map<String, List<FacetCount>> facets) {
+}
@@ -0,0 +1,14 @@
+package com.harvestdirect.app.dto;
+
+/**
+ * A product a buyer purchases often, with the number of orders it appeared in
+ */
+public record FrequentProduct(
+        Long productId,
+        String name,
+        String category,
+        String unit,
+        String imageUrl,
+        long orderCount,
+        long quantityPurchased) {
+}
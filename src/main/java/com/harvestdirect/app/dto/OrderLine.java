@@ -0,0 +1,22 @@
+package com.harvestdirect.app.dto;
+
+import com.harvestdirect.app.model.Order;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * One order item with the order and product details needed for a detail export
+ */
+public record OrderLine(
+        Long orderId,
+        Date orderDate,
+        Order.OrderStatus status,
+        String buyerName,
+        Long productId,
+        String productName,
+        String category,
+        Integer quantity,
+        BigDecimal unitPrice,
+        BigDecimal subtotal) {
+}
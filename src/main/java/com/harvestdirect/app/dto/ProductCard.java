@@ -0,0 +1,36 @@
+package com.harvestdirect.app.dto;
+
+import com.harvestdirect.app.model.Product;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * A product as shown in catalog listings, with its seller's name
+ */
+public record ProductCard(
+        Long id,
+        String name,
+        String description,
+        BigDecimal price,
+        Integer quantity,
+        String unit,
+        String category,
+        String imageUrl,
+        Boolean isAvailable,
+        Date createdAt,
+        Long sellerId,
+        String sellerName) {
+
+    /**
+     * Copy a product whose seller has been fetched with it
+     * @param product the product
+     * @return the listing entry
+     */
+    public static ProductCard from(Product product) {
+        return new ProductCard(product.getId(), product.getName(), product.getDescription(), product.getPrice(),
+                product.getQuantity(), product.getUnit(), product.getCategory(), product.getImageUrl(),
+                product.getIsAvailable(), product.getCreatedAt(), product.getSeller().getId(),
+                product.getSeller().getName());
+    }
+}
@@ -0,0 +1,22 @@
+package com.harvestdirect.app.dto;
+
+import com.harvestdirect.app.model.User;
+
+import java.util.Set;
+
+/**
+ * Catalog facet selection. Values within one facet are alternatives; the facets
+ * themselves must all match. An empty set leaves that facet unconstrained.
+ * @param categories the categories
+ * @param availableOnly whether to leave out products that cannot be ordered
+ * @param sellerRoles the seller roles, farm or fishery
+ * @param priceBands the price band values, such as "5-10"
+ * @param units the selling units
+ */
+public record ProductFilter(
+        Set<String> categories,
+        boolean availableOnly,
+        Set<User.UserRole> sellerRoles,
+        Set<String> priceBands,
+        Set<String> units) {
+}
@@ -0,0 +1,15 @@
+package com.harvestdirect.app.dto;
+
+import java.util.List;
+
+/**
+ * One page of a catalog listing
+ * @param products the products on this page
+ * @param nextCursor the cursor of the following page, or null if this is the last page
+ */
+public record ProductPage(List<ProductCard> products, String nextCursor) {
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
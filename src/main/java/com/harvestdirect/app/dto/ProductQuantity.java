@@ -0,0 +1,7 @@
+package com.harvestdirect.app.dto;
+
+/**
+ * Quantity of one product sold, aggregated in the database
+ */
+public record ProductQuantity(Long productId, Long quantity) {
+}
@@ -0,0 +1,16 @@
+package com.harvestdirect.app.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Quantity and revenue totals for one product, aggregated in the database
+ */
+public record ProductSalesTotal(
+        Long productId,
+        String name,
+        String category,
+        String unit,
+        String imageUrl,
+        Long quantitySold,
+        BigDecimal revenue) {
+}
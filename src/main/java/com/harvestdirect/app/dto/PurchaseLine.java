@@ -0,0 +1,7 @@
+package com.harvestdirect.app.dto;
+
+/**
+ * Quantity of one product bought in one order
+ */
+public record PurchaseLine(Long orderId, Long productId, Long quantity) {
+}
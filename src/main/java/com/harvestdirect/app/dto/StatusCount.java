@@ -0,0 +1,9 @@
+package com.harvestdirect.app.dto;
+
+import com.harvestdirect.app.model.Order;
+
+/**
+ * Number of orders in one status, aggregated in the database
+ */
+public record StatusCount(Order.OrderStatus status, Long count) {
+}
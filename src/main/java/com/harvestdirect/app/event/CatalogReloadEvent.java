@@ -0,0 +1,10 @@
+package com.harvestdirect.app.event;
+
+/**
+ * Published when the catalog may have changed in ways no product events describe,
+ * such as a change on another node too large to name its products, or changes
+ * missed while this node was not listening. In-memory structures built from the
+ * catalog rebuild themselves from the database.
+ */
+public record CatalogReloadEvent() {
+}
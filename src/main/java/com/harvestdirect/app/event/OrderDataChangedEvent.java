@@ -0,0 +1,11 @@
+package com.harvestdirect.app.event;
+
+import java.util.Date;
+
+/**
+ * Published when an order is created or its order or payment status changes,
+ * so that data derived from the seller's and buyer's orders can be refreshed
+ * @param orderDate when the order was placed, which decides the period it is reported in
+ */
+public record OrderDataChangedEvent(Long sellerId, Long buyerId, Date orderDate) {
+}
@@ -0,0 +1,16 @@
+package com.harvestdirect.app.event;
+
+import com.harvestdirect.app.model.Product;
+
+/**
+ * Published when a product is created, updated or deleted, so that in-memory
+ * structures built from the catalog can be kept in step with it
+ * @param productId the product id
+ * @param product the product as saved, or null if it was deleted
+ */
+public record ProductChangedEvent(Long productId, Product product) {
+
+    public boolean isDeleted() {
+        return product == null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.harvestdirect.app.event;
+
+/**
+ * Published when a product's stock level or availability changes without any
+ * other change to the product, such as when an order is placed or cancelled
+ * @param productId the product id
+ * @param quantity the new stock level
+ * @param available whether the product can be ordered
+ */
+public record ProductStockChangedEvent(Long productId, int quantity, boolean available) {
+}
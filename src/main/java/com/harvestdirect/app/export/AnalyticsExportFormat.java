@@ -0,0 +1,62 @@
+package com.harvestdirect.app.export;
+
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The formats analytics can be exported in
+ */
+public enum AnalyticsExportFormat {
+
+    CSV("csv", MediaType.parseMediaType("text/csv")),
+    JSON("json", MediaType.APPLICATION_JSON),
+    XLSX("xlsx", MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+
+    private final String extension;
+    private final MediaType contentType;
+
+    AnalyticsExportFormat(String extension, MediaType contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Resolve a format from a request parameter. There is no PDF writer, so PDF
+     * and unknown formats are exported as CSV and labelled as such.
+     * @param value the parameter value, case insensitive
+     * @return the format
+     */
+    public static AnalyticsExportFormat from(String value) {
+        if (value == null) {
+            return CSV;
+        }
+        return switch (value.trim().toLowerCase()) {
+            case "json" -> JSON;
+            case "xlsx" -> XLSX;
+            default -> CSV;
+        };
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public MediaType getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Create a writer for this format
+     * @param out the stream to write to; it is not closed by the writer
+     * @return the writer
+     */
+    public AnalyticsExportWriter newWriter(OutputStream out) throws IOException {
+        return switch (this) {
+            case CSV -> new CsvExportWriter(out);
+            case JSON -> new JsonExportWriter(out);
+            case XLSX -> new XlsxExportWriter(out);
+        };
+    }
+}
@@ -0,0 +1,55 @@
+package com.harvestdirect.app.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes an analytics report one section and row at a time, so that a report
+ * can be streamed without holding it in memory. Calls follow the order
+ * {@code beginReport}, any number of sections, then {@code close}. A section is
+ * either a summary of named fields or a table of rows.
+ */
+public interface AnalyticsExportWriter extends Closeable {
+
+    /**
+     * Start the report
+     * @param title the report title
+     * @param properties descriptive properties such as the period, in display order
+     */
+    void beginReport(String title, Map<String, String> properties) throws IOException;
+
+    /**
+     * Start a section of named values
+     * @param title the section title
+     */
+    void beginSummary(String title) throws IOException;
+
+    /**
+     * Write one value of the current summary section
+     * @param name the field name
+     * @param value the value; numbers are written as numbers where the format has them
+     */
+    void field(String name, Object value) throws IOException;
+
+    /**
+     * Start a section of rows
+     * @param title the section title
+     * @param columns the column headings
+     */
+    void beginTable(String title, String... columns) throws IOException;
+
+    /**
+     * Write one row of the current table section
+     * @param values the cell values, in column order
+     */
+    void row(Object... values) throws IOException;
+
+    void endSection() throws IOException;
+
+    /**
+     * Finish the report and flush it. The underlying stream is left open.
+     */
+    @Override
+    void close() throws IOException;
+}
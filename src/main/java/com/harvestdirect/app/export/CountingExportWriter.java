@@ -0,0 +1,57 @@
+package com.harvestdirect.app.export;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes a report through to another writer while counting the rows and
+ * fields written, so that progress can be read from another thread
+ */
+public class CountingExportWriter implements AnalyticsExportWriter {
+
+    private final AnalyticsExportWriter delegate;
+    private final AtomicLong rowsWritten;
+
+    public CountingExportWriter(AnalyticsExportWriter delegate, AtomicLong rowsWritten) {
+        this.delegate = delegate;
+        this.rowsWritten = rowsWritten;
+    }
+
+    @Override
+    public void beginReport(String title, Map<String, String> properties) throws IOException {
+        delegate.beginReport(title, properties);
+    }
+
+    @Override
+    public void beginSummary(String title) throws IOException {
+        delegate.beginSummary(title);
+    }
+
+    @Override
+    public void field(String name, Object value) throws IOException {
+        delegate.field(name, value);
+        rowsWritten.incrementAndGet();
+    }
+
+    @Override
+    public void beginTable(String title, String... columns) throws IOException {
+        delegate.beginTable(title, columns);
+    }
+
+    @Override
+    public void row(Object... values) throws IOException {
+        delegate.row(values);
+        rowsWritten.incrementAndGet();
+    }
+
+    @Override
+    public void endSection() throws IOException {
+        delegate.endSection();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,99 @@
+package com.harvestdirect.app.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes a report as CSV, with each section introduced by its title and a rule
+ */
+public class CsvExportWriter implements AnalyticsExportWriter {
+
+    private static final String RULE = "-------------------------------------------------";
+    private static final int FLUSH_EVERY_ROWS = 500;
+
+    private final Writer out;
+    private int pendingRows;
+
+    public CsvExportWriter(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+    }
+
+    @Override
+    public void beginReport(String title, Map<String, String> properties) throws IOException {
+        line(title);
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            line(property.getKey() + ": " + property.getValue());
+        }
+        line("");
+    }
+
+    @Override
+    public void beginSummary(String title) throws IOException {
+        line(title);
+        line(RULE);
+    }
+
+    @Override
+    public void field(String name, Object value) throws IOException {
+        line(cell(name) + "," + cell(value));
+    }
+
+    @Override
+    public void beginTable(String title, String... columns) throws IOException {
+        line(title);
+        line(RULE);
+        line(join(columns));
+    }
+
+    @Override
+    public void row(Object... values) throws IOException {
+        line(join(values));
+        if (++pendingRows >= FLUSH_EVERY_ROWS) {
+            pendingRows = 0;
+            out.flush();
+        }
+    }
+
+    @Override
+    public void endSection() throws IOException {
+        line("");
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    private void line(String text) throws IOException {
+        out.write(text);
+        out.write('\n');
+    }
+
+    private static String join(Object[] values) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                joined.append(',');
+            }
+            joined.append(cell(values[i]));
+        }
+        return joined.toString();
+    }
+
+    private static String cell(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value instanceof BigDecimal amount ? amount.toPlainString() : value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,116 @@
+package com.harvestdirect.app.export;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Writes a report as a single JSON document with a streaming generator. Summary
+ * sections become objects of fields; table sections list their columns once and
+ * then each row as an array of values in column order.
+ */
+public class JsonExportWriter implements AnalyticsExportWriter {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+    private static final int FLUSH_EVERY_ROWS = 500;
+
+    private final JsonGenerator generator;
+    private boolean inTable;
+    private int pendingRows;
+
+    public JsonExportWriter(OutputStream out) throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    @Override
+    public void beginReport(String title, Map<String, String> properties) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("title", title);
+        generator.writeObjectFieldStart("properties");
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            generator.writeStringField(property.getKey(), property.getValue());
+        }
+        generator.writeEndObject();
+        generator.writeArrayFieldStart("sections");
+    }
+
+    @Override
+    public void beginSummary(String title) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("title", title);
+        generator.writeObjectFieldStart("fields");
+        inTable = false;
+    }
+
+    @Override
+    public void field(String name, Object value) throws IOException {
+        generator.writeFieldName(name);
+        writeValue(value);
+    }
+
+    @Override
+    public void beginTable(String title, String... columns) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("title", title);
+        generator.writeArrayFieldStart("columns");
+        for (String column : columns) {
+            generator.writeString(column);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("rows");
+        inTable = true;
+    }
+
+    @Override
+    public void row(Object... values) throws IOException {
+        generator.writeStartArray();
+        for (Object value : values) {
+            writeValue(value);
+        }
+        generator.writeEndArray();
+        if (++pendingRows >= FLUSH_EVERY_ROWS) {
+            pendingRows = 0;
+            generator.flush();
+        }
+    }
+
+    @Override
+    public void endSection() throws IOException {
+        // Close the fields object or the rows array, then the section itself
+        if (inTable) {
+            generator.writeEndArray();
+        } else {
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof BigDecimal amount) {
+            generator.writeNumber(amount);
+        } else if (value instanceof Long || value instanceof Integer) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Double number) {
+            generator.writeNumber(number);
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+}
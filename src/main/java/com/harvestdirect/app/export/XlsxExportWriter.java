@@ -0,0 +1,222 @@
+package com.harvestdirect.app.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a report as an Excel workbook, streamed as a zip. The report header and
+ * every section get their own worksheet, whose XML is written row by row with
+ * inline strings; the workbook parts that list the sheets are written last, once
+ * all sheet names are known.
+ */
+public class XlsxExportWriter implements AnalyticsExportWriter {
+
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+    private static final int MAX_SHEET_ROWS = 1_048_576;
+    private static final int FLUSH_EVERY_ROWS = 500;
+
+    private final ZipOutputStream zip;
+    private final Writer xml;
+    private final List<String> sheetNames = new ArrayList<>();
+    private final Set<String> usedSheetNames = new HashSet<>();
+    private boolean sheetOpen;
+    private String tableTitle;
+    private String[] tableColumns;
+    private int sheetRows;
+    private int pendingRows;
+
+    public XlsxExportWriter(OutputStream out) {
+        this.zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        this.xml = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 16 * 1024);
+    }
+
+    @Override
+    public void beginReport(String title, Map<String, String> properties) throws IOException {
+        openSheet("Report");
+        writeRow(title);
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            writeRow(property.getKey(), property.getValue());
+        }
+        closeSheet();
+    }
+
+    @Override
+    public void beginSummary(String title) throws IOException {
+        openSheet(title);
+    }
+
+    @Override
+    public void field(String name, Object value) throws IOException {
+        writeRow(name, value);
+    }
+
+    @Override
+    public void beginTable(String title, String... columns) throws IOException {
+        openSheet(title);
+        writeRow((Object[]) columns);
+        tableTitle = title;
+        tableColumns = columns;
+    }
+
+    @Override
+    public void row(Object... values) throws IOException {
+        if (sheetRows == MAX_SHEET_ROWS && tableTitle != null) {
+            // Continue a table that outgrows a worksheet on another sheet
+            beginTable(tableTitle, tableColumns);
+        }
+        writeRow(values);
+        if (++pendingRows >= FLUSH_EVERY_ROWS) {
+            pendingRows = 0;
+            xml.flush();
+        }
+    }
+
+    @Override
+    public void endSection() throws IOException {
+        closeSheet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSheet();
+        writeWorkbook();
+        zip.finish();
+        zip.flush();
+    }
+
+    private void openSheet(String title) throws IOException {
+        closeSheet();
+        tableTitle = null;
+        tableColumns = null;
+        sheetRows = 0;
+        sheetNames.add(uniqueSheetName(title));
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        xml.write(XML_HEADER);
+        xml.write("<worksheet xmlns=\"" + MAIN_NS + "\"><sheetData>\n");
+        sheetOpen = true;
+    }
+
+    private void closeSheet() throws IOException {
+        if (!sheetOpen) {
+            return;
+        }
+        xml.write("</sheetData></worksheet>\n");
+        xml.flush();
+        zip.closeEntry();
+        sheetOpen = false;
+    }
+
+    private void writeRow(Object... values) throws IOException {
+        xml.write("<row>");
+        for (Object value : values) {
+            if (value == null) {
+                xml.write("<c/>");
+            } else if (value instanceof BigDecimal amount) {
+                xml.write("<c><v>" + amount.toPlainString() + "</v></c>");
+            } else if (value instanceof Long || value instanceof Integer
+                    || (value instanceof Double number && Double.isFinite(number))) {
+                xml.write("<c><v>" + value + "</v></c>");
+            } else {
+                xml.write("<c t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+                xml.write(escape(value.toString()));
+                xml.write("</t></is></c>");
+            }
+        }
+        xml.write("</row>\n");
+        sheetRows++;
+    }
+
+    private void writeWorkbook() throws IOException {
+        StringBuilder sheets = new StringBuilder();
+        StringBuilder sheetRels = new StringBuilder();
+        StringBuilder sheetTypes = new StringBuilder();
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            sheets.append("<sheet name=\"").append(escape(sheetNames.get(i - 1)))
+                    .append("\" sheetId=\"").append(i).append("\" r:id=\"rId").append(i).append("\"/>");
+            sheetRels.append("<Relationship Id=\"rId").append(i)
+                    .append("\" Type=\"").append(REL_NS).append("/worksheet\" Target=\"worksheets/sheet")
+                    .append(i).append(".xml\"/>");
+            sheetTypes.append("<Override PartName=\"/xl/worksheets/sheet").append(i)
+                    .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+
+        writeEntry("xl/workbook.xml", "<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\">"
+                + "<sheets>" + sheets + "</sheets></workbook>");
+        writeEntry("xl/_rels/workbook.xml.rels", "<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">"
+                + sheetRels + "</Relationships>");
+        writeEntry("_rels/.rels", "<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        writeEntry("[Content_Types].xml", "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Override PartName=\"/xl/workbook.xml\" "
+                + "ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                + sheetTypes + "</Types>");
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        xml.write(XML_HEADER);
+        xml.write(content);
+        xml.flush();
+        zip.closeEntry();
+    }
+
+    /**
+     * Excel rejects sheet names that are too long, repeated or contain any of []:*?/\
+     */
+    private String uniqueSheetName(String title) {
+        String base = title.replaceAll("[\\[\\]:*?/\\\\]", " ").replaceAll("\\s+", " ").trim();
+        if (base.isEmpty()) {
+            base = "Sheet";
+        }
+        String name = truncate(base, MAX_SHEET_NAME_LENGTH);
+        for (int suffix = 2; !usedSheetNames.add(name.toLowerCase()); suffix++) {
+            String marker = " (" + suffix + ")";
+            name = truncate(base, MAX_SHEET_NAME_LENGTH - marker.length()) + marker;
+        }
+        return name;
+    }
+
+    private static String truncate(String text, int length) {
+        // Cutting at a word boundary would leave a trailing space in the name
+        return text.length() <= length ? text : text.substring(0, length).stripTrailing();
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> escaped.append("&amp;");
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '"' -> escaped.append("&quot;");
+                default -> {
+                    // Control characters other than tab and newlines are not allowed in XML 1.0
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package com.harvestdirect.app.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Daily purchase rollup per buyer and product category, maintained by checkout and
+ * cancellation and rebuildable from orders and order items
+ */
+@Entity
+@Table(name = "buyer_daily_purchases")
+@Data
+public class BuyerDailyPurchase {
+
+    @EmbeddedId
+    @AttributeOverrides({
+            @AttributeOverride(name = "userId", column = @Column(name = "buyer_id")),
+            @AttributeOverride(name = "orderDay", column = @Column(name = "purchase_date"))
+    })
+    private DailySalesKey id;
+
+    @NotNull
+    private BigDecimal amount;
+}
@@ -0,0 +1,24 @@
+package com.harvestdirect.app.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailySalesKey implements Serializable {
+
+    private Long userId;
+
+    private LocalDate orderDay;
+
+    @Column(length = 50)
+    private String category;
+}
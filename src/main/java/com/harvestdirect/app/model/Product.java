@@ -15,15 +15,27 @@ import java.util.Date;
 import java.util.Set;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_available_created", columnList = "is_available, created_at, id"),
+        @Index(name = "idx_products_available_price", columnList = "is_available, price, id"),
+        @Index(name = "idx_products_available_name", columnList = "is_available, name, id"),
+        @Index(name = "idx_products_category_created", columnList = "category, created_at, id"),
+        @Index(name = "idx_products_category_price", columnList = "category, price, id"),
+        @Index(name = "idx_products_category_name", columnList = "category, name, id")
+})
 @Data
 @EntityListeners(AuditingEntityListener.class)
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     private Long id;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     @NotBlank
     @Size(max = 100)
     private String name;
@@ -54,6 +66,11 @@ public class Product {
     @NotNull
     private Boolean isAvailable = true;
 
+    // Checkouts of flash-sale products are admitted in memory by FlashSaleSequencer and held as StockReservation rows
+    @NotNull
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private Boolean flashSale = false;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "seller_id", nullable = false)
     private User seller;
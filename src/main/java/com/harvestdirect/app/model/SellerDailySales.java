@@ -0,0 +1,27 @@
+package com.harvestdirect.app.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Daily sales rollup per seller and product category, maintained by checkout and
+ * cancellation and rebuildable from orders and order items
+ */
+@Entity
+@Table(name = "seller_daily_sales")
+@Data
+public class SellerDailySales {
+
+    @EmbeddedId
+    @AttributeOverrides({
+            @AttributeOverride(name = "userId", column = @Column(name = "seller_id")),
+            @AttributeOverride(name = "orderDay", column = @Column(name = "sales_date"))
+    })
+    private DailySalesKey id;
+
+    @NotNull
+    private BigDecimal amount;
+}
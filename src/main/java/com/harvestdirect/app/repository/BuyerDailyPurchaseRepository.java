@@ -0,0 +1,65 @@
+package com.harvestdirect.app.repository;
+
+import com.harvestdirect.app.dto.DailyTotal;
+import com.harvestdirect.app.model.DailySalesKey;
+import com.harvestdirect.app.model.BuyerDailyPurchase;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface BuyerDailyPurchaseRepository extends JpaRepository<BuyerDailyPurchase, DailySalesKey> {
+
+    @Query("SELECT new com.harvestdirect.app.dto.DailyTotal(r.id.orderDay, CAST(SUM(r.amount) * 100 AS Long)) " +
+           "FROM BuyerDailyPurchase r " +
+           "WHERE r.id.userId = :buyerId AND r.id.orderDay BETWEEN :startDay AND :endDay " +
+           "GROUP BY r.id.orderDay ORDER BY r.id.orderDay")
+    List<DailyTotal> findDailyTotals(@Param("buyerId") Long buyerId,
+                                     @Param("startDay") LocalDate startDay,
+                                     @Param("endDay") LocalDate endDay);
+
+    @Query("SELECT COALESCE(SUM(r.amount), 0) FROM BuyerDailyPurchase r " +
+           "WHERE r.id.userId = :buyerId AND r.id.orderDay BETWEEN :startDay AND :endDay")
+    BigDecimal sumAmount(@Param("buyerId") Long buyerId,
+                         @Param("startDay") LocalDate startDay,
+                         @Param("endDay") LocalDate endDay);
+
+    // Rebuild and drift check, one buyer id range at a time
+    @Modifying
+    @Query(value = "DELETE FROM buyer_daily_purchases WHERE buyer_id BETWEEN :fromId AND :toId",
+           nativeQuery = true)
+    int deleteBuyerRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Modifying
+    @Query(value = "INSERT INTO buyer_daily_purchases (buyer_id, purchase_date, category, amount) " +
+                   "SELECT o.buyer_id, CAST(o.order_date AS date), p.category, SUM(i.unit_price * i.quantity) " +
+                   "FROM orders o " +
+                   "JOIN order_items i ON i.order_id = o.id " +
+                   "JOIN products p ON p.id = i.product_id " +
+                   "WHERE o.status <> 'CANCELLED' AND o.buyer_id BETWEEN :fromId AND :toId " +
+                   "GROUP BY o.buyer_id, CAST(o.order_date AS date), p.category",
+           nativeQuery = true)
+    int rebuildBuyerRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Query(value = "SELECT COUNT(*) FROM (" +
+                   "SELECT o.buyer_id AS user_id, CAST(o.order_date AS date) AS order_day, p.category AS category, " +
+                   "SUM(i.unit_price * i.quantity) AS amount " +
+                   "FROM orders o " +
+                   "JOIN order_items i ON i.order_id = o.id " +
+                   "JOIN products p ON p.id = i.product_id " +
+                   "WHERE o.status <> 'CANCELLED' AND o.buyer_id BETWEEN :fromId AND :toId " +
+                   "GROUP BY o.buyer_id, CAST(o.order_date AS date), p.category" +
+                   ") src FULL OUTER JOIN (" +
+                   "SELECT buyer_id, purchase_date, category, amount FROM buyer_daily_purchases " +
+                   "WHERE buyer_id BETWEEN :fromId AND :toId" +
+                   ") r ON r.buyer_id = src.user_id AND r.purchase_date = src.order_day AND r.category = src.category " +
+                   "WHERE COALESCE(src.amount, 0) <> COALESCE(r.amount, 0)",
+           nativeQuery = true)
+    long countDriftInBuyerRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+}
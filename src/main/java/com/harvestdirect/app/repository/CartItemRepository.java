@@ -4,6 +4,9 @@ import com.harvestdirect.app.model.CartItem;
 import com.harvestdirect.app.model.Product;
 import com.harvestdirect.app.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -13,5 +16,12 @@ import java.util.Optional;
 public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     List<CartItem> findByUser(User user);
     Optional<CartItem> findByUserAndProduct(User user, Product product);
-    void deleteByUser(User user);
+    
+    // Checkout reads every line with its product and seller in a single query
+    @Query("SELECT c FROM CartItem c JOIN FETCH c.product p JOIN FETCH p.seller WHERE c.user = :user")
+    List<CartItem> findWithProductAndSellerByUser(@Param("user") User user);
+    
+    @Modifying
+    @Query("DELETE FROM CartItem c WHERE c.user = :user")
+    void deleteByUser(@Param("user") User user);
 }
\ No newline at end of file
@@ -1,13 +1,86 @@
 package com.harvestdirect.app.repository;
 
+import com.harvestdirect.app.dto.CategoryTotal;
+import com.harvestdirect.app.dto.OrderLine;
+import com.harvestdirect.app.dto.ProductQuantity;
+import com.harvestdirect.app.dto.ProductSalesTotal;
+import com.harvestdirect.app.dto.PurchaseLine;
 import com.harvestdirect.app.model.Order;
 import com.harvestdirect.app.model.OrderItem;
+import com.harvestdirect.app.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     List<OrderItem> findByOrder(Order order);
-}
\ No newline at end of file
+    
+    // Aggregated analytics projections
+    @Query("SELECT new com.harvestdirect.app.dto.CategoryTotal(p.category, SUM(i.unitPrice * i.quantity)) " +
+           "FROM OrderItem i JOIN i.order o JOIN i.product p " +
+           "WHERE o.seller = :seller AND o.orderDate BETWEEN :startDate AND :endDate " +
+           "AND o.status <> com.harvestdirect.app.model.Order.OrderStatus.CANCELLED " +
+           "GROUP BY p.category")
+    List<CategoryTotal> sumSalesByCategory(@Param("seller") User seller,
+                                           @Param("startDate") Date startDate,
+                                           @Param("endDate") Date endDate);
+    
+    @Query("SELECT new com.harvestdirect.app.dto.CategoryTotal(p.category, SUM(i.unitPrice * i.quantity)) " +
+           "FROM OrderItem i JOIN i.order o JOIN i.product p " +
+           "WHERE o.buyer = :buyer AND o.orderDate BETWEEN :startDate AND :endDate " +
+           "AND o.status <> com.harvestdirect.app.model.Order.OrderStatus.CANCELLED " +
+           "GROUP BY p.category")
+    List<CategoryTotal> sumPurchasesByCategory(@Param("buyer") User buyer,
+                                               @Param("startDate") Date startDate,
+                                               @Param("endDate") Date endDate);
+    
+    @Query("SELECT new com.harvestdirect.app.dto.ProductSalesTotal(" +
+           "p.id, p.name, p.category, p.unit, p.imageUrl, SUM(i.quantity), SUM(i.unitPrice * i.quantity)) " +
+           "FROM OrderItem i JOIN i.order o JOIN i.product p " +
+           "WHERE o.seller = :seller AND o.orderDate BETWEEN :startDate AND :endDate " +
+           "AND o.status <> com.harvestdirect.app.model.Order.OrderStatus.CANCELLED " +
+           "GROUP BY p.id, p.name, p.category, p.unit, p.imageUrl " +
+           "ORDER BY SUM(i.unitPrice * i.quantity) DESC")
+    List<ProductSalesTotal> findTopSellingProducts(@Param("seller") User seller,
+                                                   @Param("startDate") Date startDate,
+                                                   @Param("endDate") Date endDate,
+                                                   Pageable pageable);
+    
+    @Query("SELECT new com.harvestdirect.app.dto.PurchaseLine(o.id, p.id, SUM(i.quantity)) " +
+           "FROM OrderItem i JOIN i.order o JOIN i.product p " +
+           "WHERE o.buyer = :buyer GROUP BY o.id, p.id")
+    Stream<PurchaseLine> streamPurchaseLines(@Param("buyer") User buyer);
+    
+    @Query("SELECT new com.harvestdirect.app.dto.ProductQuantity(i.product.id, SUM(i.quantity)) " +
+           "FROM OrderItem i JOIN i.order o " +
+           "WHERE o.orderDate >= :since AND o.status <> com.harvestdirect.app.model.Order.OrderStatus.CANCELLED " +
+           "GROUP BY i.product.id")
+    List<ProductQuantity> sumQuantityByProductSince(@Param("since") Date since);
+    
+    @Query("SELECT COUNT(i) FROM OrderItem i JOIN i.order o " +
+           "WHERE o.seller = :seller AND o.orderDate BETWEEN :startDate AND :endDate")
+    long countSellerOrderLines(@Param("seller") User seller,
+                               @Param("startDate") Date startDate,
+                               @Param("endDate") Date endDate);
+    
+    // Detail export, read through a cursor; must be consumed inside a transaction
+    @Query("SELECT new com.harvestdirect.app.dto.OrderLine(" +
+           "o.id, o.orderDate, o.status, b.name, p.id, p.name, p.category, i.quantity, i.unitPrice, i.subtotal) " +
+           "FROM OrderItem i JOIN i.order o JOIN o.buyer b JOIN i.product p " +
+           "WHERE o.seller = :seller AND o.orderDate BETWEEN :startDate AND :endDate " +
+           "ORDER BY o.orderDate, o.id, i.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<OrderLine> streamSellerOrderLines(@Param("seller") User seller,
+                                             @Param("startDate") Date startDate,
+                                             @Param("endDate") Date endDate);
+}
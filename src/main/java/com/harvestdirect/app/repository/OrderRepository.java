@@ -1,11 +1,14 @@
 package com.harvestdirect.app.repository;
 
+import com.harvestdirect.app.dto.StatusCount;
 import com.harvestdirect.app.model.Order;
 import com.harvestdirect.app.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
 
@@ -20,6 +23,18 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findBySellerAndOrderDateBetweenOrderByOrderDate(User seller, Date startDate, Date endDate);
     List<Order> findByBuyerAndOrderDateBetweenOrderByOrderDate(User buyer, Date startDate, Date endDate);
     
+    @Query("SELECT new com.harvestdirect.app.dto.StatusCount(o.status, COUNT(o)) FROM Order o " +
+           "WHERE o.seller = :seller AND o.orderDate BETWEEN :startDate AND :endDate GROUP BY o.status")
+    List<StatusCount> countBySellerGroupByStatus(@Param("seller") User seller,
+                                                 @Param("startDate") Date startDate,
+                                                 @Param("endDate") Date endDate);
+    
+    @Query("SELECT new com.harvestdirect.app.dto.StatusCount(o.status, COUNT(o)) FROM Order o GROUP BY o.status")
+    List<StatusCount> countGroupByStatus();
+    
+    @Query("SELECT COALESCE(SUM(o.totalAmount), 0) FROM Order o")
+    BigDecimal sumTotalAmount();
+    
     @Query("SELECT o FROM Order o WHERE o.seller = ?1 AND FUNCTION('MONTH', o.orderDate) = ?2 AND FUNCTION('YEAR', o.orderDate) = ?3")
     List<Order> findBySellerAndMonth(User seller, int month, int year);
     
@@ -1,19 +1,28 @@
 package com.harvestdirect.app.repository;
 
+import com.harvestdirect.app.dto.CategoryCount;
 import com.harvestdirect.app.model.Product;
 import com.harvestdirect.app.model.User;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findBySeller(User seller);
     List<Product> findByCategory(String category);
     
+    @EntityGraph(attributePaths = "seller")
     @Query("SELECT p FROM Product p WHERE " +
            "p.name LIKE %:query% OR " +
            "p.description LIKE %:query% OR " +
@@ -21,4 +30,35 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> searchProducts(@Param("query") String query);
     
     List<Product> findByIsAvailableTrue();
+    
+    // Catalog listings, paged by keyset on the sort key and id
+    @EntityGraph(attributePaths = "seller")
+    Window<Product> findByIsAvailableTrue(ScrollPosition position, Sort sort, Limit limit);
+    
+    @EntityGraph(attributePaths = "seller")
+    Window<Product> findByCategory(String category, ScrollPosition position, Sort sort, Limit limit);
+    
+    @EntityGraph(attributePaths = "seller")
+    List<Product> findWithSellerByIdIn(Collection<Long> ids);
+    
+    @EntityGraph(attributePaths = "seller")
+    Optional<Product> findWithSellerById(Long id);
+    
+    @EntityGraph(attributePaths = "seller")
+    Window<Product> findAllBy(ScrollPosition position, Sort sort, Limit limit);
+    
+    // Flash-sale batches take and return stock in single statements; checkout reserves other lines in OrderService
+    @Query(value = "UPDATE products SET quantity = quantity - :amount, is_available = quantity - :amount > 0, " +
+                   "version = version + 1, updated_at = now() " +
+                   "WHERE id = :id AND is_available AND quantity >= :amount " +
+                   "RETURNING quantity", nativeQuery = true)
+    Optional<Integer> takeStock(@Param("id") Long id, @Param("amount") int amount);
+    
+    @Query(value = "UPDATE products SET quantity = quantity + :amount, is_available = true, " +
+                   "version = version + 1, updated_at = now() " +
+                   "WHERE id = :id RETURNING quantity", nativeQuery = true)
+    Optional<Integer> restoreStock(@Param("id") Long id, @Param("amount") int amount);
+    
+    @Query("SELECT new com.harvestdirect.app.dto.CategoryCount(p.category, COUNT(p)) FROM Product p GROUP BY p.category")
+    List<CategoryCount> countByCategory();
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.harvestdirect.app.repository;
+
+import com.harvestdirect.app.dto.DailyTotal;
+import com.harvestdirect.app.model.DailySalesKey;
+import com.harvestdirect.app.model.SellerDailySales;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface SellerDailySalesRepository extends JpaRepository<SellerDailySales, DailySalesKey> {
+
+    @Query("SELECT new com.harvestdirect.app.dto.DailyTotal(r.id.orderDay, CAST(SUM(r.amount) * 100 AS Long)) " +
+           "FROM SellerDailySales r " +
+           "WHERE r.id.userId = :sellerId AND r.id.orderDay BETWEEN :startDay AND :endDay " +
+           "GROUP BY r.id.orderDay ORDER BY r.id.orderDay")
+    List<DailyTotal> findDailyTotals(@Param("sellerId") Long sellerId,
+                                     @Param("startDay") LocalDate startDay,
+                                     @Param("endDay") LocalDate endDay);
+
+    @Query("SELECT COALESCE(SUM(r.amount), 0) FROM SellerDailySales r " +
+           "WHERE r.id.userId = :sellerId AND r.id.orderDay BETWEEN :startDay AND :endDay")
+    BigDecimal sumAmount(@Param("sellerId") Long sellerId,
+                         @Param("startDay") LocalDate startDay,
+                         @Param("endDay") LocalDate endDay);
+
+    // Rebuild and drift check, one seller id range at a time
+    @Modifying
+    @Query(value = "DELETE FROM seller_daily_sales WHERE seller_id BETWEEN :fromId AND :toId",
+           nativeQuery = true)
+    int deleteSellerRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Modifying
+    @Query(value = "INSERT INTO seller_daily_sales (seller_id, sales_date, category, amount) " +
+                   "SELECT o.seller_id, CAST(o.order_date AS date), p.category, SUM(i.unit_price * i.quantity) " +
+                   "FROM orders o " +
+                   "JOIN order_items i ON i.order_id = o.id " +
+                   "JOIN products p ON p.id = i.product_id " +
+                   "WHERE o.status <> 'CANCELLED' AND o.seller_id BETWEEN :fromId AND :toId " +
+                   "GROUP BY o.seller_id, CAST(o.order_date AS date), p.category",
+           nativeQuery = true)
+    int rebuildSellerRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Query(value = "SELECT COUNT(*) FROM (" +
+                   "SELECT o.seller_id AS user_id, CAST(o.order_date AS date) AS order_day, p.category AS category, " +
+                   "SUM(i.unit_price * i.quantity) AS amount " +
+                   "FROM orders o " +
+                   "JOIN order_items i ON i.order_id = o.id " +
+                   "JOIN products p ON p.id = i.product_id " +
+                   "WHERE o.status <> 'CANCELLED' AND o.seller_id BETWEEN :fromId AND :toId " +
+                   "GROUP BY o.seller_id, CAST(o.order_date AS date), p.category" +
+                   ") src FULL OUTER JOIN (" +
+                   "SELECT seller_id, sales_date, category, amount FROM seller_daily_sales " +
+                   "WHERE seller_id BETWEEN :fromId AND :toId" +
+                   ") r ON r.seller_id = src.user_id AND r.sales_date = src.order_day AND r.category = src.category " +
+                   "WHERE COALESCE(src.amount, 0) <> COALESCE(r.amount, 0)",
+           nativeQuery = true)
+    long countDriftInSellerRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+}
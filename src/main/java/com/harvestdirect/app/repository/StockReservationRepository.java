@@ -0,0 +1,22 @@
+package com.harvestdirect.app.repository;
+
+import com.harvestdirect.app.model.StockReservation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+    // Deleting and reading back in one statement lets exactly one caller return the stock of each row
+    @Query(value = "DELETE FROM stock_reservations WHERE id IN (:ids) RETURNING quantity", nativeQuery = true)
+    List<Integer> deleteReturningQuantity(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "DELETE FROM stock_reservations WHERE expires_at < :now RETURNING *", nativeQuery = true)
+    List<StockReservation> deleteExpired(@Param("now") Date now);
+}
@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +18,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
     // Analytics methods
     List<User> findByRole(User.UserRole role);
     long countByRole(User.UserRole role);
+    List<User> findByRoleInAndIdBetweenOrderById(Collection<User.UserRole> roles, Long fromId, Long toId);
     
     @Query("SELECT COUNT(u) FROM User u WHERE u.role = com.harvestdirect.app.model.User.UserRole.FARMER")
     long countFarmers();
@@ -26,4 +28,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     @Query("SELECT COUNT(u) FROM User u WHERE u.role = com.harvestdirect.app.model.User.UserRole.WHOLESALER")
     long countWholesalers();
+    
+    @Query("SELECT COALESCE(MAX(u.id), 0) FROM User u")
+    long findMaxId();
 }
\ No newline at end of file
@@ -0,0 +1,449 @@
+package com.harvestdirect.app.search;
+
+import com.harvestdirect.app.dto.FacetCount;
+import com.harvestdirect.app.dto.ProductFilter;
+import com.harvestdirect.app.event.CatalogReloadEvent;
+import com.harvestdirect.app.event.ProductChangedEvent;
+import com.harvestdirect.app.event.ProductStockChangedEvent;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.ProductRepository;
+import com.harvestdirect.app.repository.UserRepository;
+import com.harvestdirect.app.util.IdBitmap;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory facet index over the catalog: for every category, availability,
+ * seller role, price band and unit, a compressed bitmap of the ids of the
+ * products carrying it. Filters are evaluated as unions within a facet and
+ * intersections across facets, and each facet's counts are taken with every
+ * other facet's filter applied, so buyers see how many products each further
+ * choice would leave. The index is built when the application is ready and kept
+ * current from product and stock change events.
+ */
+@Component
+public class ProductFacetIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductFacetIndex.class);
+
+    public static final String CATEGORY = "category";
+    public static final String AVAILABILITY = "available";
+    public static final String SELLER_ROLE = "role";
+    public static final String PRICE = "price";
+    public static final String UNIT = "unit";
+
+    private static final String[] FACETS = {CATEGORY, AVAILABILITY, SELLER_ROLE, PRICE, UNIT};
+    private static final int CATEGORY_FACET = 0;
+    private static final int AVAILABILITY_FACET = 1;
+    private static final int SELLER_ROLE_FACET = 2;
+    private static final int PRICE_FACET = 3;
+    private static final int UNIT_FACET = 4;
+    private static final String IN_STOCK = "true";
+    private static final String OUT_OF_STOCK = "false";
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private final ProductRepository productRepository;
+    private final UserRepository userRepository;
+    private final BigDecimal[] priceBoundaries;
+    private final Map<Long, User.UserRole> sellerRoles = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Facets facets;
+    private List<Consumer<Facets>> changedDuringRebuild;
+    private volatile boolean ready;
+
+    public ProductFacetIndex(
+            ProductRepository productRepository,
+            UserRepository userRepository,
+            @Value("${catalog.facets.price-bands:5,10,25,50}") BigDecimal[] priceBoundaries) {
+        this.productRepository = productRepository;
+        this.userRepository = userRepository;
+        this.priceBoundaries = priceBoundaries.clone();
+        Arrays.sort(this.priceBoundaries);
+        this.facets = new Facets();
+    }
+
+    /**
+     * Whether the index has been built and can answer queries
+     * @return true once the initial build has finished
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Select the products matching a filter, newest first, with the facet counts
+     * @param filter the facet selection
+     * @param beforeId only products with a lower id are returned
+     * @param limit the maximum number of product ids
+     * @return the selection
+     */
+    public FacetSelection select(ProductFilter filter, long beforeId, int limit) {
+        lock.readLock().lock();
+        try {
+            IdBitmap[] constraints = facets.constraints(filter);
+            IdBitmap matches = intersect(facets.all, constraints, -1);
+            int[] ids = matches.descendingBefore(beforeId, limit + 1);
+
+            List<Long> productIds = new ArrayList<>(Math.min(ids.length, limit));
+            for (int i = 0; i < Math.min(ids.length, limit); i++) {
+                productIds.add((long) ids[i]);
+            }
+            Long nextBeforeId = ids.length > limit && limit > 0 ? (long) ids[limit - 1] : null;
+
+            Map<String, List<FacetCount>> counts = new LinkedHashMap<>();
+            for (int facet = 0; facet < FACETS.length; facet++) {
+                IdBitmap base = intersect(facets.all, constraints, facet);
+                counts.put(FACETS[facet], facets.count(facet, base, selectedValues(filter, facet)));
+            }
+            return new FacetSelection(productIds, nextBeforeId, matches.cardinality(), counts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Keep only the products that match a filter
+     * @param productIds the product ids, in any order
+     * @param filter the facet selection
+     * @return the matching ids, in their original order
+     */
+    public List<Long> retainMatching(List<Long> productIds, ProductFilter filter) {
+        lock.readLock().lock();
+        try {
+            IdBitmap matches = intersect(facets.all, facets.constraints(filter), -1);
+            return productIds.stream().filter(id -> matches.contains(Math.toIntExact(id))).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the index from the database. Changes that commit while the build
+     * runs are replayed onto the new index before it replaces the old one.
+     */
+    @EventListener({ApplicationReadyEvent.class, CatalogReloadEvent.class})
+    public void rebuild() {
+        long startedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Facets rebuilt = new Facets();
+        try {
+            ScrollPosition position = ScrollPosition.keyset();
+            Window<Product> products;
+            do {
+                products = productRepository.findAllBy(position, Sort.by("id"), Limit.of(REBUILD_PAGE_SIZE));
+                for (Product product : products) {
+                    rebuilt.put(product, resolveRole(product));
+                }
+                if (!products.isEmpty()) {
+                    position = products.positionAt(products.size() - 1);
+                }
+            } while (products.hasNext());
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild.forEach(change -> change.accept(rebuilt));
+            changedDuringRebuild = null;
+            facets = rebuilt;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Product facet index built: {} products in {} ms",
+                rebuilt.all.cardinality(), System.currentTimeMillis() - startedAt);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.isDeleted()) {
+            apply(current -> current.remove(event.productId()));
+        } else {
+            User.UserRole role = resolveRole(event.product());
+            apply(current -> current.put(event.product(), role));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductStockChanged(ProductStockChangedEvent event) {
+        apply(current -> current.setAvailable(event.productId(), event.available()));
+    }
+
+    private void apply(Consumer<Facets> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(facets);
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Look up a product's seller role, without loading the seller when it is
+     * already known
+     */
+    private User.UserRole resolveRole(Product product) {
+        User seller = product.getSeller();
+        if (seller == null || seller.getId() == null) {
+            return null;
+        }
+        return sellerRoles.computeIfAbsent(seller.getId(), sellerId -> Hibernate.isInitialized(seller)
+                ? seller.getRole()
+                : userRepository.findById(sellerId).map(User::getRole).orElse(null));
+    }
+
+    /**
+     * Intersect the constraints of every facet but one
+     * @param all the bitmap of every product, used if nothing is constrained
+     * @param excludedFacet the facet to leave out, or -1 for none
+     */
+    private static IdBitmap intersect(IdBitmap all, IdBitmap[] constraints, int excludedFacet) {
+        IdBitmap result = null;
+        for (int facet = 0; facet < constraints.length; facet++) {
+            if (facet != excludedFacet && constraints[facet] != null) {
+                result = result == null ? constraints[facet] : IdBitmap.and(result, constraints[facet]);
+            }
+        }
+        return result != null ? result : all;
+    }
+
+    private Set<String> selectedValues(ProductFilter filter, int facet) {
+        return switch (facet) {
+            case CATEGORY_FACET -> normalizeAll(filter.categories());
+            case AVAILABILITY_FACET -> filter.availableOnly() ? Set.of(IN_STOCK) : Set.of();
+            case SELLER_ROLE_FACET -> roleKeys(filter.sellerRoles());
+            case PRICE_FACET -> filter.priceBands() != null ? filter.priceBands() : Set.of();
+            default -> normalizeAll(filter.units());
+        };
+    }
+
+    private String priceBand(BigDecimal price) {
+        int band = 0;
+        while (band < priceBoundaries.length && price.compareTo(priceBoundaries[band]) >= 0) {
+            band++;
+        }
+        String lower = band == 0 ? "0" : priceBoundaries[band - 1].toPlainString();
+        String upper = band == priceBoundaries.length ? "" : priceBoundaries[band].toPlainString();
+        return lower + "-" + upper;
+    }
+
+    private String priceBandLabel(String band) {
+        String[] bounds = band.split("-", -1);
+        if (bounds[1].isEmpty()) {
+            return bounds[0].equals("0") ? "Any price" : "$" + bounds[0] + " and over";
+        }
+        return bounds[0].equals("0") ? "Under $" + bounds[1] : "$" + bounds[0] + " to $" + bounds[1];
+    }
+
+    private static String normalize(String value) {
+        return value == null ? null : ProductTextAnalyzer.fold(value.trim());
+    }
+
+    private static Set<String> normalizeAll(Set<String> values) {
+        Set<String> normalized = new HashSet<>();
+        if (values != null) {
+            values.forEach(value -> normalized.add(normalize(value)));
+        }
+        return normalized;
+    }
+
+    private static Set<String> roleKeys(Set<User.UserRole> roles) {
+        Set<String> keys = new HashSet<>();
+        if (roles != null) {
+            roles.forEach(role -> keys.add(role.name().toLowerCase()));
+        }
+        return keys;
+    }
+
+    private static String roleLabel(String role) {
+        return switch (role) {
+            case "farmer" -> "Farm";
+            case "fisherman" -> "Fishery";
+            default -> role.substring(0, 1).toUpperCase() + role.substring(1);
+        };
+    }
+
+    /**
+     * Products matching a filter
+     * @param productIds the ids of the products on this page, newest first
+     * @param nextBeforeId the id to continue below for the next page, or null if this is the last page
+     * @param totalMatches the number of matching products
+     * @param facets the counts per facet value, by facet name
+     */
+    public record FacetSelection(List<Long> productIds, Long nextBeforeId, long totalMatches,
+                                 Map<String, List<FacetCount>> facets) {
+    }
+
+    /**
+     * The bitmaps of one facet, by value
+     */
+    private static final class Facet {
+
+        private final Map<String, IdBitmap> bitmaps;
+        private final Map<String, String> labels = new HashMap<>();
+
+        Facet(Map<String, IdBitmap> bitmaps) {
+            this.bitmaps = bitmaps;
+        }
+
+        void add(String value, String label, int id) {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            bitmaps.computeIfAbsent(value, key -> new IdBitmap()).add(id);
+            labels.putIfAbsent(value, label);
+        }
+
+        void remove(String value, int id) {
+            IdBitmap bitmap = value != null ? bitmaps.get(value) : null;
+            if (bitmap != null) {
+                bitmap.remove(id);
+            }
+        }
+
+        IdBitmap union(Set<String> values) {
+            IdBitmap union = new IdBitmap();
+            for (String value : values) {
+                IdBitmap bitmap = bitmaps.get(value);
+                if (bitmap != null) {
+                    union = IdBitmap.or(union, bitmap);
+                }
+            }
+            return union;
+        }
+    }
+
+    private final class Facets {
+
+        private final IdBitmap all = new IdBitmap();
+        private final Facet[] byFacet = new Facet[FACETS.length];
+        // Each product's value in every facet, to find the bitmaps to remove it from
+        private final Map<Integer, String[]> productValues = new HashMap<>();
+
+        Facets() {
+            byFacet[CATEGORY_FACET] = new Facet(new TreeMap<>());
+            byFacet[AVAILABILITY_FACET] = new Facet(new TreeMap<>(Comparator.reverseOrder()));
+            byFacet[SELLER_ROLE_FACET] = new Facet(new TreeMap<>());
+            // Price bands are listed from cheapest to dearest
+            Map<String, IdBitmap> bands = new LinkedHashMap<>();
+            bands.put(priceBand(BigDecimal.ZERO), new IdBitmap());
+            for (BigDecimal boundary : priceBoundaries) {
+                bands.put(priceBand(boundary), new IdBitmap());
+            }
+            byFacet[PRICE_FACET] = new Facet(bands);
+            byFacet[UNIT_FACET] = new Facet(new TreeMap<>());
+            bands.keySet().forEach(band -> byFacet[PRICE_FACET].labels.put(band, priceBandLabel(band)));
+        }
+
+        void put(Product product, User.UserRole role) {
+            int id = Math.toIntExact(product.getId());
+            remove(product.getId());
+
+            String roleKey = role != null ? role.name().toLowerCase() : null;
+            String[] values = {
+                    normalize(product.getCategory()),
+                    Boolean.TRUE.equals(product.getIsAvailable()) ? IN_STOCK : OUT_OF_STOCK,
+                    roleKey,
+                    product.getPrice() != null ? priceBand(product.getPrice()) : null,
+                    normalize(product.getUnit())
+            };
+            String[] labels = {
+                    product.getCategory() != null ? product.getCategory().trim() : null,
+                    values[AVAILABILITY_FACET].equals(IN_STOCK) ? "In stock" : "Out of stock",
+                    roleKey != null ? roleLabel(roleKey) : null,
+                    values[PRICE_FACET] != null ? priceBandLabel(values[PRICE_FACET]) : null,
+                    product.getUnit() != null ? product.getUnit().trim() : null
+            };
+            for (int facet = 0; facet < FACETS.length; facet++) {
+                byFacet[facet].add(values[facet], labels[facet], id);
+            }
+            productValues.put(id, values);
+            all.add(id);
+        }
+
+        void remove(Long productId) {
+            int id = Math.toIntExact(productId);
+            String[] values = productValues.remove(id);
+            if (values == null) {
+                return;
+            }
+            for (int facet = 0; facet < FACETS.length; facet++) {
+                byFacet[facet].remove(values[facet], id);
+            }
+            all.remove(id);
+        }
+
+        void setAvailable(Long productId, boolean available) {
+            int id = Math.toIntExact(productId);
+            String[] values = productValues.get(id);
+            if (values == null) {
+                return;
+            }
+            String value = available ? IN_STOCK : OUT_OF_STOCK;
+            byFacet[AVAILABILITY_FACET].remove(values[AVAILABILITY_FACET], id);
+            byFacet[AVAILABILITY_FACET].add(value, available ? "In stock" : "Out of stock", id);
+            values[AVAILABILITY_FACET] = value;
+        }
+
+        /**
+         * Get each facet's filter as a bitmap, or null where the facet is unconstrained
+         */
+        IdBitmap[] constraints(ProductFilter filter) {
+            IdBitmap[] constraints = new IdBitmap[FACETS.length];
+            for (int facet = 0; facet < FACETS.length; facet++) {
+                Set<String> selected = selectedValues(filter, facet);
+                if (!selected.isEmpty()) {
+                    constraints[facet] = byFacet[facet].union(selected);
+                }
+            }
+            return constraints;
+        }
+
+        List<FacetCount> count(int facet, IdBitmap base, Set<String> selected) {
+            List<FacetCount> counts = new ArrayList<>();
+            for (Map.Entry<String, IdBitmap> value : byFacet[facet].bitmaps.entrySet()) {
+                long count = base == all ? value.getValue().cardinality() : IdBitmap.andCardinality(base, value.getValue());
+                boolean isSelected = selected.contains(value.getKey());
+                if (count > 0 || isSelected) {
+                    counts.add(new FacetCount(value.getKey(), byFacet[facet].labels.get(value.getKey()),
+                            count, isSelected));
+                }
+            }
+            return counts;
+        }
+    }
+}
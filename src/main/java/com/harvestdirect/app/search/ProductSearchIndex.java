@@ -0,0 +1,350 @@
+package com.harvestdirect.app.search;
+
+import com.harvestdirect.app.event.CatalogReloadEvent;
+import com.harvestdirect.app.event.ProductChangedEvent;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.repository.ProductRepository;
+import com.harvestdirect.app.util.LongKeyedAccumulator;
+import com.harvestdirect.app.util.TopK;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over the product catalog, ranked with BM25. Names
+ * weigh more than categories, and categories more than descriptions. The index
+ * is built from the database once the application is ready and then kept current
+ * from product change events, which are delivered after the change commits.
+ * Searches take a read lock and run concurrently; updates take the write lock.
+ * <p>
+ * Query terms that appear in no product are matched against a trigram index of
+ * the words in product names and categories instead, so that "salmen" finds
+ * salmon and "carots" finds carrots. Fuzzy matches are scored in proportion to
+ * their similarity, below exact matches.
+ */
+@Component
+public class ProductSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    private static final float NAME_WEIGHT = 3.0f;
+    private static final float CATEGORY_WEIGHT = 2.0f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Scores are ranked as fixed-point longs
+    private static final double SCORE_SCALE = 1_000_000.0;
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    private static final double FUZZY_THRESHOLD = 0.3;
+    private static final int FUZZY_EXPANSIONS = 3;
+
+    private final ProductRepository productRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Index index = new Index();
+    private List<ProductChangedEvent> changedDuringRebuild;
+    private volatile boolean ready;
+
+    public ProductSearchIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    /**
+     * Whether the index has been built and can answer searches
+     * @return true once the initial build has finished
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Search the catalog
+     * @param query the search text
+     * @param limit the maximum number of results
+     * @return the ids of matching products, best match first
+     */
+    public List<Long> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(ProductTextAnalyzer.analyze(query));
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        List<TopK.Entry> top;
+        lock.readLock().lock();
+        try {
+            top = index.score(index.expand(terms)).top(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Long> ids = new ArrayList<>(top.size());
+        for (TopK.Entry entry : top) {
+            ids.add(entry.key());
+        }
+        return ids;
+    }
+
+    /**
+     * Rebuild the index from the database. Changes that commit while the build
+     * runs are replayed onto the new index before it replaces the old one.
+     */
+    @EventListener({ApplicationReadyEvent.class, CatalogReloadEvent.class})
+    public void rebuild() {
+        long startedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Index rebuilt = new Index();
+        try {
+            ScrollPosition position = ScrollPosition.keyset();
+            Window<Product> products;
+            do {
+                products = productRepository.findAllBy(position, Sort.by("id"), Limit.of(REBUILD_PAGE_SIZE));
+                products.forEach(rebuilt::put);
+                if (!products.isEmpty()) {
+                    position = products.positionAt(products.size() - 1);
+                }
+            } while (products.hasNext());
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild.forEach(rebuilt::apply);
+            changedDuringRebuild = null;
+            index = rebuilt;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Product search index built: {} products, {} terms, {} fuzzy-matchable words in {} ms",
+                rebuilt.documents.size(), rebuilt.postings.size(), rebuilt.vocabulary.size(),
+                System.currentTimeMillis() - startedAt);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        // Text analysis needs no lock, so searches only wait for the posting updates
+        AnalyzedProduct analyzed = event.isDeleted() ? null : AnalyzedProduct.of(event.product());
+        lock.writeLock().lock();
+        try {
+            if (analyzed != null) {
+                index.put(event.productId(), analyzed);
+            } else {
+                index.remove(event.productId());
+            }
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Posting list of one term: product ids with the term's weighted frequency
+     * and the product's length, in parallel primitive arrays so that scoring a
+     * term needs no other lookups. Ids are kept in ascending order, so a product
+     * is found by binary search; products are indexed in id order and new ids
+     * are the highest, so adds append.
+     */
+    private static final class Postings {
+
+        private long[] ids = new long[4];
+        private float[] frequencies = new float[4];
+        private float[] lengths = new float[4];
+        private int size;
+
+        void add(long id, float frequency, float length) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                frequencies[index] = frequency;
+                lengths[index] = length;
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            if (index < size) {
+                System.arraycopy(ids, index, ids, index + 1, size - index);
+                System.arraycopy(frequencies, index, frequencies, index + 1, size - index);
+                System.arraycopy(lengths, index, lengths, index + 1, size - index);
+            }
+            ids[index] = id;
+            frequencies[index] = frequency;
+            lengths[index] = length;
+            size++;
+        }
+
+        void remove(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return;
+            }
+            size--;
+            if (index < size) {
+                System.arraycopy(ids, index + 1, ids, index, size - index);
+                System.arraycopy(frequencies, index + 1, frequencies, index, size - index);
+                System.arraycopy(lengths, index + 1, lengths, index, size - index);
+            }
+        }
+    }
+
+    /**
+     * The terms of an indexed product, kept so that an update or delete can find
+     * the posting lists to remove it from
+     * @param terms the distinct terms
+     * @param nameTerms the terms of the name and category, as added to the vocabulary
+     * @param length the weighted number of terms
+     */
+    private record IndexedProduct(String[] terms, List<String> nameTerms, float length) {
+    }
+
+    /**
+     * The analyzed text of a product, ready to be added to the index
+     * @param frequencies the weighted frequency of each term
+     * @param nameTerms the terms of the name and category
+     * @param length the weighted number of terms
+     */
+    private record AnalyzedProduct(Map<String, Float> frequencies, List<String> nameTerms, float length) {
+
+        static AnalyzedProduct of(Product product) {
+            Map<String, Float> frequencies = new HashMap<>();
+            addField(frequencies, product.getName(), NAME_WEIGHT);
+            addField(frequencies, product.getCategory(), CATEGORY_WEIGHT);
+            addField(frequencies, product.getDescription(), DESCRIPTION_WEIGHT);
+
+            float length = 0;
+            for (float frequency : frequencies.values()) {
+                length += frequency;
+            }
+            List<String> nameTerms = new ArrayList<>(ProductTextAnalyzer.analyze(product.getName()));
+            nameTerms.addAll(ProductTextAnalyzer.analyze(product.getCategory()));
+            return new AnalyzedProduct(frequencies, nameTerms, length);
+        }
+
+        private static void addField(Map<String, Float> frequencies, String text, float weight) {
+            for (String term : ProductTextAnalyzer.analyze(text)) {
+                frequencies.merge(term, weight, Float::sum);
+            }
+        }
+    }
+
+    private static final class Index {
+
+        private final Map<String, Postings> postings = new HashMap<>();
+        private final Map<Long, IndexedProduct> documents = new HashMap<>();
+        private final TrigramVocabulary vocabulary = new TrigramVocabulary();
+        private double totalLength;
+
+        void apply(ProductChangedEvent event) {
+            if (event.isDeleted()) {
+                remove(event.productId());
+            } else {
+                put(event.product());
+            }
+        }
+
+        void put(Product product) {
+            put(product.getId(), AnalyzedProduct.of(product));
+        }
+
+        void put(long id, AnalyzedProduct product) {
+            remove(id);
+
+            for (Map.Entry<String, Float> term : product.frequencies().entrySet()) {
+                postings.computeIfAbsent(term.getKey(), key -> new Postings())
+                        .add(id, term.getValue(), product.length());
+            }
+            product.nameTerms().forEach(vocabulary::add);
+            documents.put(id, new IndexedProduct(
+                    product.frequencies().keySet().toArray(new String[0]), product.nameTerms(), product.length()));
+            totalLength += product.length();
+        }
+
+        void remove(long id) {
+            IndexedProduct indexed = documents.remove(id);
+            if (indexed == null) {
+                return;
+            }
+            for (String term : indexed.terms()) {
+                Postings list = postings.get(term);
+                list.remove(id);
+                if (list.size == 0) {
+                    postings.remove(term);
+                }
+            }
+            indexed.nameTerms().forEach(vocabulary::remove);
+            totalLength -= indexed.length();
+        }
+
+        /**
+         * Weigh the query terms: a term found in the catalog counts fully, and one
+         * that is not is replaced by the most similar vocabulary words, weighted by
+         * their similarity
+         */
+        Map<String, Double> expand(Set<String> terms) {
+            Map<String, Double> weighted = new LinkedHashMap<>();
+            for (String term : terms) {
+                if (postings.containsKey(term)) {
+                    weighted.merge(term, 1.0, Math::max);
+                    continue;
+                }
+                for (TrigramVocabulary.Match match : vocabulary.similar(term, FUZZY_THRESHOLD, FUZZY_EXPANSIONS)) {
+                    weighted.merge(match.word(), match.similarity(), Math::max);
+                }
+            }
+            return weighted;
+        }
+
+        LongKeyedAccumulator score(Map<String, Double> terms) {
+            int documentCount = documents.size();
+            double averageLength = documentCount > 0 ? totalLength / documentCount : 0;
+            int expected = 0;
+            for (String term : terms.keySet()) {
+                Postings list = postings.get(term);
+                expected = Math.max(expected, list != null ? list.size : 0);
+            }
+
+            // Rank by BM25 score, then by the number of query terms matched
+            LongKeyedAccumulator scores = new LongKeyedAccumulator(expected);
+            for (Map.Entry<String, Double> term : terms.entrySet()) {
+                Postings list = postings.get(term.getKey());
+                if (list == null) {
+                    continue;
+                }
+                double idf = term.getValue() * Math.log(1 + (documentCount - list.size + 0.5) / (list.size + 0.5));
+                for (int i = 0; i < list.size; i++) {
+                    double frequency = list.frequencies[i];
+                    double norm = K1 * (1 - B + B * list.lengths[i] / averageLength);
+                    double score = idf * frequency * (K1 + 1) / (frequency + norm);
+                    scores.add(list.ids[i], Math.round(score * SCORE_SCALE), 1);
+                }
+            }
+            return scores;
+        }
+    }
+}
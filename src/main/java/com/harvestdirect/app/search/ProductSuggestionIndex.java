@@ -0,0 +1,288 @@
+package com.harvestdirect.app.search;
+
+import com.harvestdirect.app.dto.ProductQuantity;
+import com.harvestdirect.app.event.CatalogReloadEvent;
+import com.harvestdirect.app.event.ProductChangedEvent;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.repository.OrderItemRepository;
+import com.harvestdirect.app.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Prefix suggestions for the product search box, drawn from product names and
+ * categories. Each distinct phrase is weighted by the number of products carrying
+ * it plus the quantity of those products sold recently, and kept in a radix trie.
+ * The trie is built when the application is ready, updated from product change
+ * events and re-weighted from sales on a schedule; lookups never query the
+ * database.
+ */
+@Component
+public class ProductSuggestionIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSuggestionIndex.class);
+
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private final ProductRepository productRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final Duration salesWindow;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Suggestions suggestions = new Suggestions();
+    private List<ProductChangedEvent> changedDuringRebuild;
+
+    public ProductSuggestionIndex(
+            ProductRepository productRepository,
+            OrderItemRepository orderItemRepository,
+            @Value("${search.suggest.sales-window-days:30}") long salesWindowDays) {
+        this.productRepository = productRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.salesWindow = Duration.ofDays(salesWindowDays);
+    }
+
+    /**
+     * Get the heaviest suggestions starting with a prefix
+     * @param prefix the text typed so far
+     * @param limit the maximum number of suggestions
+     * @return the suggestions, most relevant first
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            return suggestions.trie.complete(key, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the suggestions from the database. Changes that commit while the
+     * build runs are replayed onto the new suggestions before they are swapped in.
+     */
+    @EventListener({ApplicationReadyEvent.class, CatalogReloadEvent.class})
+    public void rebuild() {
+        long startedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Suggestions rebuilt = new Suggestions();
+        try {
+            rebuilt.applySales(loadRecentSales());
+            ScrollPosition position = ScrollPosition.keyset();
+            Window<Product> products;
+            do {
+                products = productRepository.findAllBy(position, Sort.by("id"), Limit.of(REBUILD_PAGE_SIZE));
+                products.forEach(rebuilt::put);
+                if (!products.isEmpty()) {
+                    position = products.positionAt(products.size() - 1);
+                }
+            } while (products.hasNext());
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild.forEach(rebuilt::apply);
+            changedDuringRebuild = null;
+            suggestions = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Product suggestions built: {} phrases from {} products in {} ms",
+                rebuilt.trie.size(), rebuilt.listings.size(), System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Re-weight the suggestions from the latest sales
+     */
+    @Scheduled(fixedDelayString = "${search.suggest.refresh-interval-ms:600000}",
+               initialDelayString = "${search.suggest.refresh-interval-ms:600000}")
+    public void refreshSales() {
+        Map<Long, Long> recentSales = loadRecentSales();
+        lock.writeLock().lock();
+        try {
+            suggestions.applySales(recentSales);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            suggestions.apply(event);
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Map<Long, Long> loadRecentSales() {
+        Date since = Date.from(Instant.now().minus(salesWindow));
+        Map<Long, Long> recentSales = new HashMap<>();
+        for (ProductQuantity sold : orderItemRepository.sumQuantityByProductSince(since)) {
+            recentSales.put(sold.productId(), sold.quantity());
+        }
+        return recentSales;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : ProductTextAnalyzer.fold(text).trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * One suggested phrase: the text shown, and the counts its weight is made of
+     */
+    private static final class Phrase {
+
+        private final String text;
+        private int products;
+        private long sales;
+
+        Phrase(String text) {
+            this.text = text;
+        }
+
+        long weight() {
+            return products + sales;
+        }
+    }
+
+    /**
+     * The phrases a product contributes, by normalized key
+     */
+    private record Listing(String nameKey, String categoryKey) {
+    }
+
+    private static final class Suggestions {
+
+        private final SuggestionTrie trie = new SuggestionTrie();
+        private final Map<String, Phrase> phrases = new HashMap<>();
+        private final Map<Long, Listing> listings = new HashMap<>();
+        private Map<Long, Long> recentSales = Map.of();
+
+        void apply(ProductChangedEvent event) {
+            if (event.isDeleted()) {
+                remove(event.productId());
+            } else {
+                put(event.product());
+            }
+        }
+
+        void put(Product product) {
+            remove(product.getId());
+            Listing listing = new Listing(normalize(product.getName()), normalize(product.getCategory()));
+            listings.put(product.getId(), listing);
+            long sold = recentSales.getOrDefault(product.getId(), 0L);
+            add(listing.nameKey(), product.getName(), sold);
+            if (!listing.categoryKey().equals(listing.nameKey())) {
+                add(listing.categoryKey(), product.getCategory(), sold);
+            }
+        }
+
+        void remove(Long productId) {
+            Listing listing = listings.remove(productId);
+            if (listing == null) {
+                return;
+            }
+            long sold = recentSales.getOrDefault(productId, 0L);
+            subtract(listing.nameKey(), sold);
+            if (!listing.categoryKey().equals(listing.nameKey())) {
+                subtract(listing.categoryKey(), sold);
+            }
+        }
+
+        /**
+         * Replace the recent sales figures, re-weighting only the phrases of
+         * products whose figure changed
+         */
+        void applySales(Map<Long, Long> updated) {
+            Set<Long> changed = new HashSet<>(recentSales.keySet());
+            changed.addAll(updated.keySet());
+            Set<String> touched = new HashSet<>();
+            for (Long productId : changed) {
+                long delta = updated.getOrDefault(productId, 0L) - recentSales.getOrDefault(productId, 0L);
+                Listing listing = listings.get(productId);
+                if (delta == 0 || listing == null) {
+                    continue;
+                }
+                adjustSales(listing.nameKey(), delta, touched);
+                if (!listing.categoryKey().equals(listing.nameKey())) {
+                    adjustSales(listing.categoryKey(), delta, touched);
+                }
+            }
+            recentSales = updated;
+            for (String key : touched) {
+                Phrase phrase = phrases.get(key);
+                trie.put(key, phrase.text, phrase.weight());
+            }
+        }
+
+        private void add(String key, String text, long sold) {
+            if (key.isEmpty()) {
+                return;
+            }
+            Phrase phrase = phrases.computeIfAbsent(key, k -> new Phrase(text.trim()));
+            phrase.products++;
+            phrase.sales += sold;
+            trie.put(key, phrase.text, phrase.weight());
+        }
+
+        private void subtract(String key, long sold) {
+            Phrase phrase = phrases.get(key);
+            if (phrase == null) {
+                return;
+            }
+            phrase.products--;
+            phrase.sales -= sold;
+            if (phrase.products <= 0) {
+                phrases.remove(key);
+                trie.remove(key);
+            } else {
+                trie.put(key, phrase.text, phrase.weight());
+            }
+        }
+
+        private void adjustSales(String key, long delta, Set<String> touched) {
+            Phrase phrase = phrases.get(key);
+            if (phrase != null) {
+                phrase.sales += delta;
+                touched.add(key);
+            }
+        }
+    }
+}
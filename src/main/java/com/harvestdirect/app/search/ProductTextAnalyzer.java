@@ -0,0 +1,114 @@
+package com.harvestdirect.app.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns product text and search queries into index terms: accents are folded,
+ * text is lower-cased and split on anything that is not a letter or digit, common
+ * English words are dropped and plurals are reduced to their singular form. The
+ * stemmer is deliberately light, tuned for produce and seafood names, so that
+ * "tomatoes", "berries", "peaches" and "oysters" match their singulars without
+ * conflating unrelated words.
+ */
+public final class ProductTextAnalyzer {
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "is", "it",
+            "of", "on", "or", "per", "the", "this", "to", "with");
+
+    private static final Map<String, String> IRREGULAR = Map.ofEntries(
+            Map.entry("leaves", "leaf"),
+            Map.entry("loaves", "loaf"),
+            Map.entry("halves", "half"),
+            Map.entry("calves", "calf"),
+            Map.entry("octopi", "octopus"),
+            Map.entry("octopuses", "octopus"),
+            Map.entry("molasses", "molasses"),
+            Map.entry("species", "species"),
+            Map.entry("series", "series"));
+
+    private ProductTextAnalyzer() {
+    }
+
+    /**
+     * Get the index terms of a text, in order of occurrence
+     * @param text the text, may be null
+     * @return the terms, with repeats
+     */
+    public static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = folded.substring(start, i);
+                if (!STOP_WORDS.contains(token)) {
+                    terms.add(stem(token));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Lower-case a text and strip its diacritics, so that "Jalapeño" reads as "jalapeno"
+     * @param text the text
+     * @return the folded text
+     */
+    public static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(c);
+            }
+        }
+        return folded.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reduce a lower-case word to its singular form
+     * @param word the word
+     * @return the stem
+     */
+    static String stem(String word) {
+        String irregular = IRREGULAR.get(word);
+        if (irregular != null) {
+            return irregular;
+        }
+        int length = word.length();
+        if (length <= 3 || !word.endsWith("s") || Character.isDigit(word.charAt(length - 2))) {
+            return word;
+        }
+        // berries, cherries, anchovies; but not pies
+        if (word.endsWith("ies") && length > 4) {
+            return word.substring(0, length - 3) + "y";
+        }
+        // tomatoes, potatoes, mangoes
+        if (word.endsWith("oes")) {
+            return word.substring(0, length - 2);
+        }
+        // peaches, radishes, boxes, glasses
+        if (word.endsWith("ches") || word.endsWith("shes") || word.endsWith("xes") || word.endsWith("sses")) {
+            return word.substring(0, length - 2);
+        }
+        // Keep bass, asparagus, citrus and hibiscus whole
+        if (word.endsWith("ss") || word.endsWith("us") || word.endsWith("is")) {
+            return word;
+        }
+        return word.substring(0, length - 1);
+    }
+}
@@ -0,0 +1,230 @@
+package com.harvestdirect.app.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Radix trie from keys to weighted suggestions, answering "the k heaviest
+ * suggestions whose key starts with this prefix". Chains of single-child nodes
+ * are collapsed into one edge label, and children are held in an array sorted by
+ * first character. Every node records the highest weight in its subtree, so a
+ * lookup expands the heaviest branches first and stops after k results instead of
+ * visiting every completion. Not thread-safe.
+ */
+public final class SuggestionTrie {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+
+        private String label;
+        private Node[] children = NO_CHILDREN;
+        private String value;
+        private long weight;
+        private long maxWeight = Long.MIN_VALUE;
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+
+    private record Candidate(Node node, boolean complete, long priority) {
+    }
+
+    private final Node root = new Node("");
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a suggestion, or replace the suggestion stored under the same key
+     * @param key the key that prefixes are matched against
+     * @param value the suggestion text
+     * @param weight the suggestion weight, heavier first
+     */
+    public void put(String key, String value, long weight) {
+        put(root, key, 0, value, weight);
+    }
+
+    /**
+     * Remove the suggestion stored under a key, if any
+     * @param key the key
+     */
+    public void remove(String key) {
+        remove(root, key, 0);
+    }
+
+    /**
+     * Get the heaviest suggestions whose key starts with a prefix
+     * @param prefix the prefix
+     * @param limit the maximum number of suggestions
+     * @return the suggestions, heaviest first
+     */
+    public List<String> complete(String prefix, int limit) {
+        Node node = root;
+        int offset = 0;
+        while (offset < prefix.length()) {
+            int index = childIndex(node, prefix.charAt(offset));
+            if (index < 0) {
+                return List.of();
+            }
+            Node child = node.children[index];
+            int common = commonPrefixLength(child.label, prefix, offset);
+            if (offset + common == prefix.length()) {
+                // The prefix ends inside or at the end of this edge
+                node = child;
+                break;
+            }
+            if (common < child.label.length()) {
+                return List.of();
+            }
+            offset += common;
+            node = child;
+        }
+
+        List<String> results = new ArrayList<>(limit);
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(
+                Comparator.comparingLong(Candidate::priority).reversed());
+        if (node.maxWeight != Long.MIN_VALUE) {
+            queue.add(new Candidate(node, false, node.maxWeight));
+        }
+        while (!queue.isEmpty() && results.size() < limit) {
+            Candidate candidate = queue.poll();
+            Node next = candidate.node();
+            if (candidate.complete()) {
+                results.add(next.value);
+                continue;
+            }
+            if (next.value != null) {
+                queue.add(new Candidate(next, true, next.weight));
+            }
+            for (Node child : next.children) {
+                queue.add(new Candidate(child, false, child.maxWeight));
+            }
+        }
+        return results;
+    }
+
+    private void put(Node node, String key, int offset, String value, long weight) {
+        if (offset == key.length()) {
+            if (node.value == null) {
+                size++;
+            }
+            node.value = value;
+            node.weight = weight;
+            updateMaxWeight(node);
+            return;
+        }
+
+        int index = childIndex(node, key.charAt(offset));
+        if (index < 0) {
+            Node leaf = new Node(key.substring(offset));
+            leaf.value = value;
+            leaf.weight = weight;
+            leaf.maxWeight = weight;
+            size++;
+            insertChild(node, -index - 1, leaf);
+            updateMaxWeight(node);
+            return;
+        }
+
+        Node child = node.children[index];
+        int common = commonPrefixLength(child.label, key, offset);
+        if (common < child.label.length()) {
+            // Split the edge where the key leaves it
+            Node split = new Node(child.label.substring(0, common));
+            child.label = child.label.substring(common);
+            split.children = new Node[] {child};
+            updateMaxWeight(split);
+            node.children[index] = split;
+            child = split;
+        }
+        put(child, key, offset + common, value, weight);
+        updateMaxWeight(node);
+    }
+
+    private boolean remove(Node node, String key, int offset) {
+        if (offset == key.length()) {
+            if (node.value == null) {
+                return false;
+            }
+            node.value = null;
+            size--;
+            updateMaxWeight(node);
+            return true;
+        }
+
+        int index = childIndex(node, key.charAt(offset));
+        if (index < 0 || !key.startsWith(node.children[index].label, offset)) {
+            return false;
+        }
+        Node child = node.children[index];
+        if (!remove(child, key, offset + child.label.length())) {
+            return false;
+        }
+
+        // Drop the emptied child, or merge it with its only remaining child
+        if (child.value == null && child.children.length == 0) {
+            removeChild(node, index);
+        } else if (child.value == null && child.children.length == 1) {
+            Node grandchild = child.children[0];
+            grandchild.label = child.label + grandchild.label;
+            node.children[index] = grandchild;
+        }
+        updateMaxWeight(node);
+        return true;
+    }
+
+    private static void updateMaxWeight(Node node) {
+        long max = node.value != null ? node.weight : Long.MIN_VALUE;
+        for (Node child : node.children) {
+            max = Math.max(max, child.maxWeight);
+        }
+        node.maxWeight = max;
+    }
+
+    private static int childIndex(Node node, char first) {
+        int low = 0;
+        int high = node.children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char c = node.children[middle].label.charAt(0);
+            if (c < first) {
+                low = middle + 1;
+            } else if (c > first) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static void insertChild(Node node, int index, Node child) {
+        Node[] children = new Node[node.children.length + 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        children[index] = child;
+        System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+        node.children = children;
+    }
+
+    private static void removeChild(Node node, int index) {
+        Node[] children = node.children.length == 1 ? NO_CHILDREN : new Node[node.children.length - 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        System.arraycopy(node.children, index + 1, children, index, node.children.length - index - 1);
+        node.children = children;
+    }
+
+    private static int commonPrefixLength(String label, String key, int offset) {
+        int length = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < length && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+}
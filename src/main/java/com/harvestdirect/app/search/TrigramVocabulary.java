@@ -0,0 +1,109 @@
+package com.harvestdirect.app.search;
+
+import java.util.*;
+
+/**
+ * Character-trigram index over a vocabulary of words, for finding the words
+ * closest to a misspelled one. Words are padded with two leading blanks and one
+ * trailing blank, so "salmon" yields "  s", " sa", "sal", "alm", "lmo", "mon" and
+ * "on ", and similarity is the number of shared trigrams over the number of
+ * distinct trigrams in either word. Each word is counted by the number of times
+ * it was added, and leaves the index when it has been removed as often.
+ */
+public final class TrigramVocabulary {
+
+    private final Map<String, Integer> wordCounts = new HashMap<>();
+    private final Map<String, Set<String>> wordsByTrigram = new HashMap<>();
+
+    /**
+     * Add one occurrence of a word
+     * @param word the word
+     */
+    public void add(String word) {
+        if (wordCounts.merge(word, 1, Integer::sum) == 1) {
+            for (String trigram : trigrams(word)) {
+                wordsByTrigram.computeIfAbsent(trigram, key -> new HashSet<>()).add(word);
+            }
+        }
+    }
+
+    /**
+     * Remove one occurrence of a word
+     * @param word the word
+     */
+    public void remove(String word) {
+        Integer count = wordCounts.get(word);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            wordCounts.put(word, count - 1);
+            return;
+        }
+        wordCounts.remove(word);
+        for (String trigram : trigrams(word)) {
+            Set<String> words = wordsByTrigram.get(trigram);
+            words.remove(word);
+            if (words.isEmpty()) {
+                wordsByTrigram.remove(trigram);
+            }
+        }
+    }
+
+    public int size() {
+        return wordCounts.size();
+    }
+
+    /**
+     * Find the words most similar to a word
+     * @param word the word to match
+     * @param threshold the minimum similarity, between 0 and 1
+     * @param limit the maximum number of matches
+     * @return the matches, most similar first
+     */
+    public List<Match> similar(String word, double threshold, int limit) {
+        Set<String> queryTrigrams = trigrams(word);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            Set<String> words = wordsByTrigram.get(trigram);
+            if (words != null) {
+                for (String candidate : words) {
+                    shared.merge(candidate, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<String, Integer> candidate : shared.entrySet()) {
+            int common = candidate.getValue();
+            int union = queryTrigrams.size() + trigramCount(candidate.getKey()) - common;
+            double similarity = (double) common / union;
+            if (similarity >= threshold) {
+                matches.add(new Match(candidate.getKey(), similarity));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(Match::similarity).reversed().thenComparing(Match::word));
+        return matches.size() > limit ? List.copyOf(matches.subList(0, limit)) : matches;
+    }
+
+    private static int trigramCount(String word) {
+        return trigrams(word).size();
+    }
+
+    static Set<String> trigrams(String word) {
+        String padded = "  " + word + " ";
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * A vocabulary word similar to the one searched for
+     * @param word the vocabulary word
+     * @param similarity the trigram similarity, between 0 and 1
+     */
+    public record Match(String word, double similarity) {
+    }
+}
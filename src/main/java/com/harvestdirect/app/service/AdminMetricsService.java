@@ -0,0 +1,93 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.dto.CategoryCount;
+import com.harvestdirect.app.dto.StatusCount;
+import com.harvestdirect.app.model.Order;
+import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.OrderRepository;
+import com.harvestdirect.app.repository.ProductRepository;
+import com.harvestdirect.app.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Service keeping an in-memory snapshot of the admin metrics. The snapshot is
+ * built from count and sum queries, refreshed on a schedule, and recomputed on
+ * read if it is older than the configured staleness bound.
+ */
+@Service
+public class AdminMetricsService {
+
+    private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+    private final OrderRepository orderRepository;
+    private final Duration maxStaleness;
+
+    private volatile AdminMetricsSnapshot snapshot;
+
+    public AdminMetricsService(
+            UserRepository userRepository,
+            ProductRepository productRepository,
+            OrderRepository orderRepository,
+            @Value("${analytics.admin.max-staleness-ms:300000}") long maxStalenessMillis) {
+        this.userRepository = userRepository;
+        this.productRepository = productRepository;
+        this.orderRepository = orderRepository;
+        this.maxStaleness = Duration.ofMillis(maxStalenessMillis);
+    }
+
+    /**
+     * Get the current admin metrics, never older than the staleness bound
+     * @return the metrics snapshot
+     */
+    public AdminMetricsSnapshot getSnapshot() {
+        AdminMetricsSnapshot current = snapshot;
+        if (current == null || current.isOlderThan(maxStaleness)) {
+            current = refreshIfStale();
+        }
+        return current;
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.admin.refresh-interval-ms:60000}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    private synchronized AdminMetricsSnapshot refreshIfStale() {
+        // Another request may have refreshed while this one waited for the lock
+        AdminMetricsSnapshot current = snapshot;
+        if (current != null && !current.isOlderThan(maxStaleness)) {
+            return current;
+        }
+        return refresh();
+    }
+
+    private synchronized AdminMetricsSnapshot refresh() {
+        Map<String, Long> productsByCategory = new LinkedHashMap<>();
+        for (CategoryCount categoryCount : productRepository.countByCategory()) {
+            productsByCategory.put(categoryCount.category(), categoryCount.count());
+        }
+        
+        Map<Order.OrderStatus, Long> ordersByStatus = new EnumMap<>(Order.OrderStatus.class);
+        for (StatusCount statusCount : orderRepository.countGroupByStatus()) {
+            ordersByStatus.put(statusCount.status(), statusCount.count());
+        }
+        
+        snapshot = new AdminMetricsSnapshot(
+                userRepository.countByRole(User.UserRole.FARMER),
+                userRepository.countByRole(User.UserRole.FISHERMAN),
+                userRepository.countByRole(User.UserRole.WHOLESALER),
+                productsByCategory,
+                ordersByStatus,
+                orderRepository.sumTotalAmount(),
+                Instant.now());
+        return snapshot;
+    }
+}
@@ -0,0 +1,29 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.model.Order;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * System-wide metrics for the admin dashboard, as of one refresh
+ */
+public record AdminMetricsSnapshot(
+        long farmerCount,
+        long fishermanCount,
+        long wholesalerCount,
+        Map<String, Long> productsByCategory,
+        Map<Order.OrderStatus, Long> ordersByStatus,
+        BigDecimal totalSales,
+        Instant computedAt) {
+
+    public long totalUsers() {
+        return farmerCount + fishermanCount + wholesalerCount;
+    }
+
+    public boolean isOlderThan(Duration maxAge) {
+        return computedAt.plus(maxAge).isBefore(Instant.now());
+    }
+}
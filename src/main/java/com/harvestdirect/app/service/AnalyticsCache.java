@@ -0,0 +1,230 @@
+package com.harvestdirect.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.harvestdirect.app.event.OrderDataChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Size and TTL bounded cache of analytics results. Every key carries the user's
+ * order-data version, which changes after each committed order write, so a
+ * result computed before the write can no longer be found afterwards.
+ * <p>
+ * Other application nodes learn of a write through a Postgres notification that
+ * the writing transaction sends, and which is therefore delivered only if it
+ * commits, in the same way as for the {@link ProductCache}. Versions are random
+ * rather than counted, so that a version seen on another node or before a restart
+ * never names different data here; export entity tags, which include the version,
+ * are therefore only recognised by the node that issued them.
+ */
+@Component
+public class AnalyticsCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsCache.class);
+
+    private static final String CHANNEL = "analytics_cache";
+    // Postgres rejects payloads of 8000 bytes or more; larger changes reset every user
+    private static final int MAX_PAYLOAD_LENGTH = 7_900;
+    private static final String ALL_USERS = "*";
+
+    private final Cache<Key, Object> cache;
+    private final ConcurrentMap<Long, Long> versions = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter remoteInvalidations;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final boolean notifyEnabled;
+    private final String databaseUrl;
+    private final String databaseUsername;
+    private final String databasePassword;
+    // The version of users without writes since the last reset
+    private volatile long baseVersion = newVersion();
+    private NotificationListener listener;
+
+    public AnalyticsCache(
+            MeterRegistry meterRegistry,
+            JdbcTemplate jdbcTemplate,
+            @Value("${analytics.cache.maximum-size:10000}") long maximumSize,
+            @Value("${analytics.cache.ttl-seconds:600}") long ttlSeconds,
+            @Value("${analytics.cache.notify.enabled:true}") boolean notifyEnabled,
+            @Value("${spring.datasource.url:}") String databaseUrl,
+            @Value("${spring.datasource.username:}") String databaseUsername,
+            @Value("${spring.datasource.password:}") String databasePassword) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "analytics");
+        this.remoteInvalidations = meterRegistry.counter("analytics.cache.remote.invalidations");
+        this.jdbcTemplate = jdbcTemplate;
+        // Notifications are a Postgres feature
+        this.notifyEnabled = notifyEnabled && databaseUrl.startsWith("jdbc:postgresql:");
+        this.databaseUrl = databaseUrl;
+        this.databaseUsername = databaseUsername;
+        this.databasePassword = databasePassword;
+    }
+
+    /**
+     * Get a cached metric, computing it on a miss. Results are shared between
+     * requests and must not be modified by callers.
+     * @param userId the user the metric belongs to
+     * @param startDate the start of the period, or null if the metric has none
+     * @param endDate the end of the period, or null if the metric has none
+     * @param metric the metric name, including any parameters such as a limit
+     * @param loader computes the metric on a miss
+     * @return the metric value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Long userId, Date startDate, Date endDate, String metric, Supplier<T> loader) {
+        Key key = new Key(userId, currentVersion(userId),
+                startDate != null ? startDate.getTime() : 0,
+                endDate != null ? endDate.getTime() : 0,
+                metric);
+        return (T) cache.get(key, k -> loader.get());
+    }
+
+    /**
+     * Get the version of a user's order data, which changes after every order write
+     * on any node
+     * @param userId the user id
+     * @return the current version
+     */
+    public long currentVersion(Long userId) {
+        return versions.getOrDefault(userId, baseVersion);
+    }
+
+    public void invalidateUser(Long userId) {
+        versions.put(userId, newVersion());
+    }
+
+    /**
+     * Give every user a new version, here and on the other nodes
+     */
+    public void invalidateAll() {
+        resetVersions();
+        if (notifyEnabled) {
+            sendNotification(Set.of());
+        }
+    }
+
+    @EventListener
+    public void notifyOrderDataChanged(OrderDataChangedEvent event) {
+        if (!notifyEnabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            sendNotification(Set.of(event.sellerId(), event.buyerId()));
+            return;
+        }
+        PendingNotification pending = TransactionSynchronizationManager.getSynchronizations().stream()
+                .filter(synchronization -> synchronization instanceof PendingNotification)
+                .map(PendingNotification.class::cast)
+                .findFirst()
+                .orElseGet(() -> {
+                    PendingNotification created = new PendingNotification();
+                    TransactionSynchronizationManager.registerSynchronization(created);
+                    return created;
+                });
+        pending.userIds.add(event.sellerId());
+        pending.userIds.add(event.buyerId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderDataChanged(OrderDataChangedEvent event) {
+        invalidateUser(event.sellerId());
+        invalidateUser(event.buyerId());
+    }
+
+    // An empty set stands for every user
+    private void sendNotification(Set<Long> userIds) {
+        String ids = userIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        String payload = nodeId + " "
+                + (!ids.isEmpty() && ids.length() <= MAX_PAYLOAD_LENGTH - nodeId.length() - 1 ? ids : ALL_USERS);
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, payload);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startListening() {
+        if (!notifyEnabled) {
+            return;
+        }
+        // Writes made while no connection was listening were missed
+        listener = new NotificationListener(CHANNEL, databaseUrl, databaseUsername, databasePassword,
+                reconnected -> resetVersions(), this::onNotification);
+        listener.start("analytics-cache-listener");
+    }
+
+    void onNotification(String payload) {
+        int separator = payload.indexOf(' ');
+        if (separator < 0 || payload.substring(0, separator).equals(nodeId)) {
+            // This node applied its own writes when they committed
+            return;
+        }
+        remoteInvalidations.increment();
+        try {
+            String ids = payload.substring(separator + 1);
+            if (ids.equals(ALL_USERS)) {
+                resetVersions();
+                return;
+            }
+            Arrays.stream(ids.split(",")).map(Long::valueOf).forEach(this::invalidateUser);
+        } catch (RuntimeException e) {
+            log.warn("Could not apply analytics change notification '{}'", payload, e);
+            resetVersions();
+        }
+    }
+
+    private void resetVersions() {
+        baseVersion = newVersion();
+        versions.clear();
+        cache.invalidateAll();
+    }
+
+    private static long newVersion() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    @PreDestroy
+    public void stopListening() {
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    private record Key(Long userId, long version, long startMillis, long endMillis, String metric) {
+    }
+
+    /**
+     * The users whose orders one transaction changed, sent to the other nodes before it commits
+     */
+    private final class PendingNotification implements TransactionSynchronization {
+
+        private final Set<Long> userIds = new LinkedHashSet<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            sendNotification(userIds);
+        }
+    }
+}
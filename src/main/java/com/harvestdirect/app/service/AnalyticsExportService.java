@@ -1,273 +1,311 @@
 package com.harvestdirect.app.service;
 
+import com.harvestdirect.app.dto.FrequentProduct;
+import com.harvestdirect.app.dto.OrderLine;
+import com.harvestdirect.app.dto.ProductSalesTotal;
+import com.harvestdirect.app.export.AnalyticsExportWriter;
 import com.harvestdirect.app.model.Order;
-import com.harvestdirect.app.model.Product;
 import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.OrderItemRepository;
+import com.harvestdirect.app.util.TimeSeries;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.time.LocalDate;
+import java.math.RoundingMode;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
- * Service for exporting analytics data in various formats
+ * Service for exporting analytics data in various formats. Reports are written
+ * section by section to an {@link AnalyticsExportWriter}, which decides the
+ * format and streams the output, so memory use does not grow with the period.
  */
 @Service
 public class AnalyticsExportService {
 
     private final AnalyticsService analyticsService;
+    private final OrderItemRepository orderItemRepository;
+    private final TransactionTemplate readOnlyTransaction;
 
-    public AnalyticsExportService(AnalyticsService analyticsService) {
+    public AnalyticsExportService(
+            AnalyticsService analyticsService,
+            OrderItemRepository orderItemRepository,
+            PlatformTransactionManager transactionManager) {
         this.analyticsService = analyticsService;
+        this.orderItemRepository = orderItemRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     /**
-     * Export seller analytics data in CSV format
+     * Export the analytics report for the user's role
+     * @param user the user
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param sections the sections to include in the export
+     * @param writer receives the report; the caller closes it
+     */
+    public void exportAnalytics(User user, Date startDate, Date endDate, List<String> sections,
+                                AnalyticsExportWriter writer) throws IOException {
+        switch (user.getRole()) {
+            case FARMER, FISHERMAN -> exportSellerAnalytics(user, startDate, endDate, sections, writer);
+            case WHOLESALER -> exportBuyerAnalytics(user, startDate, endDate, sections, writer);
+            case ADMIN -> exportAdminAnalytics(sections, writer);
+        }
+    }
+
+    /**
+     * Count the order lines an export with the "lines" section writes for the user
+     * @param user the user
+     * @param startDate the start date
+     * @param endDate the end date
+     * @return the number of order lines, zero for roles whose report has no lines section
+     */
+    public long countOrderLines(User user, Date startDate, Date endDate) {
+        return switch (user.getRole()) {
+            case FARMER, FISHERMAN -> orderItemRepository.countSellerOrderLines(user, startDate, endDate);
+            case WHOLESALER, ADMIN -> 0;
+        };
+    }
+
+    /**
+     * Export seller analytics data
      * @param seller the seller user
      * @param startDate the start date
      * @param endDate the end date
      * @param sections the sections to include in the export
-     * @return the CSV content as a byte array
+     * @param writer receives the report; the caller closes it
      */
-    public byte[] exportSellerAnalyticsCSV(User seller, Date startDate, Date endDate, List<String> sections) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        PrintWriter writer = new PrintWriter(out);
+    public void exportSellerAnalytics(User seller, Date startDate, Date endDate, List<String> sections,
+                                      AnalyticsExportWriter writer) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("Seller", seller.getName() + " (" + seller.getUsername() + ")");
+        properties.put("Period", formatDate(startDate) + " to " + formatDate(endDate));
+        properties.put("Generated on", formatDate(new Date()));
+        writer.beginReport("HarvestDirect Seller Analytics Report", properties);
         
-        writer.println("HarvestDirect Seller Analytics Report");
-        writer.println("Seller: " + seller.getName() + " (" + seller.getUsername() + ")");
-        writer.println("Period: " + formatDate(startDate) + " to " + formatDate(endDate));
-        writer.println("Generated on: " + formatDate(new Date()));
-        writer.println();
+        SellerAnalyticsSnapshot snapshot = analyticsService.getSellerAnalyticsSnapshot(seller, startDate, endDate, 10);
         
         // Overview section
         if (sections.contains("overview")) {
-            writer.println("Overview");
-            writer.println("-------------------------------------------------");
-            
-            BigDecimal totalSales = analyticsService.getSellerTotalSales(seller, startDate, endDate);
-            Map<Order.OrderStatus, Long> orderStatusCounts = analyticsService.getOrderCountByStatus(seller, startDate, endDate);
-            long totalOrders = orderStatusCounts.values().stream().mapToLong(Long::longValue).sum();
+            Map<Order.OrderStatus, Long> orderStatusCounts = snapshot.orderCountByStatus();
+            long totalOrders = snapshot.totalOrders();
             long completedOrders = orderStatusCounts.getOrDefault(Order.OrderStatus.DELIVERED, 0L);
-            double completionRate = totalOrders > 0 ? (double) completedOrders / totalOrders * 100 : 0;
             
-            writer.println("Total Sales,$" + totalSales);
-            writer.println("Total Orders," + totalOrders);
-            writer.println("Completed Orders," + completedOrders);
-            writer.println("Completion Rate," + String.format("%.2f%%", completionRate));
-            writer.println();
+            writer.beginSummary("Overview");
+            writer.field("Total Sales ($)", snapshot.totalSales());
+            writer.field("Total Orders", totalOrders);
+            writer.field("Completed Orders", completedOrders);
+            writer.field("Completion Rate (%)", percentage(completedOrders, totalOrders));
+            writer.endSection();
         }
         
         // Sales data section
         if (sections.contains("sales")) {
-            writer.println("Sales Over Time");
-            writer.println("-------------------------------------------------");
-            writer.println("Date,Sales Amount ($)");
+            writer.beginTable("Sales Over Time", "Date", "Sales Amount ($)");
+            writeDailyRows(snapshot.salesOverTime(), writer);
+            writer.endSection();
             
-            Map<LocalDate, BigDecimal> salesOverTime = analyticsService.getSellerSalesOverTime(seller, startDate, endDate);
-            salesOverTime.forEach((date, amount) -> {
-                writer.println(date + "," + amount);
-            });
-            writer.println();
-            
-            writer.println("Sales by Category");
-            writer.println("-------------------------------------------------");
-            writer.println("Category,Sales Amount ($)");
-            
-            Map<String, BigDecimal> salesByCategory = analyticsService.getSellerSalesByCategory(seller, startDate, endDate);
-            salesByCategory.forEach((category, amount) -> {
-                writer.println(category + "," + amount);
-            });
-            writer.println();
+            writer.beginTable("Sales by Category", "Category", "Sales Amount ($)");
+            for (Map.Entry<String, BigDecimal> entry : snapshot.salesByCategory().entrySet()) {
+                writer.row(entry.getKey(), entry.getValue());
+            }
+            writer.endSection();
         }
         
         // Product information section
         if (sections.contains("products")) {
-            writer.println("Top Selling Products");
-            writer.println("-------------------------------------------------");
-            writer.println("Rank,Product ID,Product Name,Category,Quantity Sold,Revenue ($)");
-            
-            List<Map<String, Object>> topProducts = analyticsService.getTopSellingProducts(seller, startDate, endDate, 10);
+            writer.beginTable("Top Selling Products",
+                    "Rank", "Product ID", "Product Name", "Category", "Quantity Sold", "Revenue ($)");
             int rank = 1;
-            for (Map<String, Object> productData : topProducts) {
-                Product product = (Product) productData.get("product");
-                int quantitySold = (Integer) productData.get("quantitySold");
-                BigDecimal revenue = (BigDecimal) productData.get("revenue");
-                
-                writer.println(rank + "," + product.getId() + "," + product.getName() + "," + 
-                               product.getCategory() + "," + quantitySold + "," + revenue);
+            for (ProductSalesTotal productData : snapshot.topProducts()) {
+                writer.row(rank, productData.productId(), productData.name(), productData.category(),
+                        productData.quantitySold(), productData.revenue());
                 rank++;
             }
-            writer.println();
+            writer.endSection();
         }
         
         // Order details section
         if (sections.contains("orders")) {
-            writer.println("Order Status Breakdown");
-            writer.println("-------------------------------------------------");
-            writer.println("Status,Count,Percentage");
-            
-            Map<Order.OrderStatus, Long> orderStatusCounts = analyticsService.getOrderCountByStatus(seller, startDate, endDate);
-            long totalOrders = orderStatusCounts.values().stream().mapToLong(Long::longValue).sum();
-            
-            for (Map.Entry<Order.OrderStatus, Long> entry : orderStatusCounts.entrySet()) {
-                String status = entry.getKey().name();
+            writer.beginTable("Order Status Breakdown", "Status", "Count", "Percentage (%)");
+            long totalOrders = snapshot.totalOrders();
+            for (Map.Entry<Order.OrderStatus, Long> entry : snapshot.orderCountByStatus().entrySet()) {
                 long count = entry.getValue();
-                double percentage = totalOrders > 0 ? (double) count / totalOrders * 100 : 0;
-                
-                writer.println(status + "," + count + "," + String.format("%.2f%%", percentage));
+                writer.row(entry.getKey().name(), count, percentage(count, totalOrders));
             }
+            writer.endSection();
         }
         
-        writer.flush();
-        return out.toByteArray();
+        // Order lines section, every item sold in the period
+        if (sections.contains("lines")) {
+            writer.beginTable("Order Lines", "Order ID", "Order Date", "Status", "Buyer",
+                    "Product ID", "Product Name", "Category", "Quantity", "Unit Price ($)", "Subtotal ($)");
+            writeOrderLines(seller, startDate, endDate, writer);
+            writer.endSection();
+        }
     }
 
     /**
-     * Export buyer analytics data in CSV format
+     * Export buyer analytics data
      * @param buyer the buyer user
      * @param startDate the start date
      * @param endDate the end date
      * @param sections the sections to include in the export
-     * @return the CSV content as a byte array
+     * @param writer receives the report; the caller closes it
      */
-    public byte[] exportBuyerAnalyticsCSV(User buyer, Date startDate, Date endDate, List<String> sections) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        PrintWriter writer = new PrintWriter(out);
-        
-        writer.println("HarvestDirect Buyer Analytics Report");
-        writer.println("Buyer: " + buyer.getName() + " (" + buyer.getUsername() + ")");
-        writer.println("Period: " + formatDate(startDate) + " to " + formatDate(endDate));
-        writer.println("Generated on: " + formatDate(new Date()));
-        writer.println();
+    public void exportBuyerAnalytics(User buyer, Date startDate, Date endDate, List<String> sections,
+                                     AnalyticsExportWriter writer) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("Buyer", buyer.getName() + " (" + buyer.getUsername() + ")");
+        properties.put("Period", formatDate(startDate) + " to " + formatDate(endDate));
+        properties.put("Generated on", formatDate(new Date()));
+        writer.beginReport("HarvestDirect Buyer Analytics Report", properties);
         
         // Overview section
         if (sections.contains("overview")) {
-            writer.println("Overview");
-            writer.println("-------------------------------------------------");
-            
-            Map<LocalDate, BigDecimal> purchasesOverTime = analyticsService.getBuyerPurchasesOverTime(buyer, startDate, endDate);
-            BigDecimal totalPurchases = purchasesOverTime.values().stream()
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            long orderCount = purchasesOverTime.size();
+            TimeSeries purchasesOverTime = analyticsService.getBuyerPurchasesOverTime(buyer, startDate, endDate);
+            BigDecimal totalPurchases = purchasesOverTime.total();
+            long orderCount = purchasesOverTime.days();
             BigDecimal averageOrderValue = orderCount > 0 
-                    ? totalPurchases.divide(new BigDecimal(orderCount), 2, BigDecimal.ROUND_HALF_UP)
+                    ? totalPurchases.divide(new BigDecimal(orderCount), 2, RoundingMode.HALF_UP)
                     : BigDecimal.ZERO;
             
-            writer.println("Total Purchases,$" + totalPurchases);
-            writer.println("Number of Orders," + orderCount);
-            writer.println("Average Order Value,$" + averageOrderValue);
-            writer.println();
+            writer.beginSummary("Overview");
+            writer.field("Total Purchases ($)", totalPurchases);
+            writer.field("Number of Orders", orderCount);
+            writer.field("Average Order Value ($)", averageOrderValue);
+            writer.endSection();
         }
         
         // Purchases data section
         if (sections.contains("purchases")) {
-            writer.println("Purchases Over Time");
-            writer.println("-------------------------------------------------");
-            writer.println("Date,Purchase Amount ($)");
-            
-            Map<LocalDate, BigDecimal> purchasesOverTime = analyticsService.getBuyerPurchasesOverTime(buyer, startDate, endDate);
-            purchasesOverTime.forEach((date, amount) -> {
-                writer.println(date + "," + amount);
-            });
-            writer.println();
-            
-            writer.println("Purchases by Category");
-            writer.println("-------------------------------------------------");
-            writer.println("Category,Purchase Amount ($)");
+            writer.beginTable("Purchases Over Time", "Date", "Purchase Amount ($)");
+            writeDailyRows(analyticsService.getBuyerPurchasesOverTime(buyer, startDate, endDate), writer);
+            writer.endSection();
             
+            writer.beginTable("Purchases by Category", "Category", "Purchase Amount ($)");
             Map<String, BigDecimal> purchasesByCategory = analyticsService.getBuyerPurchasesByCategory(buyer, startDate, endDate);
-            purchasesByCategory.forEach((category, amount) -> {
-                writer.println(category + "," + amount);
-            });
-            writer.println();
+            for (Map.Entry<String, BigDecimal> entry : purchasesByCategory.entrySet()) {
+                writer.row(entry.getKey(), entry.getValue());
+            }
+            writer.endSection();
         }
         
         // Product information section
         if (sections.contains("products")) {
-            writer.println("Frequently Purchased Products");
-            writer.println("-------------------------------------------------");
-            writer.println("Rank,Product ID,Product Name,Category,Purchase Frequency,Total Quantity");
-            
-            List<Map<String, Object>> frequentProducts = analyticsService.getFrequentlyPurchasedProducts(buyer, 10);
+            writer.beginTable("Frequently Purchased Products",
+                    "Rank", "Product ID", "Product Name", "Category", "Purchase Frequency", "Total Quantity");
             int rank = 1;
-            for (Map<String, Object> productData : frequentProducts) {
-                Product product = (Product) productData.get("product");
-                int orderCount = (Integer) productData.get("orderCount");
-                int quantityPurchased = (Integer) productData.get("quantityPurchased");
-                
-                writer.println(rank + "," + product.getId() + "," + product.getName() + "," + 
-                               product.getCategory() + "," + orderCount + "," + quantityPurchased);
+            for (FrequentProduct productData : analyticsService.getFrequentlyPurchasedProducts(buyer, 10)) {
+                writer.row(rank, productData.productId(), productData.name(), productData.category(),
+                        productData.orderCount(), productData.quantityPurchased());
                 rank++;
             }
+            writer.endSection();
         }
-        
-        writer.flush();
-        return out.toByteArray();
     }
 
     /**
-     * Export admin analytics data in CSV format
+     * Export admin analytics data
      * @param sections the sections to include in the export
-     * @return the CSV content as a byte array
+     * @param writer receives the report; the caller closes it
      */
-    public byte[] exportAdminAnalyticsCSV(List<String> sections) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        PrintWriter writer = new PrintWriter(out);
+    public void exportAdminAnalytics(List<String> sections, AnalyticsExportWriter writer) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("Generated on", formatDate(new Date()));
+        writer.beginReport("HarvestDirect System Analytics Report", properties);
         
-        writer.println("HarvestDirect System Analytics Report");
-        writer.println("Generated on: " + formatDate(new Date()));
-        writer.println();
-        
-        Map<String, Object> adminAnalytics = analyticsService.getAdminAnalytics();
+        AdminMetricsSnapshot adminAnalytics = analyticsService.getAdminAnalytics();
         
         // Overview section
         if (sections.contains("overview")) {
-            writer.println("System Overview");
-            writer.println("-------------------------------------------------");
-            
-            writer.println("Total Users," + ((Long)adminAnalytics.get("farmerCount") + 
-                                           (Long)adminAnalytics.get("fishermanCount") + 
-                                           (Long)adminAnalytics.get("wholesalerCount")));
-            writer.println("Farmers," + adminAnalytics.get("farmerCount"));
-            writer.println("Fishermen," + adminAnalytics.get("fishermanCount"));
-            writer.println("Wholesalers," + adminAnalytics.get("wholesalerCount"));
-            writer.println("Total Sales,$" + adminAnalytics.get("totalSales"));
-            writer.println();
+            writer.beginSummary("System Overview");
+            writer.field("Total Users", adminAnalytics.totalUsers());
+            writer.field("Farmers", adminAnalytics.farmerCount());
+            writer.field("Fishermen", adminAnalytics.fishermanCount());
+            writer.field("Wholesalers", adminAnalytics.wholesalerCount());
+            writer.field("Total Sales ($)", adminAnalytics.totalSales());
+            writer.endSection();
         }
         
         // Products section
         if (sections.contains("products")) {
-            writer.println("Products by Category");
-            writer.println("-------------------------------------------------");
-            writer.println("Category,Count");
-            
-            @SuppressWarnings("unchecked")
-            Map<String, Long> productsByCategory = (Map<String, Long>) adminAnalytics.get("productsByCategory");
-            productsByCategory.forEach((category, count) -> {
-                writer.println(category + "," + count);
-            });
-            writer.println();
+            writer.beginTable("Products by Category", "Category", "Count");
+            for (Map.Entry<String, Long> entry : adminAnalytics.productsByCategory().entrySet()) {
+                writer.row(entry.getKey(), entry.getValue());
+            }
+            writer.endSection();
         }
         
         // Orders section
         if (sections.contains("orders")) {
-            writer.println("Orders by Status");
-            writer.println("-------------------------------------------------");
-            writer.println("Status,Count");
-            
-            @SuppressWarnings("unchecked")
-            Map<Order.OrderStatus, Long> ordersByStatus = (Map<Order.OrderStatus, Long>) adminAnalytics.get("ordersByStatus");
-            ordersByStatus.forEach((status, count) -> {
-                writer.println(status + "," + count);
+            writer.beginTable("Orders by Status", "Status", "Count");
+            for (Map.Entry<Order.OrderStatus, Long> entry : adminAnalytics.ordersByStatus().entrySet()) {
+                writer.row(entry.getKey().name(), entry.getValue());
+            }
+            writer.endSection();
+        }
+    }
+
+    /**
+     * Write one table row per day of a series
+     * @param series the series to write
+     * @param writer the report writer
+     */
+    private void writeDailyRows(TimeSeries series, AnalyticsExportWriter writer) throws IOException {
+        try {
+            series.forEachBucket(TimeSeries.Granularity.DAY, (date, cents) -> {
+                try {
+                    writer.row(date.toString(), TimeSeries.toAmount(cents));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
             });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        
-        writer.flush();
-        return out.toByteArray();
+    }
+
+    /**
+     * Write one table row per order item. Rows are read through a database cursor
+     * in batches of the query's fetch size and projected straight into DTOs, so no
+     * entities accumulate in the persistence context however many lines there are.
+     * @param seller the seller user
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param writer the report writer
+     */
+    private void writeOrderLines(User seller, Date startDate, Date endDate, AnalyticsExportWriter writer) throws IOException {
+        try {
+            // PostgreSQL only uses a cursor for the fetch size inside a transaction
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<OrderLine> lines = orderItemRepository.streamSellerOrderLines(seller, startDate, endDate)) {
+                    lines.forEach(line -> {
+                        try {
+                            writer.row(line.orderId(), formatDateTime(line.orderDate()), line.status().name(),
+                                    line.buyerName(), line.productId(), line.productName(), line.category(),
+                                    line.quantity(), line.unitPrice(), line.subtotal());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private BigDecimal percentage(long count, long total) {
+        return total > 0
+                ? BigDecimal.valueOf(count * 100).divide(BigDecimal.valueOf(total), 2, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO.setScale(2);
     }
     
     /**
@@ -281,4 +319,12 @@ public class AnalyticsExportService {
                 .toLocalDate()
                 .toString();
     }
-}
\ No newline at end of file
+
+    private String formatDateTime(Date date) {
+        return date.toInstant()
+                .atZone(ZoneId.systemDefault())
+                .toLocalDateTime()
+                .withNano(0)
+                .toString();
+    }
+}
@@ -1,78 +1,99 @@
 package com.harvestdirect.app.service;
 
+import com.harvestdirect.app.dto.CategoryTotal;
+import com.harvestdirect.app.dto.FrequentProduct;
+import com.harvestdirect.app.dto.ProductSalesTotal;
+import com.harvestdirect.app.dto.PurchaseLine;
+import com.harvestdirect.app.dto.StatusCount;
 import com.harvestdirect.app.model.Order;
 import com.harvestdirect.app.model.Product;
 import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.BuyerDailyPurchaseRepository;
+import com.harvestdirect.app.repository.OrderItemRepository;
 import com.harvestdirect.app.repository.OrderRepository;
 import com.harvestdirect.app.repository.ProductRepository;
+import com.harvestdirect.app.repository.SellerDailySalesRepository;
+import com.harvestdirect.app.util.LongKeyedAccumulator;
+import com.harvestdirect.app.util.TimeSeries;
+import com.harvestdirect.app.util.TopK;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Service for generating analytics and reports for the application
+ * Service for generating analytics and reports for the application.
+ * Per-user metrics are served through the {@link AnalyticsCache}.
  */
 @Service
 public class AnalyticsService {
 
     private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
     private final ProductRepository productRepository;
+    private final SellerDailySalesRepository sellerDailySalesRepository;
+    private final BuyerDailyPurchaseRepository buyerDailyPurchaseRepository;
+    private final AdminMetricsService adminMetricsService;
+    private final AnalyticsCache analyticsCache;
+    private final TransactionTemplate readOnlyTransaction;
 
-    public AnalyticsService(OrderRepository orderRepository, ProductRepository productRepository) {
+    public AnalyticsService(
+            OrderRepository orderRepository,
+            OrderItemRepository orderItemRepository,
+            ProductRepository productRepository,
+            SellerDailySalesRepository sellerDailySalesRepository,
+            BuyerDailyPurchaseRepository buyerDailyPurchaseRepository,
+            AdminMetricsService adminMetricsService,
+            AnalyticsCache analyticsCache,
+            PlatformTransactionManager transactionManager) {
         this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
         this.productRepository = productRepository;
+        this.sellerDailySalesRepository = sellerDailySalesRepository;
+        this.buyerDailyPurchaseRepository = buyerDailyPurchaseRepository;
+        this.adminMetricsService = adminMetricsService;
+        this.analyticsCache = analyticsCache;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     /**
-     * Get sales data for a seller over a specific period
+     * Get sales data for a seller over a specific period, excluding cancelled orders
      * @param seller the seller user
      * @param startDate the start date
      * @param endDate the end date
-     * @return a map of dates to sales amounts
+     * @return the daily sales amounts
      */
-    public Map<LocalDate, BigDecimal> getSellerSalesOverTime(User seller, Date startDate, Date endDate) {
-        List<Order> orders = orderRepository.findBySellerAndOrderDateBetweenOrderByOrderDate(
-                seller, startDate, endDate);
-        
-        Map<LocalDate, BigDecimal> salesByDate = new TreeMap<>();
-        
-        // Initialize all dates in the range with zero sales
-        LocalDate start = startDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-        LocalDate end = endDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-        for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
-            salesByDate.put(date, BigDecimal.ZERO);
-        }
-        
-        // Fill in actual sales data
-        for (Order order : orders) {
-            LocalDate orderDate = order.getOrderDate().toInstant()
-                    .atZone(ZoneId.systemDefault()).toLocalDate();
+    public TimeSeries getSellerSalesOverTime(User seller, Date startDate, Date endDate) {
+        return analyticsCache.get(seller.getId(), startDate, endDate, "sellerSalesOverTime", () -> {
+            TimeSeries sales = TimeSeries.ofDays(toLocalDate(startDate), toLocalDate(endDate));
             
-            salesByDate.put(orderDate, salesByDate.getOrDefault(orderDate, BigDecimal.ZERO)
-                    .add(order.getTotalAmount()));
-        }
-        
-        return salesByDate;
+            // Fill in actual sales data, one rollup row per day
+            sellerDailySalesRepository.findDailyTotals(seller.getId(), toLocalDate(startDate), lastIncludedDay(endDate))
+                    .forEach(daily -> sales.addCents(daily.day(), daily.cents()));
+            
+            return sales;
+        });
     }
 
     /**
-     * Get total sales amount for a seller over a specific period
+     * Get total sales amount for a seller over a specific period, excluding cancelled orders
      * @param seller the seller user
      * @param startDate the start date
      * @param endDate the end date
      * @return the total sales amount
      */
     public BigDecimal getSellerTotalSales(User seller, Date startDate, Date endDate) {
-        List<Order> orders = orderRepository.findBySellerAndOrderDateBetweenOrderByOrderDate(
-                seller, startDate, endDate);
-        
-        return orders.stream()
-                .map(Order::getTotalAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return analyticsCache.get(seller.getId(), startDate, endDate, "sellerTotalSales",
+                () -> sellerDailySalesRepository.sumAmount(seller.getId(), toLocalDate(startDate), lastIncludedDay(endDate)));
     }
 
     /**
@@ -83,32 +104,8 @@ public class AnalyticsService {
      * @return a map of categories to sales amounts
      */
     public Map<String, BigDecimal> getSellerSalesByCategory(User seller, Date startDate, Date endDate) {
-        // Get all orders for the seller in the date range
-        List<Order> orders = orderRepository.findBySellerAndOrderDateBetweenOrderByOrderDate(
-                seller, startDate, endDate);
-        
-        // Get all products by this seller
-        List<Product> sellerProducts = productRepository.findBySeller(seller);
-        
-        // Create a map of product id to category
-        Map<Long, String> productCategories = sellerProducts.stream()
-                .collect(Collectors.toMap(Product::getId, Product::getCategory));
-        
-        // Calculate sales by category
-        Map<String, BigDecimal> salesByCategory = new HashMap<>();
-        
-        for (Order order : orders) {
-            // For each order item, get the product category and add sales
-            order.getOrderItems().forEach(item -> {
-                String category = productCategories.getOrDefault(item.getProduct().getId(), "Other");
-                BigDecimal itemTotal = item.getUnitPrice().multiply(new BigDecimal(item.getQuantity()));
-                
-                salesByCategory.put(category, 
-                        salesByCategory.getOrDefault(category, BigDecimal.ZERO).add(itemTotal));
-            });
-        }
-        
-        return salesByCategory;
+        return analyticsCache.get(seller.getId(), startDate, endDate, "sellerSalesByCategory",
+                () -> toCategoryMap(orderItemRepository.sumSalesByCategory(seller, startDate, endDate)));
     }
 
     /**
@@ -119,45 +116,9 @@ public class AnalyticsService {
      * @param limit the maximum number of products to return
      * @return a list of products with their sales data
      */
-    public List<Map<String, Object>> getTopSellingProducts(User seller, Date startDate, Date endDate, int limit) {
-        List<Order> orders = orderRepository.findBySellerAndOrderDateBetweenOrderByOrderDate(
-                seller, startDate, endDate);
-        
-        // Aggregate sales by product
-        Map<Long, Integer> quantitySold = new HashMap<>();
-        Map<Long, BigDecimal> revenue = new HashMap<>();
-        Map<Long, Product> products = new HashMap<>();
-        
-        for (Order order : orders) {
-            order.getOrderItems().forEach(item -> {
-                Long productId = item.getProduct().getId();
-                int quantity = item.getQuantity();
-                BigDecimal itemTotal = item.getUnitPrice().multiply(new BigDecimal(quantity));
-                
-                quantitySold.put(productId, quantitySold.getOrDefault(productId, 0) + quantity);
-                revenue.put(productId, revenue.getOrDefault(productId, BigDecimal.ZERO).add(itemTotal));
-                products.put(productId, item.getProduct());
-            });
-        }
-        
-        // Convert to list of maps for easy access in templates
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Long productId : revenue.keySet()) {
-            Map<String, Object> productData = new HashMap<>();
-            productData.put("product", products.get(productId));
-            productData.put("quantitySold", quantitySold.get(productId));
-            productData.put("revenue", revenue.get(productId));
-            result.add(productData);
-        }
-        
-        // Sort by revenue (descending) and limit results
-        result.sort((a, b) -> ((BigDecimal)b.get("revenue")).compareTo((BigDecimal)a.get("revenue")));
-        
-        if (result.size() > limit) {
-            result = result.subList(0, limit);
-        }
-        
-        return result;
+    public List<ProductSalesTotal> getTopSellingProducts(User seller, Date startDate, Date endDate, int limit) {
+        return analyticsCache.get(seller.getId(), startDate, endDate, "topSellingProducts:" + limit,
+                () -> List.copyOf(orderItemRepository.findTopSellingProducts(seller, startDate, endDate, PageRequest.of(0, limit))));
     }
 
     /**
@@ -168,43 +129,52 @@ public class AnalyticsService {
      * @return a map of order status to count
      */
     public Map<Order.OrderStatus, Long> getOrderCountByStatus(User seller, Date startDate, Date endDate) {
-        List<Order> orders = orderRepository.findBySellerAndOrderDateBetweenOrderByOrderDate(
-                seller, startDate, endDate);
-        
-        return orders.stream()
-                .collect(Collectors.groupingBy(Order::getStatus, Collectors.counting()));
+        return analyticsCache.get(seller.getId(), startDate, endDate, "orderCountByStatus", () -> {
+            Map<Order.OrderStatus, Long> statusCounts = new EnumMap<>(Order.OrderStatus.class);
+            for (StatusCount statusCount : orderRepository.countBySellerGroupByStatus(seller, startDate, endDate)) {
+                statusCounts.put(statusCount.status(), statusCount.count());
+            }
+            return Collections.unmodifiableMap(statusCounts);
+        });
+    }
+
+    /**
+     * Compute every seller dashboard metric for a period. Sales come from the daily
+     * rollup, while category, product and status totals are aggregated by the database.
+     * @param seller the seller user
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param topProductLimit the maximum number of top selling products to include
+     * @return the analytics snapshot for the period
+     */
+    public SellerAnalyticsSnapshot getSellerAnalyticsSnapshot(User seller, Date startDate, Date endDate, int topProductLimit) {
+        TimeSeries salesOverTime = getSellerSalesOverTime(seller, startDate, endDate);
+        
+        return new SellerAnalyticsSnapshot(
+                salesOverTime,
+                salesOverTime.total(),
+                getSellerSalesByCategory(seller, startDate, endDate),
+                getTopSellingProducts(seller, startDate, endDate, topProductLimit),
+                getOrderCountByStatus(seller, startDate, endDate));
     }
 
     /**
-     * Get purchase history for a buyer
+     * Get purchase history for a buyer, excluding cancelled orders
      * @param buyer the buyer user
      * @param startDate the start date
      * @param endDate the end date
-     * @return a map of dates to purchase amounts
+     * @return the daily purchase amounts
      */
-    public Map<LocalDate, BigDecimal> getBuyerPurchasesOverTime(User buyer, Date startDate, Date endDate) {
-        List<Order> orders = orderRepository.findByBuyerAndOrderDateBetweenOrderByOrderDate(
-                buyer, startDate, endDate);
-        
-        Map<LocalDate, BigDecimal> purchasesByDate = new TreeMap<>();
-        
-        // Initialize all dates in the range with zero purchases
-        LocalDate start = startDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-        LocalDate end = endDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-        for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
-            purchasesByDate.put(date, BigDecimal.ZERO);
-        }
-        
-        // Fill in actual purchase data
-        for (Order order : orders) {
-            LocalDate orderDate = order.getOrderDate().toInstant()
-                    .atZone(ZoneId.systemDefault()).toLocalDate();
+    public TimeSeries getBuyerPurchasesOverTime(User buyer, Date startDate, Date endDate) {
+        return analyticsCache.get(buyer.getId(), startDate, endDate, "buyerPurchasesOverTime", () -> {
+            TimeSeries purchases = TimeSeries.ofDays(toLocalDate(startDate), toLocalDate(endDate));
             
-            purchasesByDate.put(orderDate, purchasesByDate.getOrDefault(orderDate, BigDecimal.ZERO)
-                    .add(order.getTotalAmount()));
-        }
-        
-        return purchasesByDate;
+            // Fill in actual purchase data, one rollup row per day
+            buyerDailyPurchaseRepository.findDailyTotals(buyer.getId(), toLocalDate(startDate), lastIncludedDay(endDate))
+                    .forEach(daily -> purchases.addCents(daily.day(), daily.cents()));
+            
+            return purchases;
+        });
     }
 
     /**
@@ -215,108 +185,70 @@ public class AnalyticsService {
      * @return a map of categories to purchase amounts
      */
     public Map<String, BigDecimal> getBuyerPurchasesByCategory(User buyer, Date startDate, Date endDate) {
-        List<Order> orders = orderRepository.findByBuyerAndOrderDateBetweenOrderByOrderDate(
-                buyer, startDate, endDate);
-        
-        Map<String, BigDecimal> purchasesByCategory = new HashMap<>();
-        
-        for (Order order : orders) {
-            order.getOrderItems().forEach(item -> {
-                String category = item.getProduct().getCategory();
-                BigDecimal itemTotal = item.getUnitPrice().multiply(new BigDecimal(item.getQuantity()));
-                
-                purchasesByCategory.put(category, 
-                        purchasesByCategory.getOrDefault(category, BigDecimal.ZERO).add(itemTotal));
-            });
-        }
-        
-        return purchasesByCategory;
+        return analyticsCache.get(buyer.getId(), startDate, endDate, "buyerPurchasesByCategory",
+                () -> toCategoryMap(orderItemRepository.sumPurchasesByCategory(buyer, startDate, endDate)));
     }
 
     /**
      * Get frequently purchased products for a buyer
      * @param buyer the buyer user
      * @param limit the maximum number of products to return
-     * @return a list of products with their purchase data
+     * @return the products ranked by number of orders, then by quantity
+     */
+    public List<FrequentProduct> getFrequentlyPurchasedProducts(User buyer, int limit) {
+        return analyticsCache.get(buyer.getId(), null, null, "frequentlyPurchasedProducts:" + limit,
+                () -> readOnlyTransaction.execute(status -> loadFrequentlyPurchasedProducts(buyer, limit)));
+    }
+
+    /**
+     * Get system-wide analytics for admin
+     * @return the latest admin metrics snapshot
      */
-    public List<Map<String, Object>> getFrequentlyPurchasedProducts(User buyer, int limit) {
-        List<Order> orders = orderRepository.findByBuyer(buyer);
+    public AdminMetricsSnapshot getAdminAnalytics() {
+        return adminMetricsService.getSnapshot();
+    }
+
+    private List<FrequentProduct> loadFrequentlyPurchasedProducts(User buyer, int limit) {
+        // Each line is one product in one order, so every line counts as one order
+        LongKeyedAccumulator purchases = new LongKeyedAccumulator(256);
+        try (Stream<PurchaseLine> lines = orderItemRepository.streamPurchaseLines(buyer)) {
+            lines.forEach(line -> purchases.add(line.productId(), 1, line.quantity()));
+        }
         
-        // Aggregate purchases by product
-        Map<Long, Integer> quantityPurchased = new HashMap<>();
-        Map<Long, Integer> orderCount = new HashMap<>();
+        List<TopK.Entry> top = purchases.top(limit);
         Map<Long, Product> products = new HashMap<>();
-        
-        for (Order order : orders) {
-            Set<Long> productsInThisOrder = new HashSet<>();
-            
-            order.getOrderItems().forEach(item -> {
-                Long productId = item.getProduct().getId();
-                int quantity = item.getQuantity();
-                
-                quantityPurchased.put(productId, quantityPurchased.getOrDefault(productId, 0) + quantity);
-                productsInThisOrder.add(productId);
-                products.put(productId, item.getProduct());
-            });
-            
-            // Count number of orders for each product
-            for (Long productId : productsInThisOrder) {
-                orderCount.put(productId, orderCount.getOrDefault(productId, 0) + 1);
+        productRepository.findAllById(top.stream().map(TopK.Entry::key).toList())
+                .forEach(product -> products.put(product.getId(), product));
+        
+        List<FrequentProduct> result = new ArrayList<>(top.size());
+        for (TopK.Entry entry : top) {
+            Product product = products.get(entry.key());
+            if (product != null) {
+                result.add(new FrequentProduct(product.getId(), product.getName(), product.getCategory(),
+                        product.getUnit(), product.getImageUrl(), entry.primary(), entry.secondary()));
             }
         }
-        
-        // Convert to list of maps for easy access in templates
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Long productId : orderCount.keySet()) {
-            Map<String, Object> productData = new HashMap<>();
-            productData.put("product", products.get(productId));
-            productData.put("orderCount", orderCount.get(productId));
-            productData.put("quantityPurchased", quantityPurchased.get(productId));
-            result.add(productData);
-        }
-        
-        // Sort by order count (descending) and limit results
-        result.sort((a, b) -> ((Integer)b.get("orderCount")).compareTo((Integer)a.get("orderCount")));
-        
-        if (result.size() > limit) {
-            result = result.subList(0, limit);
-        }
-        
-        return result;
+        return List.copyOf(result);
+    }
+
+    private LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
     }
 
     /**
-     * Get system-wide analytics for admin
-     * @return a map of analytics data
+     * The last day whose orders fall inside a period ending at the given instant.
+     * Periods usually end at midnight, which excludes the day that starts there.
      */
-    public Map<String, Object> getAdminAnalytics() {
-        Map<String, Object> analytics = new HashMap<>();
-        
-        // Total users by role
-        long farmerCount = 0;
-        long fishermanCount = 0;
-        long wholesalerCount = 0;
-        
-        // Total products by category
-        Map<String, Long> productsByCategory = productRepository.findAll().stream()
-                .collect(Collectors.groupingBy(Product::getCategory, Collectors.counting()));
-        
-        // Total orders by status
-        Map<Order.OrderStatus, Long> ordersByStatus = orderRepository.findAll().stream()
-                .collect(Collectors.groupingBy(Order::getStatus, Collectors.counting()));
-        
-        // Total sales (all time)
-        BigDecimal totalSales = orderRepository.findAll().stream()
-                .map(Order::getTotalAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        analytics.put("farmerCount", farmerCount);
-        analytics.put("fishermanCount", fishermanCount);
-        analytics.put("wholesalerCount", wholesalerCount);
-        analytics.put("productsByCategory", productsByCategory);
-        analytics.put("ordersByStatus", ordersByStatus);
-        analytics.put("totalSales", totalSales);
-        
-        return analytics;
+    private LocalDate lastIncludedDay(Date endDate) {
+        LocalDateTime end = endDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
+        return end.toLocalTime().equals(LocalTime.MIDNIGHT) ? end.toLocalDate().minusDays(1) : end.toLocalDate();
+    }
+
+    private Map<String, BigDecimal> toCategoryMap(List<CategoryTotal> totals) {
+        Map<String, BigDecimal> byCategory = new LinkedHashMap<>();
+        for (CategoryTotal total : totals) {
+            byCategory.put(total.category(), total.total());
+        }
+        return Collections.unmodifiableMap(byCategory);
     }
-}
\ No newline at end of file
+}
@@ -6,6 +6,7 @@ import com.harvestdirect.app.model.User;
 import com.harvestdirect.app.repository.CartItemRepository;
 import com.harvestdirect.app.repository.ProductRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
@@ -16,18 +17,35 @@ public class CartService {
 
     private final CartItemRepository cartItemRepository;
     private final ProductRepository productRepository;
+    private final OptimisticLockRetry optimisticLockRetry;
 
-    public CartService(CartItemRepository cartItemRepository, ProductRepository productRepository) {
+    public CartService(
+            CartItemRepository cartItemRepository,
+            ProductRepository productRepository,
+            OptimisticLockRetry optimisticLockRetry) {
         this.cartItemRepository = cartItemRepository;
         this.productRepository = productRepository;
+        this.optimisticLockRetry = optimisticLockRetry;
     }
 
     public List<CartItem> getCartItems(User user) {
         return cartItemRepository.findByUser(user);
     }
 
-    @Transactional
+    /**
+     * Get the cart with every product and its seller loaded, for checkout
+     * @param user the cart owner
+     * @return the cart items
+     */
+    public List<CartItem> getCartItemsForCheckout(User user) {
+        return cartItemRepository.findWithProductAndSellerByUser(user);
+    }
+
     public CartItem addToCart(User user, Long productId, Integer quantity) {
+        return optimisticLockRetry.inTransaction("cart.add", () -> addOrIncrement(user, productId, quantity));
+    }
+
+    private CartItem addOrIncrement(User user, Long productId, Integer quantity) {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new RuntimeException("Product not found"));
 
@@ -54,18 +72,19 @@ public class CartService {
         }
     }
 
-    @Transactional
     public CartItem updateCartItemQuantity(Long cartItemId, Integer quantity) {
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found"));
+        return optimisticLockRetry.inTransaction("cart.update", () -> {
+            CartItem cartItem = cartItemRepository.findById(cartItemId)
+                    .orElseThrow(() -> new RuntimeException("Cart item not found"));
 
-        Product product = cartItem.getProduct();
-        if (product.getQuantity() < quantity) {
-            throw new RuntimeException("Not enough product in stock");
-        }
+            Product product = cartItem.getProduct();
+            if (product.getQuantity() < quantity) {
+                throw new RuntimeException("Not enough product in stock");
+            }
 
-        cartItem.setQuantity(quantity);
-        return cartItemRepository.save(cartItem);
+            cartItem.setQuantity(quantity);
+            return cartItemRepository.save(cartItem);
+        });
     }
 
     @Transactional
@@ -77,4 +96,15 @@ public class CartService {
     public void clearCart(User user) {
         cartItemRepository.deleteByUser(user);
     }
+
+    /**
+     * Remove the lines a checkout turned into orders. The deletes check each line's
+     * version, so a line changed since checkout read it fails the checkout instead
+     * of being dropped.
+     * @param cartItems the cart items read by the checkout
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeCheckedOutItems(List<CartItem> cartItems) {
+        cartItemRepository.deleteAll(cartItems);
+    }
 }
\ No newline at end of file
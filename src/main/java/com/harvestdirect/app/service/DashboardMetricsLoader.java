@@ -0,0 +1,146 @@
+package com.harvestdirect.app.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Loads the independent metrics of an analytics dashboard, either one after
+ * another or concurrently on a bounded pool. In parallel mode each metric runs
+ * in its own read-only transaction and the whole page shares one deadline; a
+ * metric that fails or misses the deadline is reported as unavailable instead
+ * of failing the page. Every pool thread holds a database connection while it
+ * works, so the pool is kept to a quarter of the connection pool, leaving the
+ * rest to checkout and page requests however many dashboards are open.
+ */
+@Component
+public class DashboardMetricsLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(DashboardMetricsLoader.class);
+
+    private final TransactionTemplate readOnlyTransaction;
+    private final ExecutorService executor;
+    private final boolean parallel;
+    private final long timeoutMillis;
+
+    public DashboardMetricsLoader(
+            PlatformTransactionManager transactionManager,
+            @Value("${analytics.dashboard.parallel:true}") boolean parallel,
+            @Value("${analytics.dashboard.threads:4}") int threads,
+            @Value("${analytics.dashboard.timeout-ms:3000}") long timeoutMillis,
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
+        this.parallel = parallel;
+        this.timeoutMillis = timeoutMillis;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // Statements still running at the deadline are cancelled by the driver
+        this.readOnlyTransaction.setTimeout((int) Math.max(1, (timeoutMillis + 999) / 1000));
+        int maxThreads = Math.max(1, connectionPoolSize / 4);
+        if (threads > maxThreads) {
+            log.warn("Limiting dashboard metric threads to {} for a pool of {} connections", maxThreads, connectionPoolSize);
+        }
+        this.executor = parallel ? newExecutor(Math.min(threads, maxThreads)) : null;
+    }
+
+    /**
+     * Load every metric
+     * @param metrics the metric loaders, keyed by model attribute name
+     * @return the loaded values and the names of the metrics that are unavailable
+     */
+    public DashboardMetrics load(Map<String, Supplier<?>> metrics) {
+        return parallel ? loadConcurrently(metrics) : loadSequentially(metrics);
+    }
+
+    private DashboardMetrics loadSequentially(Map<String, Supplier<?>> metrics) {
+        Map<String, Object> values = new HashMap<>();
+        Set<String> unavailable = new TreeSet<>();
+        metrics.forEach((name, loader) -> {
+            try {
+                values.put(name, loader.get());
+            } catch (RuntimeException e) {
+                log.warn("Dashboard metric {} failed", name, e);
+                unavailable.add(name);
+            }
+        });
+        return new DashboardMetrics(values, unavailable);
+    }
+
+    private DashboardMetrics loadConcurrently(Map<String, Supplier<?>> metrics) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        Set<String> unavailable = new TreeSet<>();
+        metrics.forEach((name, loader) -> {
+            try {
+                futures.put(name, executor.submit(() -> readOnlyTransaction.execute(status -> loader.get())));
+            } catch (RejectedExecutionException e) {
+                log.warn("Dashboard metric {} rejected, pool is saturated", name);
+                unavailable.add(name);
+            }
+        });
+
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+            String name = entry.getKey();
+            Future<?> future = entry.getValue();
+            try {
+                long remaining = deadline - System.nanoTime();
+                values.put(name, future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                log.warn("Dashboard metric {} missed the {} ms deadline", name, timeoutMillis);
+                unavailable.add(name);
+            } catch (ExecutionException e) {
+                log.warn("Dashboard metric {} failed", name, e.getCause());
+                unavailable.add(name);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(pending -> pending.cancel(true));
+                unavailable.add(name);
+            }
+        }
+        return new DashboardMetrics(values, unavailable);
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "dashboard-metrics-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // Fail fast instead of queueing behind a backlog that would miss its deadline anyway
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 4), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The outcome of loading a dashboard
+     * @param values the loaded metric values, keyed by name
+     * @param unavailable the names of metrics that failed or missed the deadline
+     */
+    public record DashboardMetrics(Map<String, Object> values, Set<String> unavailable) {
+
+        @SuppressWarnings("unchecked")
+        public <T> T get(String name, T fallback) {
+            Object value = values.get(name);
+            return value != null ? (T) value : fallback;
+        }
+    }
+}
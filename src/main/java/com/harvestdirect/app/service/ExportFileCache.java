@@ -0,0 +1,312 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.export.AnalyticsExportFormat;
+import com.harvestdirect.app.export.AnalyticsExportWriter;
+import com.harvestdirect.app.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Finished analytics exports on local disk, addressed by a hash of the export
+ * parameters and the version of the data they were built from. A repeated
+ * download is served from the stored file; a write to the user's orders changes
+ * the version and so the address. Text formats are also stored gzip-compressed.
+ * Files are evicted least recently used first once they exceed the disk budget;
+ * exports are handed out as open channels, which stay readable when the files
+ * behind them are evicted during a download.
+ */
+@Service
+public class ExportFileCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportFileCache.class);
+
+    /**
+     * A stored export
+     * @param key the content address, also used as the entity tag
+     * @param file the export file
+     * @param gzipFile the gzip-compressed export, or null if the format is not compressed
+     * @param format the export format
+     */
+    public record CachedExport(String key, Path file, Path gzipFile, AnalyticsExportFormat format) {
+
+        long diskBytes() throws IOException {
+            return Files.size(file) + (gzipFile != null ? Files.size(gzipFile) : 0);
+        }
+    }
+
+    /**
+     * A stored export opened for reading; the caller closes it
+     * @param key the content address, also used as the entity tag
+     * @param file the export file
+     * @param gzipFile the gzip-compressed export, or null if the format is not compressed
+     * @param format the export format
+     */
+    public record OpenExport(String key, FileChannel file, FileChannel gzipFile, AnalyticsExportFormat format)
+            implements Closeable {
+
+        @Override
+        public void close() throws IOException {
+            try {
+                file.close();
+            } finally {
+                if (gzipFile != null) {
+                    gzipFile.close();
+                }
+            }
+        }
+    }
+
+    private static final int MAX_OPEN_ATTEMPTS = 3;
+
+    private final AnalyticsExportService analyticsExportService;
+    private final AnalyticsCache analyticsCache;
+    private final AdminMetricsService adminMetricsService;
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedExport> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> entrySizes = new HashMap<>();
+    private final Map<String, CompletableFuture<CachedExport>> inFlight = new ConcurrentHashMap<>();
+    private long totalBytes;
+
+    public ExportFileCache(
+            AnalyticsExportService analyticsExportService,
+            AnalyticsCache analyticsCache,
+            AdminMetricsService adminMetricsService,
+            @Value("${analytics.export.cache.directory:${java.io.tmpdir}/harvestdirect-export-cache}") String directory,
+            @Value("${analytics.export.cache.max-bytes:536870912}") long maxBytes) throws IOException {
+        this.analyticsExportService = analyticsExportService;
+        this.analyticsCache = analyticsCache;
+        this.adminMetricsService = adminMetricsService;
+        this.maxBytes = maxBytes;
+        this.directory = Files.createDirectories(Paths.get(directory));
+        deleteEarlierExports();
+    }
+
+    /**
+     * Delete the exports of an earlier run, which can never be opened again and are
+     * not counted against the size limit. Only files named as this cache names them
+     * are touched, as the directory is configurable and may hold other files.
+     */
+    private void deleteEarlierExports() throws IOException {
+        String extensions = Arrays.stream(AnalyticsExportFormat.values())
+                .map(AnalyticsExportFormat::getExtension)
+                .collect(Collectors.joining("|"));
+        Pattern exportFile = Pattern.compile("[0-9a-f]{64}\\.(" + extensions + ")(\\.gz|\\.part)?");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                file -> Files.isRegularFile(file) && exportFile.matcher(file.getFileName().toString()).matches())) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Get the content address of an export, which is also its entity tag. It is cheap
+     * to compute, so a client's copy can be validated without generating the export.
+     * @param user the user
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param sections the sections to include in the export
+     * @param format the export format
+     * @return the key
+     */
+    public String keyFor(User user, Date startDate, Date endDate, List<String> sections,
+                         AnalyticsExportFormat format) {
+        return cacheKey(user, startDate, endDate, sections, format);
+    }
+
+    /**
+     * Open an export of the user's analytics report, generating it on a miss.
+     * Concurrent requests for the same export share one generation.
+     * @param key the export's key, from {@link #keyFor}
+     * @param user the user
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param sections the sections to include in the export
+     * @param format the export format
+     * @return the opened export
+     */
+    public OpenExport open(String key, User user, Date startDate, Date endDate, List<String> sections,
+                           AnalyticsExportFormat format) throws IOException {
+        for (int attempt = 0; attempt < MAX_OPEN_ATTEMPTS; attempt++) {
+            OpenExport opened = openStored(key);
+            if (opened != null) {
+                return opened;
+            }
+
+            CompletableFuture<CachedExport> generation = new CompletableFuture<>();
+            CompletableFuture<CachedExport> running = inFlight.putIfAbsent(key, generation);
+            if (running != null) {
+                await(running);
+                continue;
+            }
+            try {
+                CachedExport created = generate(key, user, startDate, endDate, sections, format);
+                store(created);
+                generation.complete(created);
+            } catch (IOException | RuntimeException e) {
+                generation.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key);
+            }
+        }
+        // Only reachable if other exports keep evicting this one before it can be opened
+        throw new IOException("Export " + key + " was evicted before it could be opened");
+    }
+
+    /**
+     * Open a stored export. Channels are opened under the cache lock, so eviction
+     * cannot delete the files between the lookup and the open.
+     * @return the opened export, or null if it is not stored
+     */
+    private synchronized OpenExport openStored(String key) throws IOException {
+        CachedExport cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        FileChannel file;
+        try {
+            file = FileChannel.open(cached.file(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            remove(key);
+            return null;
+        }
+        try {
+            FileChannel gzipFile = cached.gzipFile() != null
+                    ? FileChannel.open(cached.gzipFile(), StandardOpenOption.READ) : null;
+            return new OpenExport(key, file, gzipFile, cached.format());
+        } catch (IOException e) {
+            file.close();
+            if (e instanceof NoSuchFileException) {
+                remove(key);
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private CachedExport generate(String key, User user, Date startDate, Date endDate, List<String> sections,
+                                  AnalyticsExportFormat format) throws IOException {
+        Path file = directory.resolve(key + "." + format.getExtension());
+        Path partial = directory.resolve(key + "." + format.getExtension() + ".part");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), 64 * 1024);
+             AnalyticsExportWriter writer = format.newWriter(out)) {
+            analyticsExportService.exportAnalytics(user, startDate, endDate, sections, writer);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+
+        // Spreadsheets are zip files already
+        Path gzipFile = null;
+        if (format != AnalyticsExportFormat.XLSX) {
+            gzipFile = directory.resolve(key + "." + format.getExtension() + ".gz");
+            try (InputStream in = Files.newInputStream(file);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile), 64 * 1024)) {
+                in.transferTo(out);
+            }
+        }
+        return new CachedExport(key, file, gzipFile, format);
+    }
+
+    private synchronized void store(CachedExport export) throws IOException {
+        long size = export.diskBytes();
+        entries.put(export.key(), export);
+        // A regenerated export replaces its files in place, so only the old size goes
+        Long previousSize = entrySizes.put(export.key(), size);
+        totalBytes += size - (previousSize != null ? previousSize : 0);
+
+        // Evict least recently used exports, but always keep the one just stored
+        Iterator<String> eldest = entries.keySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            String key = eldest.next();
+            if (key.equals(export.key())) {
+                continue;
+            }
+            eldest.remove();
+            deleteFiles(key);
+        }
+    }
+
+    private void remove(String key) {
+        entries.remove(key);
+        deleteFiles(key);
+    }
+
+    private void deleteFiles(String key) {
+        Long size = entrySizes.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, key + ".*")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete cached export {}", key, e);
+        }
+    }
+
+    private CachedExport await(CompletableFuture<CachedExport> running) throws IOException {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Hash the export parameters together with the data version. Admin reports are
+     * built from the shared metrics snapshot, so its refresh time is their version;
+     * the generation day is included because reports are stamped with it.
+     */
+    private String cacheKey(User user, Date startDate, Date endDate, List<String> sections,
+                            AnalyticsExportFormat format) {
+        long version = user.getRole() == User.UserRole.ADMIN
+                ? adminMetricsService.getSnapshot().computedAt().toEpochMilli()
+                : analyticsCache.currentVersion(user.getId());
+        String parameters = user.getId() + "|" + version + "|" + startDate.getTime() + "|" + endDate.getTime()
+                + "|" + String.join(",", new TreeSet<>(sections)) + "|" + format.name() + "|" + LocalDate.now();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(parameters.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
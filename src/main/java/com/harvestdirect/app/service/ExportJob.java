@@ -0,0 +1,100 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.dto.ExportJobStatus;
+import com.harvestdirect.app.export.AnalyticsExportFormat;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A background analytics export and its progress. The worker running the job
+ * updates it while request threads read it.
+ */
+public class ExportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final Long userId;
+    private final AnalyticsExportFormat format;
+    private final Path file;
+    private final long estimatedRows;
+    private final Instant createdAt = Instant.now();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    ExportJob(String id, Long userId, AnalyticsExportFormat format, Path file, long estimatedRows) {
+        this.id = id;
+        this.userId = userId;
+        this.format = format;
+        this.file = file;
+        this.estimatedRows = Math.max(estimatedRows, 1);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public AnalyticsExportFormat getFormat() {
+        return format;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    AtomicLong rowsWritten() {
+        return rowsWritten;
+    }
+
+    void started() {
+        status = Status.RUNNING;
+    }
+
+    void completed() {
+        finishedAt = Instant.now();
+        status = Status.COMPLETED;
+    }
+
+    void failed(String message) {
+        error = message;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    /**
+     * Get the job's progress. The row count is exact; the percentage is based on
+     * an estimate of the report size and stays below 100 until the job completes.
+     * @return the status snapshot
+     */
+    public ExportJobStatus toStatus() {
+        long rows = rowsWritten.get();
+        int percent = status == Status.COMPLETED ? 100 : (int) Math.min(99, rows * 100 / estimatedRows);
+        return new ExportJobStatus(id, status.name(), format.getExtension(), rows, percent, error);
+    }
+}
@@ -0,0 +1,176 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.export.AnalyticsExportFormat;
+import com.harvestdirect.app.export.AnalyticsExportWriter;
+import com.harvestdirect.app.export.CountingExportWriter;
+import com.harvestdirect.app.model.User;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs analytics exports in the background. Jobs execute on a small bounded
+ * pool and write to temporary files, which are served once complete and deleted
+ * after a retention period. Concurrent jobs are limited per user and overall, so
+ * that exports cannot take worker threads or database connections from the rest
+ * of the application.
+ */
+@Service
+public class ExportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportJobService.class);
+
+    private final AnalyticsExportService analyticsExportService;
+    private final Path directory;
+    private final int maxJobsPerUser;
+    private final Duration retention;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicInteger> activeJobsByUser = new ConcurrentHashMap<>();
+
+    public ExportJobService(
+            AnalyticsExportService analyticsExportService,
+            @Value("${analytics.export.directory:${java.io.tmpdir}/harvestdirect-exports}") String directory,
+            @Value("${analytics.export.workers:2}") int workers,
+            @Value("${analytics.export.max-queued-jobs:20}") int maxQueuedJobs,
+            @Value("${analytics.export.max-jobs-per-user:2}") int maxJobsPerUser,
+            @Value("${analytics.export.retention-minutes:60}") long retentionMinutes) throws IOException {
+        this.analyticsExportService = analyticsExportService;
+        this.directory = Files.createDirectories(Paths.get(directory));
+        this.maxJobsPerUser = maxJobsPerUser;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "analytics-export-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queue an export of the user's analytics report
+     * @param user the user requesting the export
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param format the export format
+     * @param sections the sections to include in the export
+     * @return the queued job
+     * @throws IllegalStateException if the user or the application already runs too many exports
+     */
+    public ExportJob submit(User user, Date startDate, Date endDate, AnalyticsExportFormat format,
+                            List<String> sections) throws IOException {
+        AtomicInteger active = activeJobsByUser.computeIfAbsent(user.getId(), id -> new AtomicInteger());
+        if (active.incrementAndGet() > maxJobsPerUser) {
+            active.decrementAndGet();
+            throw new IllegalStateException("You already have " + maxJobsPerUser + " exports in progress");
+        }
+
+        Path file;
+        try {
+            file = Files.createTempFile(directory, "export-", "." + format.getExtension());
+        } catch (IOException e) {
+            active.decrementAndGet();
+            throw e;
+        }
+        
+        ExportJob job = new ExportJob(UUID.randomUUID().toString(), user.getId(), format, file,
+                estimateRows(user, startDate, endDate, sections));
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, user, startDate, endDate, sections));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            deleteFile(job);
+            active.decrementAndGet();
+            throw new IllegalStateException("Too many exports are in progress, please try again shortly");
+        }
+        return job;
+    }
+
+    /**
+     * Get an export job belonging to a user
+     * @param id the job id
+     * @param user the user asking for the job
+     * @return the job, or empty if there is no such job for this user
+     */
+    public Optional<ExportJob> getJob(String id, User user) {
+        ExportJob job = jobs.get(id);
+        return job != null && job.getUserId().equals(user.getId()) ? Optional.of(job) : Optional.empty();
+    }
+
+    private void run(ExportJob job, User user, Date startDate, Date endDate, List<String> sections) {
+        job.started();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(job.getFile()), 64 * 1024);
+             AnalyticsExportWriter writer = new CountingExportWriter(job.getFormat().newWriter(out), job.rowsWritten())) {
+            analyticsExportService.exportAnalytics(user, startDate, endDate, sections, writer);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Export job {} failed", job.getId(), e);
+            job.failed("The export could not be generated");
+            deleteFile(job);
+            return;
+        } finally {
+            activeJobsByUser.get(user.getId()).decrementAndGet();
+        }
+        job.completed();
+    }
+
+    /**
+     * Estimate the number of rows in a report, dominated by the daily series and,
+     * when included, the order lines, which are counted up front
+     */
+    private long estimateRows(User user, Date startDate, Date endDate, List<String> sections) {
+        long days = ChronoUnit.DAYS.between(
+                startDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate(),
+                endDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+        boolean hasSeries = sections.contains("sales") || sections.contains("purchases");
+        long lines = sections.contains("lines") ? analyticsExportService.countOrderLines(user, startDate, endDate) : 0;
+        return (hasSeries ? days : 0) + lines + 10L * sections.size();
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.export.cleanup-interval-ms:300000}")
+    public void removeExpiredJobs() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (job.isFinished() && job.getFinishedAt().isBefore(cutoff)) {
+                deleteFile(job);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void deleteFile(ExportJob job) {
+        try {
+            Files.deleteIfExists(job.getFile());
+        } catch (IOException e) {
+            log.warn("Could not delete export file {}", job.getFile(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        jobs.values().forEach(this::deleteFile);
+    }
+}
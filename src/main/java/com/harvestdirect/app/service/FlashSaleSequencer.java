@@ -0,0 +1,471 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.event.CatalogReloadEvent;
+import com.harvestdirect.app.event.ProductChangedEvent;
+import com.harvestdirect.app.event.ProductStockChangedEvent;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.model.StockReservation;
+import com.harvestdirect.app.repository.ProductRepository;
+import com.harvestdirect.app.repository.StockReservationRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admits checkouts of flash-sale products without contending on their rows. Each
+ * product has a lane: a bounded queue that buyers append to and that only one
+ * worker drains at a time. The worker grants or rejects quantity in arrival order
+ * against an in-memory count, then persists everything it granted in one
+ * conditional update before answering the granted buyers. Rejected buyers are
+ * answered straight away, and buyers arriving at a full queue or a sold-out lane
+ * are turned away without queueing at all.
+ * <p>
+ * The in-memory count is reloaded whenever the product or its stock changes
+ * through another path, and whenever a batch update finds less stock than
+ * expected, so that it can only ever under-grant.
+ * <p>
+ * Granted stock leaves the product before the checkout transaction starts, so
+ * every grant is also written as a {@link StockReservation} row in the batch that
+ * takes the stock. The checkout deletes its rows when it commits, and a failed
+ * checkout releases them, which deletes them and returns their stock. If the
+ * process dies in between, or before a queued release is persisted, the rows
+ * stay behind; once they expire, {@link #returnExpiredReservations} gives their
+ * stock back, on whichever node sweeps first. Until then that stock is not for
+ * sale, and a checkout that outlives its reservation fails rather than sell it
+ * twice.
+ */
+@Component
+public class FlashSaleSequencer {
+
+    private static final Logger log = LoggerFactory.getLogger(FlashSaleSequencer.class);
+
+    private final ProductRepository productRepository;
+    private final StockReservationRepository reservationRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary batchSizes;
+    private final ExecutorService executor;
+    private final Map<Long, Lane> lanes = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final long timeoutMillis;
+    private final long reservationTtlMillis;
+
+    public FlashSaleSequencer(
+            ProductRepository productRepository,
+            StockReservationRepository reservationRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${flash-sale.enabled:true}") boolean enabled,
+            @Value("${flash-sale.workers:2}") int workers,
+            @Value("${flash-sale.queue-capacity:4096}") int queueCapacity,
+            @Value("${flash-sale.batch-size:256}") int batchSize,
+            @Value("${flash-sale.timeout-ms:2000}") long timeoutMillis,
+            @Value("${flash-sale.reservation-ttl-ms:300000}") long reservationTtlMillis) {
+        this.productRepository = productRepository;
+        this.reservationRepository = reservationRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.batchSizes = meterRegistry.summary("flash-sale.batch.size");
+        this.enabled = enabled;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.timeoutMillis = timeoutMillis;
+        this.reservationTtlMillis = reservationTtlMillis;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "flash-sale-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Check whether checkouts of a product go through the sequencer
+     * @param product the product
+     * @return true if flash-sale admission is enabled and the product is on flash sale
+     */
+    public boolean handles(Product product) {
+        return enabled && Boolean.TRUE.equals(product.getFlashSale());
+    }
+
+    /**
+     * Reserve quantity of a flash-sale product. The stock is taken from the product
+     * when this returns; the checkout has to {@link #consume} the grant when it
+     * commits, or give it back with {@link #release} if it does not go through.
+     * @param product the product
+     * @param quantity the quantity to reserve
+     * @return the grant, with the quantity left after it
+     * @throws RuntimeException if the quantity is not available or the sale is too busy
+     */
+    public Grant reserve(Product product, int quantity) {
+        Lane lane = lanes.computeIfAbsent(product.getId(), Lane::new);
+        if (lane.soldOut) {
+            count("rejected");
+            throw notAvailable(product.getName());
+        }
+
+        Reservation reservation = new Reservation(quantity, product.getName(), new CompletableFuture<>());
+        if (!lane.offer(reservation)) {
+            count("busy");
+            throw new RuntimeException(product.getName() + " is selling fast, please try again in a moment");
+        }
+
+        try {
+            return reservation.result().get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause
+                    : new RuntimeException("Could not reserve " + product.getName(), e.getCause());
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // The grant may still arrive; it is given back as soon as it does
+            reservation.result().thenAccept(this::release);
+            count("timeout");
+            throw new RuntimeException(product.getName() + " is selling fast, please try again in a moment");
+        }
+    }
+
+    /**
+     * Give back quantity reserved by {@link #reserve}. Stock whose reservation has
+     * already expired and been returned is not returned twice.
+     * @param grant the grant
+     */
+    public void release(Grant grant) {
+        Lane lane = lanes.get(grant.productId());
+        if (lane == null || !lane.offer(new Release(grant))) {
+            // No lane to batch with, or a full one: return the stock directly
+            transactionTemplate.executeWithoutResult(status -> {
+                int returned = sum(reservationRepository.deleteReturningQuantity(List.of(grant.reservationId())));
+                if (returned > 0) {
+                    productRepository.restoreStock(grant.productId(), returned).ifPresent(remaining ->
+                            eventPublisher.publishEvent(new ProductStockChangedEvent(grant.productId(), remaining, true)));
+                }
+            });
+        }
+    }
+
+    /**
+     * Turn grants into sold stock, in the transaction that places the order
+     * @param grants the grants of one checkout
+     * @throws RuntimeException if a reservation expired and its stock was returned
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void consume(Collection<Grant> grants) {
+        if (grants.isEmpty()) {
+            return;
+        }
+        List<Long> reservationIds = grants.stream().map(Grant::reservationId).toList();
+        if (reservationRepository.deleteReturningQuantity(reservationIds).size() != reservationIds.size()) {
+            throw new RuntimeException("Your flash-sale reservation expired, please try again");
+        }
+    }
+
+    /**
+     * Return the stock of reservations whose checkout never finished. Runs at
+     * startup and then periodically; concurrent sweeps on several nodes each
+     * delete, and return, different rows.
+     */
+    @Scheduled(fixedDelayString = "${flash-sale.sweep-interval-ms:60000}")
+    public void returnExpiredReservations() {
+        Map<Long, Integer> returned = transactionTemplate.execute(status -> {
+            // Product rows are locked in id order, as checkout does
+            Map<Long, Integer> byProduct = new TreeMap<>();
+            reservationRepository.deleteExpired(new Date()).forEach(reservation ->
+                    byProduct.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum));
+            byProduct.forEach((productId, quantity) -> productRepository.restoreStock(productId, quantity)
+                    .ifPresent(remaining -> eventPublisher.publishEvent(
+                            new ProductStockChangedEvent(productId, remaining, true))));
+            return byProduct;
+        });
+        if (returned != null && !returned.isEmpty()) {
+            log.warn("Returned stock of expired flash-sale reservations by product: {}", returned);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.isDeleted() || !Boolean.TRUE.equals(event.product().getFlashSale())) {
+            lanes.remove(event.productId());
+            return;
+        }
+        Lane lane = lanes.get(event.productId());
+        if (lane != null) {
+            lane.resync();
+        }
+    }
+
+    @EventListener(CatalogReloadEvent.class)
+    public void onCatalogReload() {
+        lanes.values().forEach(Lane::resync);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductStockChanged(ProductStockChangedEvent event) {
+        Lane lane = lanes.get(event.productId());
+        if (lane != null && lane.persistedQuantity != event.quantity()) {
+            lane.resync();
+        }
+    }
+
+    private void count(String outcome) {
+        meterRegistry.counter("flash-sale.reservations", "outcome", outcome).increment();
+    }
+
+    private static int sum(List<Integer> quantities) {
+        return quantities.stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private static RuntimeException notAvailable(String productName) {
+        return new RuntimeException("Not enough quantity available for " + productName);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private sealed interface Command permits Reservation, Release, Resync {
+    }
+
+    /**
+     * Stock reserved for one checkout
+     * @param reservationId the id of the reservation row
+     * @param productId the product id
+     * @param quantity the quantity reserved
+     * @param remaining the quantity left on the product after the grant
+     */
+    public record Grant(Long reservationId, Long productId, int quantity, int remaining) {
+    }
+
+    private record Reservation(int quantity, String productName, CompletableFuture<Grant> result) implements Command {
+    }
+
+    private record Release(Grant grant) implements Command {
+    }
+
+    private record PersistedBatch(Integer remaining, List<StockReservation> reservations, int returned) {
+    }
+
+    private enum Resync implements Command {
+        INSTANCE
+    }
+
+    /**
+     * Queue and state of one product. The queue accepts commands from any thread;
+     * everything else is only touched by the single worker draining the lane.
+     */
+    private final class Lane implements Runnable {
+
+        private final Long productId;
+        private final BlockingQueue<Command> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean soldOut;
+        private volatile int persistedQuantity = -1;
+        private int available = -1;
+
+        Lane(Long productId) {
+            this.productId = productId;
+        }
+
+        boolean offer(Command command) {
+            if (!queue.offer(command)) {
+                return false;
+            }
+            schedule();
+            return true;
+        }
+
+        void resync() {
+            // Later buyers must not be turned away on a sold-out flag the reload may clear
+            soldOut = false;
+            if (!offer(Resync.INSTANCE)) {
+                log.warn("Flash-sale lane for product {} is full, resync deferred to the next batch failure", productId);
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                log.error("Flash-sale lane for product {} failed", productId, e);
+                available = -1;
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void drain() {
+            List<Reservation> granted = new ArrayList<>();
+            List<Grant> released = new ArrayList<>();
+            Command command;
+            while (granted.size() < batchSize && (command = queue.poll()) != null) {
+                if (command instanceof Resync) {
+                    persist(granted, released);
+                    granted = new ArrayList<>();
+                    released = new ArrayList<>();
+                    available = -1;
+                    continue;
+                }
+                if (available < 0) {
+                    load();
+                }
+                if (command instanceof Release release) {
+                    released.add(release.grant());
+                    available += release.grant().quantity();
+                } else if (command instanceof Reservation reservation) {
+                    if (reservation.quantity() <= available) {
+                        available -= reservation.quantity();
+                        granted.add(reservation);
+                    } else {
+                        count("rejected");
+                        reservation.result().completeExceptionally(notAvailable(reservation.productName()));
+                    }
+                }
+            }
+            persist(granted, released);
+            soldOut = available == 0 && queue.isEmpty();
+        }
+
+        private void load() {
+            List<Integer> quantities = jdbcTemplate.queryForList(
+                    "SELECT CASE WHEN is_available THEN quantity ELSE 0 END FROM products WHERE id = ?",
+                    Integer.class, productId);
+            available = quantities.isEmpty() ? 0 : Math.max(quantities.get(0), 0);
+        }
+
+        private void persist(List<Reservation> granted, List<Grant> released) {
+            if (granted.isEmpty() && released.isEmpty()) {
+                return;
+            }
+            int taken = granted.stream().mapToInt(Reservation::quantity).sum();
+            int releasing = released.stream().mapToInt(Grant::quantity).sum();
+            PersistedBatch batch;
+            try {
+                batch = transactionTemplate.execute(status -> {
+                    Optional<Integer> quantity = Optional.empty();
+                    int returned = 0;
+                    if (!released.isEmpty()) {
+                        returned = sum(reservationRepository.deleteReturningQuantity(
+                                released.stream().map(Grant::reservationId).toList()));
+                        if (returned > 0) {
+                            quantity = productRepository.restoreStock(productId, returned);
+                        }
+                    }
+                    List<StockReservation> reservations = List.of();
+                    if (taken > 0) {
+                        quantity = productRepository.takeStock(productId, taken);
+                        if (quantity.isEmpty()) {
+                            status.setRollbackOnly();
+                            return null;
+                        }
+                        reservations = reservationRepository.saveAll(granted.stream().map(this::reservationRow).toList());
+                    }
+                    quantity.ifPresent(this::publish);
+                    return new PersistedBatch(quantity.orElse(null), reservations, returned);
+                });
+            } catch (RuntimeException e) {
+                log.error("Could not persist flash-sale batch for product {} ({} taken, {} released)",
+                        productId, taken, releasing, e);
+                available = -1;
+                fail(granted);
+                return;
+            }
+
+            if (batch == null) {
+                // Stock moved underneath the lane: reload and grant the batch again, in order
+                regrant(granted, released);
+                return;
+            }
+            if (batch.returned() < releasing) {
+                // Some released reservations had expired, and their stock was returned by the sweep
+                available = -1;
+            }
+            batchSizes.record(granted.size());
+            for (int i = 0; i < granted.size(); i++) {
+                Reservation reservation = granted.get(i);
+                count("granted");
+                reservation.result().complete(new Grant(batch.reservations().get(i).getId(), productId,
+                        reservation.quantity(), batch.remaining()));
+            }
+        }
+
+        private StockReservation reservationRow(Reservation reservation) {
+            StockReservation row = new StockReservation();
+            row.setProductId(productId);
+            row.setQuantity(reservation.quantity());
+            row.setExpiresAt(new Date(System.currentTimeMillis() + reservationTtlMillis));
+            return row;
+        }
+
+        private void regrant(List<Reservation> granted, List<Grant> released) {
+            load();
+            available += released.stream().mapToInt(Grant::quantity).sum();
+            List<Reservation> regranted = new ArrayList<>();
+            for (Reservation reservation : granted) {
+                if (reservation.quantity() <= available) {
+                    available -= reservation.quantity();
+                    regranted.add(reservation);
+                } else {
+                    count("rejected");
+                    reservation.result().completeExceptionally(notAvailable(reservation.productName()));
+                }
+            }
+            if (regranted.size() == granted.size()) {
+                // Nothing changed on reload, so the database refuses for another reason
+                available = -1;
+                fail(granted);
+                persist(List.of(), released);
+                return;
+            }
+            persist(regranted, released);
+        }
+
+        private void fail(List<Reservation> reservations) {
+            RuntimeException failure = new RuntimeException("Could not reserve stock, please try again");
+            reservations.forEach(reservation -> reservation.result().completeExceptionally(failure));
+        }
+
+        private void publish(int quantity) {
+            persistedQuantity = quantity;
+            eventPublisher.publishEvent(new ProductStockChangedEvent(productId, quantity, quantity > 0));
+        }
+    }
+}
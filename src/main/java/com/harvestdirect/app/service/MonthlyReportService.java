@@ -0,0 +1,303 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.event.OrderDataChangedEvent;
+import com.harvestdirect.app.export.AnalyticsExportFormat;
+import com.harvestdirect.app.export.AnalyticsExportWriter;
+import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Pre-generates every seller's monthly analytics report when a month closes, so
+ * that month-end downloads are served from disk. Seller id ranges are processed
+ * in parallel on a fork-join pool; each finished range is appended to a
+ * checkpoint file, and a run interrupted by a restart resumes from it.
+ * <p>
+ * A change to an order after its month's reports were generated deletes the
+ * seller's report for that month, and downloads of it are then exported on demand
+ * from the current data.
+ */
+@Service
+public class MonthlyReportService {
+
+    private static final Logger log = LoggerFactory.getLogger(MonthlyReportService.class);
+
+    private static final List<User.UserRole> SELLER_ROLES = List.of(User.UserRole.FARMER, User.UserRole.FISHERMAN);
+    private static final List<String> REPORT_SECTIONS = List.of("overview", "sales", "products", "orders");
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String COMPLETE_FILE = "complete";
+
+    private final AnalyticsExportService analyticsExportService;
+    private final UserRepository userRepository;
+    private final Path directory;
+    private final int parallelism;
+    private final long partitionSize;
+    // Reports invalidated while a run may be writing them, which it must not leave behind
+    private final Set<Path> invalidatedDuringRun = ConcurrentHashMap.newKeySet();
+    private final Object checkpointLock = new Object();
+    private volatile boolean generating;
+
+    public MonthlyReportService(
+            AnalyticsExportService analyticsExportService,
+            UserRepository userRepository,
+            @Value("${analytics.monthly-report.directory:${user.home}/harvestdirect/monthly-reports}") String directory,
+            @Value("${analytics.monthly-report.parallelism:4}") int parallelism,
+            @Value("${analytics.monthly-report.partition-size:200}") long partitionSize) {
+        this.analyticsExportService = analyticsExportService;
+        this.userRepository = userRepository;
+        this.directory = Paths.get(directory);
+        this.parallelism = parallelism;
+        this.partitionSize = partitionSize;
+    }
+
+    /**
+     * Get a seller's pre-generated report for a month
+     * @param seller the seller user
+     * @param month the month
+     * @return the report file, or empty if it has not been generated
+     */
+    public Optional<Path> findReport(User seller, YearMonth month) {
+        Path report = reportFile(monthDirectory(month), seller.getId());
+        return Files.isRegularFile(report) ? Optional.of(report) : Optional.empty();
+    }
+
+    /**
+     * Delete the seller's report for the month of a changed order
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderDataChanged(OrderDataChangedEvent event) {
+        if (event.orderDate() == null) {
+            return;
+        }
+        YearMonth month = YearMonth.from(event.orderDate().toInstant().atZone(ZoneId.systemDefault()));
+        Path report = reportFile(monthDirectory(month), event.sellerId());
+        // Recorded before deleting, so that a run moving the report into place after the check sees it
+        if (generating) {
+            invalidatedDuringRun.add(report);
+        }
+        try {
+            Files.deleteIfExists(report);
+        } catch (IOException e) {
+            log.warn("Could not delete outdated monthly report {}", report, e);
+        }
+    }
+
+    @Scheduled(cron = "${analytics.monthly-report.cron:0 30 0 1 * *}")
+    public void generateLastMonth() {
+        generate(YearMonth.now().minusMonths(1));
+    }
+
+    /**
+     * Resume any run that a shutdown interrupted
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<YearMonth> unfinished = new ArrayList<>();
+        try (DirectoryStream<Path> months = Files.newDirectoryStream(directory)) {
+            for (Path monthDirectory : months) {
+                if (Files.exists(monthDirectory.resolve(CHECKPOINT_FILE))
+                        && !Files.exists(monthDirectory.resolve(COMPLETE_FILE))) {
+                    unfinished.add(YearMonth.parse(monthDirectory.getFileName().toString()));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not look for unfinished monthly report runs", e);
+            return;
+        }
+        unfinished.forEach(month -> {
+            log.info("Resuming monthly report run for {}", month);
+            generate(month);
+        });
+    }
+
+    /**
+     * Generate every seller's report for a month, skipping seller id ranges that
+     * an earlier run already checkpointed
+     * @param month the month
+     * @return the run report
+     */
+    public synchronized MonthlyReportRun generate(YearMonth month) {
+        long startedAt = System.currentTimeMillis();
+        Path monthDirectory = monthDirectory(month);
+        generating = true;
+        try {
+            Files.createDirectories(monthDirectory);
+            Files.deleteIfExists(monthDirectory.resolve(COMPLETE_FILE));
+            Set<String> checkpointed = readCheckpoint(monthDirectory);
+
+            long maxUserId = userRepository.findMaxId();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            PartitionTotals totals;
+            try {
+                totals = pool.invoke(new PartitionTask(month, monthDirectory, checkpointed, 1, Math.max(maxUserId, 1)));
+            } finally {
+                pool.shutdown();
+            }
+
+            Files.writeString(monthDirectory.resolve(COMPLETE_FILE), String.valueOf(System.currentTimeMillis()));
+            MonthlyReportRun run = new MonthlyReportRun(month, totals.partitions(), totals.skippedPartitions(),
+                    totals.reports(), System.currentTimeMillis() - startedAt);
+            log.info("Monthly reports for {} finished: {} reports in {} partitions ({} resumed) in {} ms, {} reports/s",
+                    month, run.reports(), run.partitions(), run.skippedPartitions(), run.elapsedMillis(),
+                    String.format("%.1f", run.reportsPerSecond()));
+            return run;
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("Monthly report run for " + month + " failed", e);
+        } finally {
+            generating = false;
+            invalidatedDuringRun.clear();
+        }
+    }
+
+    /**
+     * Splits a seller id range in half until it is small enough to generate directly
+     */
+    private class PartitionTask extends RecursiveTask<PartitionTotals> {
+
+        private final YearMonth month;
+        private final Path monthDirectory;
+        private final Set<String> checkpointed;
+        private final long fromId;
+        private final long toId;
+
+        PartitionTask(YearMonth month, Path monthDirectory, Set<String> checkpointed, long fromId, long toId) {
+            this.month = month;
+            this.monthDirectory = monthDirectory;
+            this.checkpointed = checkpointed;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected PartitionTotals compute() {
+            long size = toId - fromId + 1;
+            if (size > partitionSize) {
+                // Split on partition boundaries, so checkpoints line up between runs
+                long half = (size / partitionSize + 1) / 2 * partitionSize;
+                PartitionTask left = new PartitionTask(month, monthDirectory, checkpointed, fromId, fromId + half - 1);
+                PartitionTask right = new PartitionTask(month, monthDirectory, checkpointed, fromId + half, toId);
+                left.fork();
+                return right.compute().plus(left.join());
+            }
+
+            String partition = fromId + "-" + toId;
+            if (checkpointed.contains(partition)) {
+                return new PartitionTotals(1, 1, 0);
+            }
+
+            long startedAt = System.currentTimeMillis();
+            List<User> sellers = userRepository.findByRoleInAndIdBetweenOrderById(SELLER_ROLES, fromId, toId);
+            for (User seller : sellers) {
+                writeReport(month, monthDirectory, seller);
+            }
+            appendCheckpoint(monthDirectory, partition);
+            log.info("Monthly reports for {}: partition {} generated {} reports in {} ms",
+                    month, partition, sellers.size(), System.currentTimeMillis() - startedAt);
+            return new PartitionTotals(1, 0, sellers.size());
+        }
+    }
+
+    private void writeReport(YearMonth month, Path monthDirectory, User seller) {
+        ZoneId zone = ZoneId.systemDefault();
+        Date start = Date.from(month.atDay(1).atStartOfDay(zone).toInstant());
+        Date end = Date.from(month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant());
+
+        Path report = reportFile(monthDirectory, seller.getId());
+        Path partial = monthDirectory.resolve(report.getFileName() + ".part");
+        invalidatedDuringRun.remove(report);
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), 64 * 1024);
+                 AnalyticsExportWriter writer = AnalyticsExportFormat.CSV.newWriter(out)) {
+                analyticsExportService.exportSellerAnalytics(seller, start, end, REPORT_SECTIONS, writer);
+            }
+            Files.move(partial, report, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // The seller's orders changed while the report was written, so it may already be outdated
+            if (invalidatedDuringRun.contains(report)) {
+                Files.deleteIfExists(report);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Set<String> readCheckpoint(Path monthDirectory) throws IOException {
+        Path checkpoint = monthDirectory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpoint)) {
+            Files.createFile(checkpoint);
+            return Set.of();
+        }
+        return new HashSet<>(Files.readAllLines(checkpoint, StandardCharsets.UTF_8));
+    }
+
+    private void appendCheckpoint(Path monthDirectory, String partition) {
+        // Not the service's own lock, which generate holds while it waits for the workers
+        synchronized (checkpointLock) {
+            try {
+                Files.writeString(monthDirectory.resolve(CHECKPOINT_FILE), partition + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Path monthDirectory(YearMonth month) {
+        return directory.resolve(month.toString());
+    }
+
+    private Path reportFile(Path monthDirectory, Long sellerId) {
+        return monthDirectory.resolve("seller-" + sellerId + ".csv");
+    }
+
+    private record PartitionTotals(int partitions, int skippedPartitions, long reports) {
+
+        PartitionTotals plus(PartitionTotals other) {
+            return new PartitionTotals(partitions + other.partitions, skippedPartitions + other.skippedPartitions,
+                    reports + other.reports);
+        }
+    }
+
+    /**
+     * Outcome of a monthly report run
+     * @param month the month reported on
+     * @param partitions the number of seller id ranges
+     * @param skippedPartitions the ranges already generated by an interrupted earlier run
+     * @param reports the number of reports generated by this run
+     * @param elapsedMillis the total running time
+     */
+    public record MonthlyReportRun(YearMonth month, int partitions, int skippedPartitions, long reports,
+                                   long elapsedMillis) {
+
+        public double reportsPerSecond() {
+            return elapsedMillis > 0 ? reports * 1000.0 / elapsedMillis : reports;
+        }
+    }
+}
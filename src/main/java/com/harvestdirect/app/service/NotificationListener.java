@@ -0,0 +1,99 @@
+package com.harvestdirect.app.service;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Consumer;
+
+/**
+ * Listens for Postgres notifications on one channel from a daemon thread with its
+ * own connection, reconnecting with backoff when the connection is lost. Notifications
+ * sent while no connection was listening are lost; the owner is told of every new
+ * connection so that it can discard whatever those could have invalidated.
+ */
+final class NotificationListener {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationListener.class);
+
+    private static final long MAX_RECONNECT_DELAY_MS = 60_000;
+
+    private final String channel;
+    private final String databaseUrl;
+    private final String databaseUsername;
+    private final String databasePassword;
+    private final Consumer<Boolean> onConnected;
+    private final Consumer<String> onNotification;
+    private volatile boolean listening;
+    private Thread thread;
+
+    /**
+     * @param channel the channel to listen on
+     * @param onConnected called on every new connection, with whether one was made before
+     * @param onNotification called with the payload of each notification; it must not throw
+     */
+    NotificationListener(String channel, String databaseUrl, String databaseUsername, String databasePassword,
+                         Consumer<Boolean> onConnected, Consumer<String> onNotification) {
+        this.channel = channel;
+        this.databaseUrl = databaseUrl;
+        this.databaseUsername = databaseUsername;
+        this.databasePassword = databasePassword;
+        this.onConnected = onConnected;
+        this.onNotification = onNotification;
+    }
+
+    void start(String threadName) {
+        listening = true;
+        thread = new Thread(this::listen, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        listening = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void listen() {
+        long reconnectDelay = 1000;
+        boolean connectedBefore = false;
+        while (listening) {
+            try (Connection connection = DriverManager.getConnection(databaseUrl, databaseUsername, databasePassword)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                onConnected.accept(connectedBefore);
+                connectedBefore = true;
+                reconnectDelay = 1000;
+                while (listening) {
+                    PGNotification[] notifications = pgConnection.getNotifications(10_000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            onNotification.accept(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!listening) {
+                    return;
+                }
+                log.warn("Listener on channel {} lost its database connection, reconnecting in {} ms",
+                        channel, reconnectDelay, e);
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+    }
+}
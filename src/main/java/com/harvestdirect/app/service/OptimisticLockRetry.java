@@ -0,0 +1,97 @@
+package com.harvestdirect.app.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs read-modify-write operations on versioned entities in their own transaction
+ * and repeats them when the commit loses a version check. Each attempt re-reads the
+ * entities, so a retry applies the change to the state the conflicting writer left.
+ * Attempts are bounded and spaced by exponential backoff with full jitter, so that
+ * writers contending on one row do not collide again in lockstep.
+ */
+@Slf4j
+@Component
+public class OptimisticLockRetry {
+
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    public OptimisticLockRetry(
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${concurrency.optimistic.max-attempts:4}") int maxAttempts,
+            @Value("${concurrency.optimistic.initial-backoff-ms:10}") long initialBackoffMillis,
+            @Value("${concurrency.optimistic.max-backoff-ms:200}") long maxBackoffMillis) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Run an operation in a new transaction, retrying it on optimistic lock conflicts.
+     * When the caller is already in a transaction the operation joins it and is not
+     * retried, since the conflict only surfaces when the outer transaction commits.
+     * @param operation name of the operation, used as the metrics tag
+     * @param action the operation
+     * @return the operation's result
+     */
+    public <T> T inTransaction(String operation, Supplier<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> action.get());
+            } catch (OptimisticLockingFailureException e) {
+                meterRegistry.counter("concurrency.optimistic.conflicts", "operation", operation).increment();
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("concurrency.optimistic.exhausted", "operation", operation).increment();
+                    log.warn("Giving up on {} after {} conflicting attempts", operation, attempt);
+                    throw e;
+                }
+                meterRegistry.counter("concurrency.optimistic.retries", "operation", operation).increment();
+                log.debug("Retrying {} after a version conflict (attempt {})", operation, attempt);
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Run an operation without a result in a new transaction, retrying it on conflicts
+     * @param operation name of the operation, used as the metrics tag
+     * @param action the operation
+     */
+    public void inTransaction(String operation, Runnable action) {
+        inTransaction(operation, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void backOff(int attempt, OptimisticLockingFailureException conflict) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+}
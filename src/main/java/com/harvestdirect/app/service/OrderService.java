@@ -1,11 +1,14 @@
 package com.harvestdirect.app.service;
 
+import com.harvestdirect.app.event.OrderDataChangedEvent;
+import com.harvestdirect.app.event.ProductStockChangedEvent;
 import com.harvestdirect.app.model.*;
 import com.harvestdirect.app.repository.OrderItemRepository;
 import com.harvestdirect.app.repository.OrderRepository;
 import com.harvestdirect.app.repository.ProductRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.*;
@@ -14,20 +17,40 @@ import java.util.stream.Collectors;
 @Service
 public class OrderService {
 
+    private static final String RESERVE_STOCK_SQL =
+            "UPDATE products SET quantity = quantity - ?, is_available = quantity - ? > 0, " +
+            "version = version + 1, updated_at = now() " +
+            "WHERE id = ? AND is_available AND quantity >= ?";
+
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
     private final ProductRepository productRepository;
     private final CartService cartService;
+    private final SalesRollupService salesRollupService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+    private final OptimisticLockRetry optimisticLockRetry;
+    private final FlashSaleSequencer flashSaleSequencer;
 
     public OrderService(
             OrderRepository orderRepository,
             OrderItemRepository orderItemRepository,
             ProductRepository productRepository,
-            CartService cartService) {
+            CartService cartService,
+            SalesRollupService salesRollupService,
+            ApplicationEventPublisher eventPublisher,
+            JdbcTemplate jdbcTemplate,
+            OptimisticLockRetry optimisticLockRetry,
+            FlashSaleSequencer flashSaleSequencer) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
         this.productRepository = productRepository;
         this.cartService = cartService;
+        this.salesRollupService = salesRollupService;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.optimisticLockRetry = optimisticLockRetry;
+        this.flashSaleSequencer = flashSaleSequencer;
     }
 
     public List<Order> getAllOrders() {
@@ -50,24 +73,68 @@ public class OrderService {
         return orderItemRepository.findByOrder(order);
     }
 
-    @Transactional
     public List<Order> createOrdersFromCart(User buyer, String deliveryAddress) {
-        List<CartItem> cartItems = cartService.getCartItems(buyer);
+        // Flash-sale lines are admitted before the checkout transaction starts, so that
+        // buyers waiting for admission hold neither row locks nor a connection
+        List<FlashSaleSequencer.Grant> grants = admitFlashSaleLines(cartService.getCartItemsForCheckout(buyer));
+        try {
+            return optimisticLockRetry.inTransaction("checkout", () -> placeOrders(buyer, deliveryAddress, grants));
+        } catch (RuntimeException e) {
+            grants.forEach(flashSaleSequencer::release);
+            throw e;
+        }
+    }
+
+    private List<FlashSaleSequencer.Grant> admitFlashSaleLines(List<CartItem> cartItems) {
+        List<FlashSaleSequencer.Grant> grants = new ArrayList<>();
+        try {
+            for (CartItem item : cartItems) {
+                Product product = item.getProduct();
+                if (flashSaleSequencer.handles(product)) {
+                    grants.add(flashSaleSequencer.reserve(product, item.getQuantity()));
+                }
+            }
+        } catch (RuntimeException e) {
+            grants.forEach(flashSaleSequencer::release);
+            throw e;
+        }
+        return grants;
+    }
+
+    private List<Order> placeOrders(User buyer, String deliveryAddress, List<FlashSaleSequencer.Grant> grants) {
+        List<CartItem> cartItems = cartService.getCartItemsForCheckout(buyer);
         
         if (cartItems.isEmpty()) {
             throw new RuntimeException("Cart is empty");
         }
         
-        // Group cart items by seller
-        Map<User, List<CartItem>> itemsBySeller = cartItems.stream()
-                .collect(Collectors.groupingBy(item -> item.getProduct().getSeller()));
+        // Admitted stock is already taken, so it has to match the cart exactly
+        Map<Long, Integer> admitted = grants.stream()
+                .collect(Collectors.toMap(FlashSaleSequencer.Grant::productId, FlashSaleSequencer.Grant::quantity));
+        Map<Long, Integer> flashSaleLines = cartItems.stream()
+                .filter(item -> admitted.containsKey(item.getProduct().getId()))
+                .collect(Collectors.toMap(item -> item.getProduct().getId(), CartItem::getQuantity));
+        if (!flashSaleLines.equals(admitted)) {
+            throw new RuntimeException("Your cart changed during checkout, please try again");
+        }
+        // The reservations are deleted with this transaction, so that committed stock is never returned
+        flashSaleSequencer.consume(grants);
+        
+        reserveStock(cartItems.stream()
+                .filter(item -> !admitted.containsKey(item.getProduct().getId()))
+                .toList());
+        
+        // Group cart items by seller id; the seller entities are only compared by key
+        Map<Long, List<CartItem>> itemsBySeller = cartItems.stream()
+                .collect(Collectors.groupingBy(item -> item.getProduct().getSeller().getId(),
+                        LinkedHashMap::new, Collectors.toList()));
         
         List<Order> createdOrders = new ArrayList<>();
+        List<SalesRollupService.PlacedOrder> placedOrders = new ArrayList<>();
         
         // Create an order for each seller
-        for (Map.Entry<User, List<CartItem>> entry : itemsBySeller.entrySet()) {
-            User seller = entry.getKey();
-            List<CartItem> items = entry.getValue();
+        for (List<CartItem> items : itemsBySeller.values()) {
+            User seller = items.get(0).getProduct().getSeller();
             
             // Calculate total amount
             BigDecimal totalAmount = items.stream()
@@ -85,52 +152,89 @@ public class OrderService {
             order.setStatus(Order.OrderStatus.PENDING);
             
             Order savedOrder = orderRepository.save(order);
+            List<OrderItem> orderItems = new ArrayList<>();
             
             // Create order items
             for (CartItem item : items) {
                 Product product = item.getProduct();
                 
-                // Check if product is still available and has enough quantity
-                if (!product.getIsAvailable()) {
-                    throw new RuntimeException("Product " + product.getName() + " is no longer available");
-                }
-                
-                if (product.getQuantity() < item.getQuantity()) {
-                    throw new RuntimeException("Not enough quantity available for " + product.getName());
-                }
-                
-                // Create order item
                 OrderItem orderItem = new OrderItem();
                 orderItem.setOrder(savedOrder);
                 orderItem.setProduct(product);
                 orderItem.setQuantity(item.getQuantity());
                 orderItem.setUnitPrice(product.getPrice());
                 orderItem.setSubtotal(product.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
-                
-                orderItemRepository.save(orderItem);
-                
-                // Update product quantity
-                product.setQuantity(product.getQuantity() - item.getQuantity());
-                if (product.getQuantity() <= 0) {
-                    product.setIsAvailable(false);
-                }
-                productRepository.save(product);
+                orderItems.add(orderItem);
             }
             
+            placedOrders.add(new SalesRollupService.PlacedOrder(savedOrder, orderItems));
             createdOrders.add(savedOrder);
         }
         
+        // Ids come from pooled sequences, so Hibernate writes these as ordered JDBC batches
+        orderItemRepository.saveAll(placedOrders.stream().flatMap(placed -> placed.items().stream()).toList());
+        
+        // One batched upsert per rollup for the whole checkout
+        salesRollupService.recordOrders(placedOrders);
+        createdOrders.forEach(order ->
+                eventPublisher.publishEvent(new OrderDataChangedEvent(order.getSeller().getId(), buyer.getId(),
+                        order.getOrderDate())));
+        
         // Clear the cart after successful order creation
-        cartService.clearCart(buyer);
+        cartService.removeCheckedOutItems(cartItems);
         
         return createdOrders;
     }
 
-    @Transactional
+    /**
+     * Reserve stock for every cart line in one batch of conditional updates. Rows are
+     * locked in product id order, so that concurrent checkouts of the same products
+     * cannot deadlock; a line without enough stock rolls the whole checkout back.
+     * @param cartItems the cart lines not admitted by the flash-sale sequencer, with products loaded
+     */
+    private void reserveStock(List<CartItem> cartItems) {
+        if (cartItems.isEmpty()) {
+            return;
+        }
+        
+        List<CartItem> reservationOrder = new ArrayList<>(cartItems);
+        reservationOrder.sort(Comparator.comparing(item -> item.getProduct().getId()));
+        
+        List<Object[]> rows = new ArrayList<>(reservationOrder.size());
+        for (CartItem item : reservationOrder) {
+            rows.add(new Object[] {item.getQuantity(), item.getQuantity(), item.getProduct().getId(), item.getQuantity()});
+        }
+        
+        int[] updated = jdbcTemplate.batchUpdate(RESERVE_STOCK_SQL, rows);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                Product product = reservationOrder.get(i).getProduct();
+                throw new RuntimeException(product.getIsAvailable()
+                        ? "Not enough quantity available for " + product.getName()
+                        : "Product " + product.getName() + " is no longer available");
+            }
+        }
+        
+        // The rows stay locked until commit, so the quantities read back are the reserved ones
+        List<Long> productIds = reservationOrder.stream().map(item -> item.getProduct().getId()).toList();
+        String placeholders = String.join(", ", Collections.nCopies(productIds.size(), "?"));
+        jdbcTemplate.query("SELECT id, quantity FROM products WHERE id IN (" + placeholders + ")",
+                rs -> {
+                    int remaining = rs.getInt("quantity");
+                    eventPublisher.publishEvent(new ProductStockChangedEvent(rs.getLong("id"), remaining, remaining > 0));
+                },
+                productIds.toArray());
+    }
+
     public Order updateOrderStatus(Long orderId, Order.OrderStatus newStatus) {
+        return optimisticLockRetry.inTransaction("order.status", () -> applyOrderStatus(orderId, newStatus));
+    }
+
+    private Order applyOrderStatus(Long orderId, Order.OrderStatus newStatus) {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Order not found"));
         
+        Order.OrderStatus previousStatus = order.getStatus();
         order.setStatus(newStatus);
         
         // If order is cancelled, return products to inventory
@@ -138,22 +242,32 @@ public class OrderService {
             List<OrderItem> orderItems = orderItemRepository.findByOrder(order);
             
             for (OrderItem item : orderItems) {
-                Product product = item.getProduct();
-                product.setQuantity(product.getQuantity() + item.getQuantity());
-                product.setIsAvailable(true);
-                productRepository.save(product);
+                Long productId = item.getProduct().getId();
+                productRepository.restoreStock(productId, item.getQuantity()).ifPresent(remaining ->
+                        eventPublisher.publishEvent(new ProductStockChangedEvent(productId, remaining, true)));
+            }
+            
+            if (previousStatus != Order.OrderStatus.CANCELLED) {
+                salesRollupService.reverseOrder(order, orderItems);
             }
+        } else if (previousStatus == Order.OrderStatus.CANCELLED) {
+            salesRollupService.recordOrder(order, orderItemRepository.findByOrder(order));
         }
         
+        eventPublisher.publishEvent(new OrderDataChangedEvent(order.getSeller().getId(), order.getBuyer().getId(),
+                order.getOrderDate()));
         return orderRepository.save(order);
     }
 
-    @Transactional
     public Order updatePaymentStatus(Long orderId, Order.PaymentStatus newStatus) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new RuntimeException("Order not found"));
-        
-        order.setPaymentStatus(newStatus);
-        return orderRepository.save(order);
+        return optimisticLockRetry.inTransaction("order.payment", () -> {
+            Order order = orderRepository.findById(orderId)
+                    .orElseThrow(() -> new RuntimeException("Order not found"));
+            
+            order.setPaymentStatus(newStatus);
+            eventPublisher.publishEvent(new OrderDataChangedEvent(order.getSeller().getId(), order.getBuyer().getId(),
+                    order.getOrderDate()));
+            return orderRepository.save(order);
+        });
     }
 }
\ No newline at end of file
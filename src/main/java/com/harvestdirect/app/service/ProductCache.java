@@ -0,0 +1,273 @@
+package com.harvestdirect.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.harvestdirect.app.dto.ProductCard;
+import com.harvestdirect.app.dto.ProductPage;
+import com.harvestdirect.app.event.CatalogReloadEvent;
+import com.harvestdirect.app.event.ProductChangedEvent;
+import com.harvestdirect.app.event.ProductStockChangedEvent;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Size and TTL bounded cache of product cards and of the first page of catalog
+ * listings. Entries are evicted after every committed product or stock change.
+ * Other application nodes learn of a change through a Postgres notification
+ * that the writing transaction sends, and which is therefore delivered only if
+ * it commits; each node listens for them on a dedicated connection. A transaction
+ * sends a single notification naming every product it changed.
+ * <p>
+ * A node receiving a notification reloads the products it names and publishes
+ * them as local product change events, so that the search, facet and suggestion
+ * indexes follow changes made on other nodes as they follow local ones. When the
+ * notification cannot name the products, or notifications may have been missed
+ * while reconnecting, it publishes a {@link CatalogReloadEvent} instead.
+ */
+@Component
+public class ProductCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductCache.class);
+
+    private static final String CHANNEL = "product_cache";
+    // Postgres rejects payloads of 8000 bytes or more; larger changes evict everything
+    private static final int MAX_PAYLOAD_LENGTH = 7_900;
+    private static final String ALL_PRODUCTS = "*";
+
+    private final Cache<Long, ProductCard> products;
+    private final Cache<ListingKey, ProductPage> listings;
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter remoteInvalidations;
+    // Set while remote changes are republished locally, which must not be sent back out
+    private final ThreadLocal<Boolean> applyingRemoteChange = ThreadLocal.withInitial(() -> false);
+    private final String nodeId = UUID.randomUUID().toString();
+    private final boolean notifyEnabled;
+    private final String databaseUrl;
+    private final String databaseUsername;
+    private final String databasePassword;
+    private NotificationListener listener;
+
+    public ProductCache(
+            MeterRegistry meterRegistry,
+            JdbcTemplate jdbcTemplate,
+            ProductRepository productRepository,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${catalog.cache.maximum-size:20000}") long maximumSize,
+            @Value("${catalog.cache.listing-maximum-size:1000}") long listingMaximumSize,
+            @Value("${catalog.cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${catalog.cache.notify.enabled:true}") boolean notifyEnabled,
+            @Value("${spring.datasource.url:}") String databaseUrl,
+            @Value("${spring.datasource.username:}") String databaseUsername,
+            @Value("${spring.datasource.password:}") String databasePassword) {
+        this.products = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.listings = Caffeine.newBuilder()
+                .maximumSize(listingMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, products, "catalog.products");
+        CaffeineCacheMetrics.monitor(meterRegistry, listings, "catalog.listings");
+        this.remoteInvalidations = meterRegistry.counter("catalog.cache.remote.invalidations");
+        this.jdbcTemplate = jdbcTemplate;
+        this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
+        // Notifications are a Postgres feature
+        this.notifyEnabled = notifyEnabled && databaseUrl.startsWith("jdbc:postgresql:");
+        this.databaseUrl = databaseUrl;
+        this.databaseUsername = databaseUsername;
+        this.databasePassword = databasePassword;
+    }
+
+    /**
+     * Get a product card, loading it on a miss. Missing products are not cached.
+     * @param productId the product id
+     * @param loader loads the card from the database
+     * @return the card, or empty if there is no such product
+     */
+    public Optional<ProductCard> getProduct(Long productId, Supplier<Optional<ProductCard>> loader) {
+        return Optional.ofNullable(products.get(productId, id -> loader.get().orElse(null)));
+    }
+
+    /**
+     * Get the first page of a catalog listing, loading it on a miss
+     * @param category the category listed, or null for all available products
+     * @param sort the listing order
+     * @param size the page size
+     * @param loader loads the page from the database
+     * @return the page
+     */
+    public ProductPage getFirstPage(String category, ProductSort sort, int size, Supplier<ProductPage> loader) {
+        return listings.get(new ListingKey(category, sort, size), key -> loader.get());
+    }
+
+    public void invalidateProduct(Long productId) {
+        products.invalidate(productId);
+        listings.invalidateAll();
+    }
+
+    public void invalidateAll() {
+        products.invalidateAll();
+        listings.invalidateAll();
+    }
+
+    @EventListener
+    public void notifyProductChanged(ProductChangedEvent event) {
+        notifyNodes(event.productId());
+    }
+
+    @EventListener
+    public void notifyProductStockChanged(ProductStockChangedEvent event) {
+        notifyNodes(event.productId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        invalidateProduct(event.productId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductStockChanged(ProductStockChangedEvent event) {
+        invalidateProduct(event.productId());
+    }
+
+    /**
+     * Add a product to the notification the current transaction sends just before
+     * it commits, so that Postgres delivers it to the other nodes when, and only if,
+     * the transaction commits. Outside a transaction the notification goes out at once.
+     */
+    private void notifyNodes(Long productId) {
+        if (!notifyEnabled || applyingRemoteChange.get()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            sendNotification(Set.of(productId));
+            return;
+        }
+        PendingNotification pending = TransactionSynchronizationManager.getSynchronizations().stream()
+                .filter(synchronization -> synchronization instanceof PendingNotification)
+                .map(PendingNotification.class::cast)
+                .findFirst()
+                .orElseGet(() -> {
+                    PendingNotification created = new PendingNotification();
+                    TransactionSynchronizationManager.registerSynchronization(created);
+                    return created;
+                });
+        pending.productIds.add(productId);
+    }
+
+    private void sendNotification(Set<Long> productIds) {
+        String ids = productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        String payload = nodeId + " " + (ids.length() <= MAX_PAYLOAD_LENGTH - nodeId.length() - 1 ? ids : ALL_PRODUCTS);
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, payload);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startListening() {
+        if (!notifyEnabled) {
+            return;
+        }
+        listener = new NotificationListener(CHANNEL, databaseUrl, databaseUsername, databasePassword,
+                this::onConnected, this::onNotification);
+        listener.start("product-cache-listener");
+    }
+
+    private void onConnected(boolean reconnected) {
+        // Changes made while no connection was listening were missed; at startup
+        // the indexes are being built from the database anyway
+        invalidateAll();
+        if (reconnected) {
+            applyRemotely(() -> eventPublisher.publishEvent(new CatalogReloadEvent()));
+        }
+    }
+
+    void onNotification(String payload) {
+        int separator = payload.indexOf(' ');
+        if (separator < 0 || payload.substring(0, separator).equals(nodeId)) {
+            // This node applied its own changes when they committed
+            return;
+        }
+        remoteInvalidations.increment();
+        try {
+            String ids = payload.substring(separator + 1);
+            if (ids.equals(ALL_PRODUCTS)) {
+                invalidateAll();
+                applyRemotely(() -> eventPublisher.publishEvent(new CatalogReloadEvent()));
+                return;
+            }
+            List<Long> productIds = Arrays.stream(ids.split(",")).map(Long::valueOf).toList();
+            products.invalidateAll(productIds);
+            listings.invalidateAll();
+            applyRemotely(() -> publishReloaded(productIds));
+        } catch (RuntimeException e) {
+            // A bad payload or a failed reload must not stop the listener; the cache at least starts over
+            log.warn("Could not apply product change notification '{}'", payload, e);
+            invalidateAll();
+        }
+    }
+
+    private void publishReloaded(List<Long> productIds) {
+        Map<Long, Product> reloaded = new HashMap<>();
+        productRepository.findWithSellerByIdIn(productIds).forEach(product -> reloaded.put(product.getId(), product));
+        for (Long productId : productIds) {
+            eventPublisher.publishEvent(new ProductChangedEvent(productId, reloaded.get(productId)));
+        }
+    }
+
+    private void applyRemotely(Runnable publishing) {
+        applyingRemoteChange.set(true);
+        try {
+            publishing.run();
+        } finally {
+            applyingRemoteChange.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void stopListening() {
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    private record ListingKey(String category, ProductSort sort, int size) {
+    }
+
+    /**
+     * The products changed by one transaction, sent to the other nodes before it commits
+     */
+    private final class PendingNotification implements TransactionSynchronization {
+
+        private final Set<Long> productIds = new LinkedHashSet<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            sendNotification(productIds);
+        }
+    }
+}
@@ -1,21 +1,57 @@
 package com.harvestdirect.app.service;
 
+import com.harvestdirect.app.dto.FacetCount;
+import com.harvestdirect.app.dto.FacetedProductPage;
+import com.harvestdirect.app.dto.ProductCard;
+import com.harvestdirect.app.dto.ProductFilter;
+import com.harvestdirect.app.dto.ProductPage;
+import com.harvestdirect.app.event.ProductChangedEvent;
+import com.harvestdirect.app.event.ProductStockChangedEvent;
 import com.harvestdirect.app.model.Product;
 import com.harvestdirect.app.model.User;
 import com.harvestdirect.app.repository.ProductRepository;
+import com.harvestdirect.app.search.ProductFacetIndex;
+import com.harvestdirect.app.search.ProductSearchIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class ProductService {
 
     private final ProductRepository productRepository;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductFacetIndex productFacetIndex;
+    private final ProductCache productCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OptimisticLockRetry optimisticLockRetry;
+    private final int maxSearchResults;
 
-    public ProductService(ProductRepository productRepository) {
+    public ProductService(
+            ProductRepository productRepository,
+            ProductSearchIndex productSearchIndex,
+            ProductFacetIndex productFacetIndex,
+            ProductCache productCache,
+            ApplicationEventPublisher eventPublisher,
+            OptimisticLockRetry optimisticLockRetry,
+            @Value("${search.max-results:100}") int maxSearchResults) {
         this.productRepository = productRepository;
+        this.productSearchIndex = productSearchIndex;
+        this.productFacetIndex = productFacetIndex;
+        this.productCache = productCache;
+        this.eventPublisher = eventPublisher;
+        this.optimisticLockRetry = optimisticLockRetry;
+        this.maxSearchResults = maxSearchResults;
     }
 
     public List<Product> getAllProducts() {
@@ -30,6 +66,15 @@ public class ProductService {
         return productRepository.findById(id);
     }
 
+    /**
+     * Get a product for display, from the cache when possible
+     * @param id the product id
+     * @return the product card, or empty if there is no such product
+     */
+    public Optional<ProductCard> getProductCard(Long id) {
+        return productCache.getProduct(id, () -> productRepository.findWithSellerById(id).map(ProductCard::from));
+    }
+
     public List<Product> getProductsBySeller(User seller) {
         return productRepository.findBySeller(seller);
     }
@@ -38,37 +83,154 @@ public class ProductService {
         return productRepository.findByCategory(category);
     }
 
-    public List<Product> searchProducts(String query) {
-        return productRepository.searchProducts(query);
+    /**
+     * Get a page of the available products
+     * @param sort the listing order
+     * @param cursor the cursor of the page, or null for the first page
+     * @param size the page size
+     * @return the page
+     */
+    public ProductPage getAvailableProductPage(ProductSort sort, String cursor, int size) {
+        if (cursor == null || cursor.isEmpty()) {
+            return productCache.getFirstPage(null, sort, size, () -> toPage(productRepository.findByIsAvailableTrue(
+                    sort.positionOf(null), sort.toSort(), Limit.of(size)), sort));
+        }
+        return toPage(productRepository.findByIsAvailableTrue(
+                sort.positionOf(cursor), sort.toSort(), Limit.of(size)), sort);
+    }
+
+    /**
+     * Get a page of the products in a category
+     * @param category the category
+     * @param sort the listing order
+     * @param cursor the cursor of the page, or null for the first page
+     * @param size the page size
+     * @return the page
+     */
+    public ProductPage getCategoryProductPage(String category, ProductSort sort, String cursor, int size) {
+        if (cursor == null || cursor.isEmpty()) {
+            return productCache.getFirstPage(category, sort, size, () -> toPage(productRepository.findByCategory(
+                    category, sort.positionOf(null), sort.toSort(), Limit.of(size)), sort));
+        }
+        return toPage(productRepository.findByCategory(
+                category, sort.positionOf(cursor), sort.toSort(), Limit.of(size)), sort);
+    }
+
+    /**
+     * Whether filtered listings and facet counts can be served
+     * @return true once the facet index has been built
+     */
+    public boolean isFacetFilteringAvailable() {
+        return productFacetIndex.isReady();
+    }
+
+    /**
+     * Get a page of the products matching a facet filter, newest first
+     * @param filter the facet selection
+     * @param cursor the cursor of the page, or null for the first page
+     * @param size the page size
+     * @return the page, with the facet counts for the filter
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public FacetedProductPage getFilteredProductPage(ProductFilter filter, String cursor, int size) {
+        long beforeId;
+        try {
+            beforeId = cursor == null || cursor.isEmpty() ? Long.MAX_VALUE : Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid catalog cursor", e);
+        }
+        ProductFacetIndex.FacetSelection selection = productFacetIndex.select(filter, beforeId, size);
+        return new FacetedProductPage(loadCards(selection.productIds()),
+                selection.nextBeforeId() != null ? String.valueOf(selection.nextBeforeId()) : null,
+                selection.totalMatches(), selection.facets());
+    }
+
+    /**
+     * Get the facet counts for a filter
+     * @param filter the facet selection
+     * @return the counts per facet value, by facet name
+     */
+    public Map<String, List<FacetCount>> getFacetCounts(ProductFilter filter) {
+        return productFacetIndex.select(filter, Long.MAX_VALUE, 0).facets();
+    }
+
+    private ProductPage toPage(Window<Product> window, ProductSort sort) {
+        List<ProductCard> products = window.getContent().stream().map(ProductCard::from).toList();
+        String nextCursor = window.hasNext() && !window.isEmpty()
+                ? sort.cursorAfter(window.getContent().get(window.size() - 1))
+                : null;
+        return new ProductPage(products, nextCursor);
+    }
+
+    /**
+     * Search the catalog, best match first. Until the search index has been
+     * built, this falls back to a substring match in the database.
+     * @param query the search text
+     * @return the matching products, at most the configured number
+     */
+    public List<ProductCard> searchProducts(String query) {
+        return searchProducts(query, null);
+    }
+
+    /**
+     * Search the catalog within a facet filter, best match first
+     * @param query the search text
+     * @param filter the facet selection, or null to search the whole catalog
+     * @return the matching products, at most the configured number
+     */
+    public List<ProductCard> searchProducts(String query, ProductFilter filter) {
+        if (!productSearchIndex.isReady()) {
+            return productRepository.searchProducts(query).stream().map(ProductCard::from).toList();
+        }
+        List<Long> ids = productSearchIndex.search(query, maxSearchResults);
+        if (filter != null && productFacetIndex.isReady()) {
+            ids = productFacetIndex.retainMatching(ids, filter);
+        }
+        return loadCards(ids);
+    }
+
+    private List<ProductCard> loadCards(List<Long> ids) {
+        Map<Long, Product> products = productRepository.findWithSellerByIdIn(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        return ids.stream().map(products::get).filter(Objects::nonNull).map(ProductCard::from).toList();
     }
 
     @Transactional
     public Product createProduct(Product product) {
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        eventPublisher.publishEvent(new ProductChangedEvent(saved.getId(), saved));
+        return saved;
     }
 
     @Transactional
     public Product updateProduct(Product product) {
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        eventPublisher.publishEvent(new ProductChangedEvent(saved.getId(), saved));
+        return saved;
     }
 
     @Transactional
     public void deleteProduct(Long id) {
         productRepository.deleteById(id);
+        eventPublisher.publishEvent(new ProductChangedEvent(id, null));
     }
 
-    @Transactional
     public Product updateProductQuantity(Long productId, int newQuantity) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
-        
-        product.setQuantity(newQuantity);
-        
-        // If quantity is 0, set the product as unavailable
-        if (newQuantity <= 0) {
-            product.setIsAvailable(false);
-        }
-        
-        return productRepository.save(product);
+        return optimisticLockRetry.inTransaction("product.quantity", () -> {
+            Product product = productRepository.findById(productId)
+                    .orElseThrow(() -> new RuntimeException("Product not found"));
+            
+            product.setQuantity(newQuantity);
+            
+            // If quantity is 0, set the product as unavailable
+            if (newQuantity <= 0) {
+                product.setIsAvailable(false);
+            }
+            
+            Product saved = productRepository.save(product);
+            eventPublisher.publishEvent(new ProductStockChangedEvent(
+                    saved.getId(), saved.getQuantity(), saved.getIsAvailable()));
+            return saved;
+        });
     }
 }
\ No newline at end of file
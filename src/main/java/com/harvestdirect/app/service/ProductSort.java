@@ -0,0 +1,99 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.model.Product;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Catalog listing orders. Every order ends with the product id, so that the
+ * (sort key, id) pair of the last product on a page identifies where the next
+ * page starts. That pair is handed to clients as an opaque cursor.
+ */
+public enum ProductSort {
+
+    NEWEST("createdAt", Sort.Direction.DESC, product -> String.valueOf(product.getCreatedAt().getTime()),
+            value -> new Date(Long.parseLong(value))),
+    PRICE_LOW("price", Sort.Direction.ASC, product -> product.getPrice().toPlainString(), BigDecimal::new),
+    PRICE_HIGH("price", Sort.Direction.DESC, product -> product.getPrice().toPlainString(), BigDecimal::new),
+    NAME("name", Sort.Direction.ASC, Product::getName, value -> value);
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final String property;
+    private final Sort.Direction direction;
+    private final Function<Product, String> keyOf;
+    private final Function<String, Object> parseKey;
+
+    ProductSort(String property, Sort.Direction direction, Function<Product, String> keyOf,
+                Function<String, Object> parseKey) {
+        this.property = property;
+        this.direction = direction;
+        this.keyOf = keyOf;
+        this.parseKey = parseKey;
+    }
+
+    /**
+     * Get a sort order by its request parameter value
+     * @param value the parameter value, such as "price_low"; may be null
+     * @return the matching order, or NEWEST if there is none
+     */
+    public static ProductSort from(String value) {
+        if (value != null) {
+            for (ProductSort sort : values()) {
+                if (sort.name().equalsIgnoreCase(value)) {
+                    return sort;
+                }
+            }
+        }
+        return NEWEST;
+    }
+
+    public String getParameter() {
+        return name().toLowerCase();
+    }
+
+    public Sort toSort() {
+        return Sort.by(new Sort.Order(direction, property), new Sort.Order(direction, "id"));
+    }
+
+    /**
+     * Get the cursor of the page that follows a product
+     * @param product the last product on the current page
+     * @return the cursor
+     */
+    String cursorAfter(Product product) {
+        String key = keyOf.apply(product) + "\n" + product.getId();
+        return ENCODER.encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the scroll position a cursor stands for
+     * @param cursor the cursor, or null for the first page
+     * @return the keyset position
+     * @throws IllegalArgumentException if the cursor was not issued for this order
+     */
+    ScrollPosition positionOf(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            String key = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+            int separator = key.lastIndexOf('\n');
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put(property, parseKey.apply(key.substring(0, separator)));
+            keys.put("id", Long.parseLong(key.substring(separator + 1)));
+            return ScrollPosition.forward(keys);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid catalog cursor", e);
+        }
+    }
+}
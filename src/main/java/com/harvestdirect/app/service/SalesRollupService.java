@@ -0,0 +1,229 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.model.Order;
+import com.harvestdirect.app.model.OrderItem;
+import com.harvestdirect.app.repository.BuyerDailyPurchaseRepository;
+import com.harvestdirect.app.repository.SellerDailySalesRepository;
+import com.harvestdirect.app.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Service maintaining the daily seller sales and buyer purchase rollups.
+ * Rows are keyed by user, local order day and product category; cancelled
+ * orders are not counted. The changes of all orders written in one transaction
+ * are summed per row first, and each rollup gets them in a single batch.
+ */
+@Service
+public class SalesRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesRollupService.class);
+
+    private static final String ADD_SELLER_AMOUNT_SQL =
+            "INSERT INTO seller_daily_sales (seller_id, sales_date, category, amount) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (seller_id, sales_date, category) " +
+            "DO UPDATE SET amount = seller_daily_sales.amount + EXCLUDED.amount";
+
+    private static final String ADD_BUYER_AMOUNT_SQL =
+            "INSERT INTO buyer_daily_purchases (buyer_id, purchase_date, category, amount) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (buyer_id, purchase_date, category) " +
+            "DO UPDATE SET amount = buyer_daily_purchases.amount + EXCLUDED.amount";
+
+    // Upserts lock rows in key order, so that concurrent checkouts cannot deadlock on them
+    private static final Comparator<RollupKey> KEY_ORDER = Comparator.comparing(RollupKey::userId)
+            .thenComparing(RollupKey::day)
+            .thenComparing(RollupKey::category, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final SellerDailySalesRepository sellerDailySalesRepository;
+    private final BuyerDailyPurchaseRepository buyerDailyPurchaseRepository;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int rebuildParallelism;
+    private final long rebuildChunkSize;
+
+    public SalesRollupService(
+            SellerDailySalesRepository sellerDailySalesRepository,
+            BuyerDailyPurchaseRepository buyerDailyPurchaseRepository,
+            UserRepository userRepository,
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            @Value("${analytics.rollup.rebuild-parallelism:4}") int rebuildParallelism,
+            @Value("${analytics.rollup.rebuild-chunk-size:500}") long rebuildChunkSize) {
+        this.sellerDailySalesRepository = sellerDailySalesRepository;
+        this.buyerDailyPurchaseRepository = buyerDailyPurchaseRepository;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.rebuildParallelism = rebuildParallelism;
+        this.rebuildChunkSize = rebuildChunkSize;
+    }
+
+    /**
+     * Add an order to the rollups, in the transaction that creates the order
+     * @param order the saved order
+     * @param items the order's items
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordOrder(Order order, Collection<OrderItem> items) {
+        recordOrders(List.of(new PlacedOrder(order, items)));
+    }
+
+    /**
+     * Add the orders of one checkout to the rollups, in the transaction that creates them
+     * @param orders the saved orders with their items
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordOrders(List<PlacedOrder> orders) {
+        RollupDeltas deltas = new RollupDeltas();
+        orders.forEach(order -> deltas.add(order.order(), order.items(), BigDecimal.ONE));
+        write(deltas);
+    }
+
+    /**
+     * Remove an order from the rollups, in the transaction that cancels the order
+     * @param order the cancelled order
+     * @param items the order's items
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reverseOrder(Order order, Collection<OrderItem> items) {
+        RollupDeltas deltas = new RollupDeltas();
+        deltas.add(order, items, BigDecimal.ONE.negate());
+        write(deltas);
+    }
+
+    /**
+     * Regenerate both rollups from orders and order items. User id ranges are
+     * rebuilt in parallel, each range in its own transaction.
+     * @return the rebuild report
+     */
+    public RollupReport rebuild() {
+        return forEachChunk(true);
+    }
+
+    /**
+     * Compare both rollups with the totals computed from orders and order items
+     * @return the report, with the number of rollup rows that differ from the source
+     */
+    public RollupReport checkDrift() {
+        return forEachChunk(false);
+    }
+
+    private void write(RollupDeltas deltas) {
+        if (!deltas.sellers.isEmpty()) {
+            jdbcTemplate.batchUpdate(ADD_SELLER_AMOUNT_SQL, rows(deltas.sellers));
+            jdbcTemplate.batchUpdate(ADD_BUYER_AMOUNT_SQL, rows(deltas.buyers));
+        }
+    }
+
+    private static List<Object[]> rows(Map<RollupKey, BigDecimal> amounts) {
+        List<Object[]> rows = new ArrayList<>(amounts.size());
+        amounts.forEach((key, amount) -> rows.add(new Object[] {key.userId(), key.day(), key.category(), amount}));
+        return rows;
+    }
+
+    private RollupReport forEachChunk(boolean rebuild) {
+        long startedAt = System.currentTimeMillis();
+        long maxUserId = userRepository.findMaxId();
+
+        ExecutorService executor = Executors.newFixedThreadPool(rebuildParallelism);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (long fromId = 1; fromId <= maxUserId; fromId += rebuildChunkSize) {
+                long from = fromId;
+                long to = Math.min(fromId + rebuildChunkSize - 1, maxUserId);
+                results.add(executor.submit(() -> rebuild ? rebuildChunk(from, to) : checkChunk(from, to)));
+            }
+
+            long driftRows = 0;
+            for (Future<Long> result : results) {
+                driftRows += result.get();
+            }
+
+            RollupReport report = new RollupReport(results.size(), driftRows, System.currentTimeMillis() - startedAt);
+            log.info("Sales rollup {} finished: {}", rebuild ? "rebuild" : "drift check", report);
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Sales rollup job was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Sales rollup job failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private long rebuildChunk(long fromId, long toId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            sellerDailySalesRepository.deleteSellerRange(fromId, toId);
+            sellerDailySalesRepository.rebuildSellerRange(fromId, toId);
+            buyerDailyPurchaseRepository.deleteBuyerRange(fromId, toId);
+            buyerDailyPurchaseRepository.rebuildBuyerRange(fromId, toId);
+        });
+        return 0;
+    }
+
+    private long checkChunk(long fromId, long toId) {
+        Long driftRows = transactionTemplate.execute(status ->
+                sellerDailySalesRepository.countDriftInSellerRange(fromId, toId)
+                        + buyerDailyPurchaseRepository.countDriftInBuyerRange(fromId, toId));
+        return driftRows != null ? driftRows : 0;
+    }
+
+    /**
+     * Outcome of a rollup rebuild or drift check
+     * @param chunks the number of user id ranges processed
+     * @param driftRows the number of rollup rows that differ from the source data
+     * @param elapsedMillis the total running time
+     */
+    public record RollupReport(int chunks, long driftRows, long elapsedMillis) {
+    }
+
+    /**
+     * An order with its items. Orders are held in a list rather than used as map
+     * keys: their generated hashCode walks the seller's products and back.
+     * @param order the order
+     * @param items the order's items
+     */
+    public record PlacedOrder(Order order, Collection<OrderItem> items) {
+    }
+
+    private record RollupKey(Long userId, LocalDate day, String category) {
+    }
+
+    /**
+     * Rollup changes summed per seller and buyer row, in key order
+     */
+    private static final class RollupDeltas {
+
+        private final Map<RollupKey, BigDecimal> sellers = new TreeMap<>(KEY_ORDER);
+        private final Map<RollupKey, BigDecimal> buyers = new TreeMap<>(KEY_ORDER);
+
+        void add(Order order, Collection<OrderItem> items, BigDecimal sign) {
+            Date orderDate = order.getOrderDate() != null ? order.getOrderDate() : new Date();
+            LocalDate day = orderDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+
+            for (OrderItem item : items) {
+                BigDecimal amount = item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity())).multiply(sign);
+                String category = item.getProduct().getCategory();
+                sellers.merge(new RollupKey(order.getSeller().getId(), day, category), amount, BigDecimal::add);
+                buyers.merge(new RollupKey(order.getBuyer().getId(), day, category), amount, BigDecimal::add);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.dto.ProductSalesTotal;
+import com.harvestdirect.app.model.Order;
+import com.harvestdirect.app.util.TimeSeries;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All seller dashboard metrics for one date range, computed together so that
+ * the dashboard and the export read the seller's orders only once
+ */
+public record SellerAnalyticsSnapshot(
+        TimeSeries salesOverTime,
+        BigDecimal totalSales,
+        Map<String, BigDecimal> salesByCategory,
+        List<ProductSalesTotal> topProducts,
+        Map<Order.OrderStatus, Long> orderCountByStatus) {
+
+    public long totalOrders() {
+        return orderCountByStatus.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
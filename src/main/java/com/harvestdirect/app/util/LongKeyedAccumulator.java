@@ -0,0 +1,108 @@
+package com.harvestdirect.app.util;
+
+import java.util.List;
+
+/**
+ * Open-addressing hash table from long keys to a pair of long counters. Used to
+ * aggregate per-product totals without boxing keys or values.
+ */
+public final class LongKeyedAccumulator {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private long[] primary;
+    private long[] secondary;
+    private boolean[] used;
+    private int size;
+    private int resizeAt;
+
+    public LongKeyedAccumulator(int expectedKeys) {
+        allocate(tableSizeFor((int) (Math.max(expectedKeys, 4) / LOAD_FACTOR) + 1));
+    }
+
+    /**
+     * Add to the counters of a key, creating it at zero if absent
+     * @param key the key
+     * @param primaryDelta the amount to add to the primary counter
+     * @param secondaryDelta the amount to add to the secondary counter
+     */
+    public void add(long key, long primaryDelta, long secondaryDelta) {
+        int slot = slotOf(key);
+        if (!used[slot]) {
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        primary[slot] += primaryDelta;
+        secondary[slot] += secondaryDelta;
+        if (size > resizeAt) {
+            resize();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Select the k keys with the highest counters, ranked by the primary counter
+     * and then the secondary counter
+     * @param k the maximum number of keys to return
+     * @return the selected entries, best first
+     */
+    public List<TopK.Entry> top(int k) {
+        TopK topK = new TopK(Math.min(k, size));
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                topK.offer(keys[slot], primary[slot], secondary[slot]);
+            }
+        }
+        return topK.toSortedList();
+    }
+
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldPrimary = primary;
+        long[] oldSecondary = secondary;
+        boolean[] oldUsed = used;
+
+        allocate(oldKeys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldUsed[slot]) {
+                int newSlot = slotOf(oldKeys[slot]);
+                used[newSlot] = true;
+                keys[newSlot] = oldKeys[slot];
+                primary[newSlot] = oldPrimary[slot];
+                secondary[newSlot] = oldSecondary[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        primary = new long[capacity];
+        secondary = new long[capacity];
+        used = new boolean[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int minimum) {
+        int capacity = Integer.highestOneBit(Math.max(minimum, 2) - 1) << 1;
+        return capacity > 0 ? capacity : 1 << 30;
+    }
+}
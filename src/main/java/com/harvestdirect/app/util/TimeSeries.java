@@ -0,0 +1,155 @@
+package com.harvestdirect.app.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Money amounts per day over a fixed range of days, stored as cents in a dense
+ * array indexed by the offset from the first day. Amounts are only converted to
+ * dates and BigDecimals when the series is rendered.
+ */
+public final class TimeSeries {
+
+    public enum Granularity {
+        DAY, WEEK, MONTH;
+
+        /**
+         * Resolve a granularity from a request parameter, defaulting to DAY
+         * @param value the parameter value, case insensitive
+         * @return the granularity
+         */
+        public static Granularity from(String value) {
+            if (value == null || value.isBlank()) {
+                return DAY;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return DAY;
+            }
+        }
+
+        LocalDate bucketStart(LocalDate day) {
+            return switch (this) {
+                case DAY -> day;
+                case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH -> day.withDayOfMonth(1);
+            };
+        }
+
+        LocalDate nextBucketStart(LocalDate bucketStart) {
+            return switch (this) {
+                case DAY -> bucketStart.plusDays(1);
+                case WEEK -> bucketStart.plusWeeks(1);
+                case MONTH -> bucketStart.plusMonths(1);
+            };
+        }
+    }
+
+    /**
+     * Receives one bucket of a rendered series
+     */
+    @FunctionalInterface
+    public interface BucketConsumer {
+        void accept(LocalDate bucketStart, long cents);
+    }
+
+    private final LocalDate firstDay;
+    private final long[] cents;
+
+    private TimeSeries(LocalDate firstDay, int days) {
+        this.firstDay = firstDay;
+        this.cents = new long[days];
+    }
+
+    /**
+     * Create a zero-filled series covering every day from first to last, inclusive
+     * @param firstDay the first day
+     * @param lastDay the last day
+     * @return the empty series
+     */
+    public static TimeSeries ofDays(LocalDate firstDay, LocalDate lastDay) {
+        long days = ChronoUnit.DAYS.between(firstDay, lastDay) + 1;
+        return new TimeSeries(firstDay, (int) Math.max(days, 0));
+    }
+
+    /**
+     * Add an amount in cents to a day; days outside the range are ignored
+     * @param day the day
+     * @param amountCents the amount in cents
+     */
+    public void addCents(LocalDate day, long amountCents) {
+        long offset = day.toEpochDay() - firstDay.toEpochDay();
+        if (offset >= 0 && offset < cents.length) {
+            cents[(int) offset] += amountCents;
+        }
+    }
+
+    public int days() {
+        return cents.length;
+    }
+
+    public long totalCents() {
+        long total = 0;
+        for (long amount : cents) {
+            total += amount;
+        }
+        return total;
+    }
+
+    public BigDecimal total() {
+        return toAmount(totalCents());
+    }
+
+    /**
+     * Visit the series bucket by bucket, in date order
+     * @param granularity the bucket size
+     * @param consumer receives each bucket's start date and total
+     */
+    public void forEachBucket(Granularity granularity, BucketConsumer consumer) {
+        if (cents.length == 0) {
+            return;
+        }
+        // Dates are only created where a bucket starts, not for every day
+        LocalDate bucket = granularity.bucketStart(firstDay);
+        LocalDate nextBucket = granularity.nextBucketStart(bucket);
+        long nextBucketOffset = nextBucket.toEpochDay() - firstDay.toEpochDay();
+        long bucketCents = 0;
+        for (int offset = 0; offset < cents.length; offset++) {
+            if (offset == nextBucketOffset) {
+                consumer.accept(bucket, bucketCents);
+                bucket = nextBucket;
+                nextBucket = granularity.nextBucketStart(bucket);
+                nextBucketOffset = nextBucket.toEpochDay() - firstDay.toEpochDay();
+                bucketCents = 0;
+            }
+            bucketCents += cents[offset];
+        }
+        consumer.accept(bucket, bucketCents);
+    }
+
+    /**
+     * Render the series as a date-ordered map of bucket start dates to amounts
+     * @param granularity the bucket size
+     * @return the rendered map
+     */
+    public Map<LocalDate, BigDecimal> toMap(Granularity granularity) {
+        Map<LocalDate, BigDecimal> amounts = new LinkedHashMap<>();
+        forEachBucket(granularity, (bucketStart, amountCents) -> amounts.put(bucketStart, toAmount(amountCents)));
+        return amounts;
+    }
+
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toAmount(long amountCents) {
+        return BigDecimal.valueOf(amountCents, 2);
+    }
+}
@@ -0,0 +1,133 @@
+package com.harvestdirect.app.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded selection of the k highest ranked entries from a stream of candidates.
+ * Entries are ranked by a primary score, then a secondary score, both descending,
+ * with ties broken by the lower key. Candidates are kept in a min-heap of primitive
+ * arrays, so offering a candidate that does not make the cut allocates nothing.
+ */
+public final class TopK {
+
+    private final int capacity;
+    private final long[] keys;
+    private final long[] primary;
+    private final long[] secondary;
+    private int size;
+
+    public TopK(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.primary = new long[capacity];
+        this.secondary = new long[capacity];
+    }
+
+    /**
+     * Offer a candidate, keeping it only if it ranks among the best k seen so far
+     * @param key the candidate key
+     * @param primaryScore the main ranking score
+     * @param secondaryScore the score used to break primary ties
+     */
+    public void offer(long key, long primaryScore, long secondaryScore) {
+        if (size < capacity) {
+            set(size, key, primaryScore, secondaryScore);
+            siftUp(size++);
+        } else if (capacity > 0 && ranksAbove(key, primaryScore, secondaryScore, 0)) {
+            // Replace the lowest ranked entry at the root
+            set(0, key, primaryScore, secondaryScore);
+            siftDown(0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the selected entries, best first
+     * @return the selected entries
+     */
+    public List<Entry> toSortedList() {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(keys[i], primary[i], secondary[i]));
+        }
+        entries.sort((a, b) -> {
+            int byPrimary = Long.compare(b.primary(), a.primary());
+            if (byPrimary != 0) {
+                return byPrimary;
+            }
+            int bySecondary = Long.compare(b.secondary(), a.secondary());
+            return bySecondary != 0 ? bySecondary : Long.compare(a.key(), b.key());
+        });
+        return entries;
+    }
+
+    private boolean ranksAbove(long key, long primaryScore, long secondaryScore, int slot) {
+        if (primaryScore != primary[slot]) {
+            return primaryScore > primary[slot];
+        }
+        if (secondaryScore != secondary[slot]) {
+            return secondaryScore > secondary[slot];
+        }
+        return key < keys[slot];
+    }
+
+    private void siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!ranksAbove(keys[parent], primary[parent], secondary[parent], slot)) {
+                break;
+            }
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int lowest = slot;
+            int left = 2 * slot + 1;
+            int right = left + 1;
+            if (left < size && !ranksAbove(keys[left], primary[left], secondary[left], lowest)) {
+                lowest = left;
+            }
+            if (right < size && !ranksAbove(keys[right], primary[right], secondary[right], lowest)) {
+                lowest = right;
+            }
+            if (lowest == slot) {
+                return;
+            }
+            swap(slot, lowest);
+            slot = lowest;
+        }
+    }
+
+    private void set(int slot, long key, long primaryScore, long secondaryScore) {
+        keys[slot] = key;
+        primary[slot] = primaryScore;
+        secondary[slot] = secondaryScore;
+    }
+
+    private void swap(int a, int b) {
+        long key = keys[a];
+        long primaryScore = primary[a];
+        long secondaryScore = secondary[a];
+        set(a, keys[b], primary[b], secondary[b]);
+        set(b, key, primaryScore, secondaryScore);
+    }
+
+    /**
+     * One selected entry
+     * @param key the entry key
+     * @param primary the main ranking score
+     * @param secondary the tie-breaking score
+     */
+    public record Entry(long key, long primary, long secondary) {
+    }
+}
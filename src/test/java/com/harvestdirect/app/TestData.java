@@ -0,0 +1,54 @@
+package com.harvestdirect.app;
+
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.ProductRepository;
+import com.harvestdirect.app.repository.UserRepository;
+import org.springframework.boot.test.context.TestComponent;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Creates users and products with unique names for tests running against a shared database
+ */
+@TestComponent
+public class TestData {
+
+    private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+
+    public TestData(UserRepository userRepository, ProductRepository productRepository) {
+        this.userRepository = userRepository;
+        this.productRepository = productRepository;
+    }
+
+    public User user(User.UserRole role) {
+        String name = "test-" + UUID.randomUUID().toString().substring(0, 8);
+        User user = new User();
+        user.setUsername(name);
+        user.setPassword("password");
+        user.setName(name);
+        user.setEmail(name + "@example.com");
+        user.setRole(role);
+        user.setAddress("1 Test Lane");
+        return userRepository.save(user);
+    }
+
+    public Product product(User seller, String category, int quantity) {
+        return product(seller, category, quantity, false);
+    }
+
+    public Product product(User seller, String category, int quantity, boolean flashSale) {
+        Product product = new Product();
+        product.setName("Test " + category + " " + UUID.randomUUID().toString().substring(0, 8));
+        product.setDescription("Test product");
+        product.setPrice(new BigDecimal("2.50"));
+        product.setQuantity(quantity);
+        product.setCategory(category);
+        product.setUnit("kg");
+        product.setFlashSale(flashSale);
+        product.setSeller(seller);
+        return productRepository.save(product);
+    }
+}
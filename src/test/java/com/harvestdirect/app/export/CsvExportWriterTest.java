@@ -0,0 +1,58 @@
+package com.harvestdirect.app.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvExportWriterTest {
+
+    @Test
+    void writesSummariesAndTables() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("Period", "2024-01-01 to 2024-01-31");
+
+        try (AnalyticsExportWriter writer = new CsvExportWriter(out)) {
+            writer.beginReport("Report", properties);
+            writer.beginSummary("Overview");
+            writer.field("Total Sales ($)", new BigDecimal("1E+3"));
+            writer.endSection();
+            writer.beginTable("Lines", "Product", "Quantity");
+            writer.row("Salmon, smoked", 3);
+            writer.row("The \"best\" carrots", null);
+            writer.endSection();
+        }
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("""
+                Report
+                Period: 2024-01-01 to 2024-01-31
+
+                Overview
+                -------------------------------------------------
+                Total Sales ($),1000
+
+                Lines
+                -------------------------------------------------
+                Product,Quantity
+                "Salmon, smoked",3
+                "The ""best"" carrots",
+
+                """);
+    }
+
+    @Test
+    void leavesTheStreamOpen() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CsvExportWriter(out).close();
+        out.write('x');
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("x");
+    }
+}
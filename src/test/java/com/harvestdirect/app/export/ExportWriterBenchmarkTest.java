@@ -0,0 +1,71 @@
+package com.harvestdirect.app.export;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the row throughput of each export writer on order lines written to a
+ * sink that discards them. Run with -Dbenchmark=true.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ExportWriterBenchmarkTest {
+
+    private static final int ROWS = 2_000_000;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 3;
+
+    @ParameterizedTest
+    @EnumSource(AnalyticsExportFormat.class)
+    void writeOrderLines(AnalyticsExportFormat format) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            export(format);
+        }
+        long bytes = 0;
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            bytes += export(format);
+        }
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        System.out.printf("%s: %,.0f rows/s, %.1f MB/s%n",
+                format, ROWS * MEASURED_ROUNDS / seconds, bytes / seconds / 1e6);
+
+        assertThat(bytes).isPositive();
+    }
+
+    private static long export(AnalyticsExportFormat format) throws IOException {
+        long[] bytes = new long[1];
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytes[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bytes[0] += len;
+            }
+        };
+        BigDecimal unitPrice = new BigDecimal("4.25");
+        try (AnalyticsExportWriter writer = format.newWriter(sink)) {
+            writer.beginReport("Benchmark", Map.of());
+            writer.beginTable("Order Lines", "Order ID", "Order Date", "Status", "Buyer",
+                    "Product ID", "Product Name", "Category", "Quantity", "Unit Price ($)", "Subtotal ($)");
+            for (int i = 0; i < ROWS; i++) {
+                int quantity = i % 20 + 1;
+                writer.row((long) i, "2024-03-01T10:15:00", "DELIVERED", "Buyer " + i % 100, (long) i % 500,
+                        "Product " + i % 500, "Seafood", quantity, unitPrice,
+                        unitPrice.multiply(BigDecimal.valueOf(quantity)));
+            }
+            writer.endSection();
+        }
+        return bytes[0];
+    }
+}
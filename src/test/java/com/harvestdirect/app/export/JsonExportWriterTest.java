@@ -0,0 +1,55 @@
+package com.harvestdirect.app.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonExportWriterTest {
+
+    @Test
+    void writesOneDocumentWithTypedValues() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnalyticsExportWriter writer = new JsonExportWriter(out)) {
+            writer.beginReport("Report", Map.of("Period", "January"));
+            writer.beginSummary("Overview");
+            writer.field("Total Sales ($)", new BigDecimal("12.50"));
+            writer.field("Total Orders", 3L);
+            writer.endSection();
+            writer.beginTable("Lines", "Product", "Quantity", "Note");
+            writer.row("Salmon \"wild\"", 2, null);
+            writer.endSection();
+        }
+
+        JsonNode report = new ObjectMapper().readTree(out.toByteArray());
+        assertThat(report.get("title").asText()).isEqualTo("Report");
+        assertThat(report.get("properties").get("Period").asText()).isEqualTo("January");
+
+        JsonNode overview = report.get("sections").get(0);
+        assertThat(overview.get("fields").get("Total Sales ($)").decimalValue()).isEqualByComparingTo("12.50");
+        assertThat(overview.get("fields").get("Total Orders").isNumber()).isTrue();
+
+        JsonNode lines = report.get("sections").get(1);
+        assertThat(lines.get("columns")).hasSize(3);
+        JsonNode row = lines.get("rows").get(0);
+        assertThat(row.get(0).asText()).isEqualTo("Salmon \"wild\"");
+        assertThat(row.get(1).asInt()).isEqualTo(2);
+        assertThat(row.get(2).isNull()).isTrue();
+    }
+
+    @Test
+    void reportWithoutSectionsIsValid() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnalyticsExportWriter writer = new JsonExportWriter(out)) {
+            writer.beginReport("Empty", Map.of());
+        }
+
+        assertThat(new ObjectMapper().readTree(out.toByteArray()).get("sections")).isEmpty();
+    }
+}
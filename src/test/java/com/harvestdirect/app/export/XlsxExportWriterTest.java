@@ -0,0 +1,104 @@
+package com.harvestdirect.app.export;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class XlsxExportWriterTest {
+
+    @Test
+    void writesAWorkbookWithOneSheetPerSection() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnalyticsExportWriter writer = new XlsxExportWriter(out)) {
+            writer.beginReport("Report", Map.of("Period", "January"));
+            writer.beginSummary("Overview");
+            writer.field("Total Sales ($)", new BigDecimal("12.50"));
+            writer.endSection();
+            writer.beginTable("Lines", "Product", "Quantity");
+            writer.row("Fish & <chips>", 2);
+            writer.endSection();
+        }
+
+        Map<String, Document> parts = unzip(out.toByteArray());
+        assertThat(parts).containsKeys("[Content_Types].xml", "_rels/.rels", "xl/workbook.xml",
+                "xl/_rels/workbook.xml.rels", "xl/worksheets/sheet1.xml", "xl/worksheets/sheet2.xml",
+                "xl/worksheets/sheet3.xml");
+        assertThat(sheetNames(parts.get("xl/workbook.xml"))).containsExactly("Report", "Overview", "Lines");
+
+        NodeList rows = parts.get("xl/worksheets/sheet3.xml").getElementsByTagName("row");
+        assertThat(rows.getLength()).isEqualTo(2);
+        Element row = (Element) rows.item(1);
+        assertThat(row.getElementsByTagName("t").item(0).getTextContent()).isEqualTo("Fish & <chips>");
+        assertThat(row.getElementsByTagName("v").item(0).getTextContent()).isEqualTo("2");
+    }
+
+    @Test
+    void makesSheetNamesValidAndUnique() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnalyticsExportWriter writer = new XlsxExportWriter(out)) {
+            writer.beginReport("Report", Map.of());
+            writer.beginTable("Sales: by [category] / region, with a very long title", "A");
+            writer.endSection();
+            writer.beginTable("report", "A");
+            writer.endSection();
+        }
+
+        assertThat(sheetNames(unzip(out.toByteArray()).get("xl/workbook.xml")))
+                .containsExactly("Report", "Sales by category region, with", "report (2)");
+    }
+
+    @Test
+    void continuesATableOnANewSheetPastTheRowLimit() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnalyticsExportWriter writer = new XlsxExportWriter(out)) {
+            writer.beginReport("Report", Map.of());
+            writer.beginTable("Lines", "Line");
+            for (int i = 0; i < 1_048_576; i++) {
+                writer.row(i);
+            }
+            writer.endSection();
+        }
+
+        Map<String, Document> parts = unzip(out.toByteArray());
+        assertThat(sheetNames(parts.get("xl/workbook.xml"))).containsExactly("Report", "Lines", "Lines (2)");
+        assertThat(parts.get("xl/worksheets/sheet2.xml").getElementsByTagName("row").getLength()).isEqualTo(1_048_576);
+        // The continuation sheet repeats the header above the last row
+        assertThat(parts.get("xl/worksheets/sheet3.xml").getElementsByTagName("row").getLength()).isEqualTo(2);
+    }
+
+    private static Map<String, Document> unzip(byte[] workbook) throws Exception {
+        Map<String, Document> parts = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(workbook))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                parts.put(entry.getName(), parse(zip.readAllBytes()));
+            }
+        }
+        return parts;
+    }
+
+    private static Document parse(byte[] xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+    }
+
+    private static List<String> sheetNames(Document workbook) {
+        NodeList sheets = workbook.getElementsByTagName("sheet");
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < sheets.getLength(); i++) {
+            names.add(((Element) sheets.item(i)).getAttribute("name"));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,112 @@
+package com.harvestdirect.app.search;
+
+import com.harvestdirect.app.TestData;
+import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.ProductRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares search latency of the in-memory index with the LIKE query it replaced,
+ * on a catalog of generated products. Needs a Postgres database and runs with
+ * -Dbenchmark=true; -Dbenchmark.products sets the catalog size (1M by default).
+ */
+@SpringBootTest
+@Import(TestData.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfEnvironmentVariable(named = "DATABASE_URL", matches = ".+")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProductSearchBenchmarkTest {
+
+    private static final String CATEGORY = "Benchmark";
+    private static final String[] WORDS = {"salmon", "trout", "carrot", "tomato", "apple", "pear", "oyster",
+            "mussel", "cabbage", "onion", "potato", "cod", "herring", "plum", "cherry", "leek"};
+    private static final String[] QUERIES = {"salmon", "smoked trout", "heritage tomatoes", "oystr"};
+    private static final int INSERT_BATCH_SIZE = 5_000;
+    private static final int ROUNDS = 20;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private TestData testData;
+
+    @BeforeAll
+    void seedCatalog() {
+        int products = Integer.getInteger("benchmark.products", 1_000_000);
+        User seller = testData.user(User.UserRole.FISHERMAN);
+        List<Object[]> rows = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 0; i < products; i++) {
+            String name = adjective(i) + " " + WORDS[i % WORDS.length];
+            String description = "Fresh " + WORDS[(i / WORDS.length) % WORDS.length] + " lot " + i;
+            rows.add(new Object[] {name, description, CATEGORY, seller.getId()});
+            if (rows.size() == INSERT_BATCH_SIZE || i == products - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO products (id, version, name, description, price, quantity, "
+                        + "category, unit, is_available, flash_sale, seller_id, created_at, updated_at) "
+                        + "VALUES (nextval('products_seq'), 0, ?, ?, 2.50, 10, ?, 'kg', true, false, ?, now(), now())",
+                        rows);
+                rows.clear();
+            }
+        }
+        searchIndex.rebuild();
+    }
+
+    @AfterAll
+    void removeCatalog() {
+        jdbcTemplate.update("DELETE FROM products WHERE category = ?", CATEGORY);
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void indexAgainstLikeQuery() {
+        for (String query : QUERIES) {
+            double likeMillis = measure(query, q -> productRepository.searchProducts(q));
+            double indexMillis = measure(query, q -> searchIndex.search(q, 100));
+            System.out.printf("\"%s\": LIKE %.1f ms, index %.2f ms%n", query, likeMillis, indexMillis);
+        }
+
+        assertThat(searchIndex.search("salmon", 100)).hasSize(100);
+    }
+
+    private static double measure(String query, Consumer<String> search) {
+        search.accept(query);
+        long[] samples = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long startedAt = System.nanoTime();
+            search.accept(query);
+            samples[i] = System.nanoTime() - startedAt;
+        }
+        Arrays.sort(samples);
+        return samples[ROUNDS / 2] / 1e6;
+    }
+
+    private static String adjective(int i) {
+        return switch (i % 4) {
+            case 0 -> "Smoked";
+            case 1 -> "Heritage";
+            case 2 -> "Organic";
+            default -> "Wild";
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package com.harvestdirect.app.search;
+
+import com.harvestdirect.app.event.ProductChangedEvent;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ProductSearchIndexTest {
+
+    private final List<Product> catalog = new ArrayList<>();
+    private ProductRepository productRepository;
+    private ProductSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        searchIndex = new ProductSearchIndex(productRepository);
+
+        catalog.add(product(1L, "Atlantic Salmon Fillets", "Seafood", "Fresh salmon from cold waters"));
+        catalog.add(product(2L, "Smoked Salmon", "Seafood", "Oak smoked"));
+        catalog.add(product(3L, "Carrots", "Vegetables", "Sweet carrots, good with salmon"));
+        catalog.add(product(4L, "Heritage Tomatoes", "Vegetables", "Mixed colours"));
+        catalog.add(product(5L, "Blueberries", "Fruits", "Wild berries"));
+    }
+
+    @Test
+    void rebuildsByKeysetAndRanksNameMatchesFirst() {
+        // Two products per page, so the rebuild has to follow the keyset across three pages
+        when(productRepository.findAllBy(any(ScrollPosition.class), any(Sort.class), any(Limit.class)))
+                .thenAnswer(invocation -> page(invocation.getArgument(0), invocation.<Limit>getArgument(2).max()));
+
+        searchIndex.rebuild();
+
+        assertThat(searchIndex.isReady()).isTrue();
+        verify(productRepository, never()).findAll(any(Pageable.class));
+        assertThat(searchIndex.search("salmon", 10)).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(searchIndex.search("salmon", 10).get(2)).isEqualTo(3L);
+        assertThat(searchIndex.search("salmon", 1)).hasSize(1);
+    }
+
+    @Test
+    void stemsPluralsAndFoldsCase() {
+        rebuild();
+
+        assertThat(searchIndex.search("TOMATO", 10)).containsExactly(4L);
+        assertThat(searchIndex.search("carrot", 10)).containsExactly(3L);
+    }
+
+    @Test
+    void matchesMisspelledTerms() {
+        rebuild();
+
+        assertThat(searchIndex.search("salmen", 10)).contains(1L, 2L);
+        assertThat(searchIndex.search("bluberries", 10)).containsExactly(5L);
+    }
+
+    @Test
+    void followsProductChanges() {
+        rebuild();
+
+        Product renamed = product(2L, "Smoked Trout", "Seafood", "Oak smoked");
+        searchIndex.onProductChanged(new ProductChangedEvent(2L, renamed));
+        searchIndex.onProductChanged(new ProductChangedEvent(1L, null));
+        searchIndex.onProductChanged(new ProductChangedEvent(6L, product(6L, "Salmon Roe", "Seafood", "Cured")));
+
+        assertThat(searchIndex.search("salmon", 10)).containsExactly(6L, 3L);
+        assertThat(searchIndex.search("trout", 10)).containsExactly(2L);
+    }
+
+    @Test
+    void keepsPostingsConsistentAcrossManyUpdates() {
+        rebuild();
+
+        // Re-indexing products out of id order exercises inserts into the middle of posting lists
+        for (long id = 100; id > 0; id--) {
+            searchIndex.onProductChanged(new ProductChangedEvent(id + 10,
+                    product(id + 10, "Salmon " + id, "Seafood", "Batch")));
+        }
+        for (long id = 1; id <= 100; id += 2) {
+            searchIndex.onProductChanged(new ProductChangedEvent(id + 10, null));
+        }
+
+        List<Long> results = searchIndex.search("batch", 200);
+        assertThat(results).hasSize(50).allMatch(id -> id % 2 == 0);
+    }
+
+    @Test
+    void blankOrStopWordQueriesFindNothing() {
+        rebuild();
+
+        assertThat(searchIndex.search("  ", 10)).isEmpty();
+        assertThat(searchIndex.search("salmon", 0)).isEmpty();
+    }
+
+    private void rebuild() {
+        when(productRepository.findAllBy(any(ScrollPosition.class), any(Sort.class), any(Limit.class)))
+                .thenReturn(Window.from(catalog, index -> keysetAfter(catalog.get(index)), false));
+        searchIndex.rebuild();
+    }
+
+    private Window<Product> page(ScrollPosition position, int size) {
+        long after = position instanceof KeysetScrollPosition keyset && !keyset.isInitial()
+                ? (Long) keyset.getKeys().get("id") : Long.MIN_VALUE;
+        List<Product> remaining = catalog.stream().filter(product -> product.getId() > after).toList();
+        List<Product> content = remaining.subList(0, Math.min(size, remaining.size()));
+        return Window.from(content, index -> keysetAfter(content.get(index)), remaining.size() > size);
+    }
+
+    private static ScrollPosition keysetAfter(Product product) {
+        return ScrollPosition.of(Map.of("id", product.getId()), ScrollPosition.Direction.FORWARD);
+    }
+
+    private static Product product(Long id, String name, String category, String description) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setCategory(category);
+        product.setDescription(description);
+        return product;
+    }
+}
@@ -0,0 +1,92 @@
+package com.harvestdirect.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SuggestionTrieTest {
+
+    @Test
+    void completesPrefixesHeaviestFirst() {
+        SuggestionTrie trie = new SuggestionTrie();
+        trie.put("salmon", "Salmon", 5);
+        trie.put("salmon roe", "Salmon Roe", 9);
+        trie.put("salad", "Salad", 7);
+        trie.put("sardine", "Sardine", 1);
+        trie.put("carrot", "Carrot", 100);
+
+        assertThat(trie.complete("sal", 10)).containsExactly("Salmon Roe", "Salad", "Salmon");
+        assertThat(trie.complete("s", 2)).containsExactly("Salmon Roe", "Salad");
+        assertThat(trie.complete("salmon", 10)).containsExactly("Salmon Roe", "Salmon");
+        assertThat(trie.complete("salmonx", 10)).isEmpty();
+        assertThat(trie.complete("", 1)).containsExactly("Carrot");
+    }
+
+    @Test
+    void completesAPrefixEndingInsideAnEdge() {
+        SuggestionTrie trie = new SuggestionTrie();
+        trie.put("blueberries", "Blueberries", 1);
+
+        assertThat(trie.complete("bluebe", 5)).containsExactly("Blueberries");
+        assertThat(trie.complete("bluex", 5)).isEmpty();
+    }
+
+    @Test
+    void replacesAndRemovesSuggestions() {
+        SuggestionTrie trie = new SuggestionTrie();
+        trie.put("cod", "Cod", 1);
+        trie.put("cockles", "Cockles", 2);
+        trie.put("cod", "Atlantic Cod", 3);
+
+        assertThat(trie.size()).isEqualTo(2);
+        assertThat(trie.complete("co", 5)).containsExactly("Atlantic Cod", "Cockles");
+
+        trie.remove("cod");
+        trie.remove("crab");
+        assertThat(trie.size()).isEqualTo(1);
+        assertThat(trie.complete("co", 5)).containsExactly("Cockles");
+
+        trie.remove("cockles");
+        assertThat(trie.complete("", 5)).isEmpty();
+    }
+
+    @Test
+    void matchesABruteForceScanOnRandomKeys() {
+        Random random = new Random(11);
+        SuggestionTrie trie = new SuggestionTrie();
+        Map<String, Long> weights = new HashMap<>();
+        for (int i = 0; i < 3_000; i++) {
+            String key = randomKey(random);
+            if (random.nextInt(5) == 0) {
+                trie.remove(key);
+                weights.remove(key);
+            } else {
+                // Distinct weights keep the expected order unambiguous
+                long weight = i;
+                trie.put(key, key, weight);
+                weights.put(key, weight);
+            }
+        }
+
+        assertThat(trie.size()).isEqualTo(weights.size());
+        for (String prefix : List.of("", "a", "ab", "ba", "cab", "abc")) {
+            List<String> expected = weights.entrySet().stream()
+                    .filter(entry -> entry.getKey().startsWith(prefix))
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(10)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            assertThat(trie.complete(prefix, 10)).as("prefix '%s'", prefix).containsExactlyElementsOf(expected);
+        }
+    }
+
+    private static String randomKey(Random random) {
+        char[] key = new char[1 + random.nextInt(6)];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (char) ('a' + random.nextInt(3));
+        }
+        return new String(key);
+    }
+}
@@ -0,0 +1,55 @@
+package com.harvestdirect.app.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class TrigramVocabularyTest {
+
+    @Test
+    void padsWordsIntoTrigrams() {
+        assertThat(TrigramVocabulary.trigrams("salmon"))
+                .containsExactly("  s", " sa", "sal", "alm", "lmo", "mon", "on ");
+    }
+
+    @Test
+    void findsTheClosestWordsFirst() {
+        TrigramVocabulary vocabulary = new TrigramVocabulary();
+        vocabulary.add("salmon");
+        vocabulary.add("salami");
+        vocabulary.add("carrot");
+
+        assertThat(vocabulary.similar("salmen", 0.2, 5))
+                .extracting(TrigramVocabulary.Match::word)
+                .containsExactly("salmon", "salami");
+        assertThat(vocabulary.similar("salmon", 0.2, 1)).singleElement()
+                .satisfies(match -> assertThat(match.similarity()).isCloseTo(1.0, within(1e-9)));
+    }
+
+    @Test
+    void appliesTheThreshold() {
+        TrigramVocabulary vocabulary = new TrigramVocabulary();
+        vocabulary.add("carrot");
+
+        assertThat(vocabulary.similar("carots", 0.3, 5)).extracting(TrigramVocabulary.Match::word)
+                .containsExactly("carrot");
+        assertThat(vocabulary.similar("parsnip", 0.3, 5)).isEmpty();
+    }
+
+    @Test
+    void keepsAWordUntilEveryOccurrenceIsRemoved() {
+        TrigramVocabulary vocabulary = new TrigramVocabulary();
+        vocabulary.add("trout");
+        vocabulary.add("trout");
+
+        vocabulary.remove("trout");
+        assertThat(vocabulary.size()).isEqualTo(1);
+        assertThat(vocabulary.similar("trot", 0.2, 5)).isNotEmpty();
+
+        vocabulary.remove("trout");
+        vocabulary.remove("trout");
+        assertThat(vocabulary.size()).isZero();
+        assertThat(vocabulary.similar("trot", 0.0, 5)).isEmpty();
+    }
+}
@@ -0,0 +1,110 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.event.OrderDataChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AnalyticsCacheTest {
+
+    private static final String OTHER_NODE = "other-node";
+
+    private JdbcTemplate jdbcTemplate;
+    private AnalyticsCache analyticsCache;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        analyticsCache = newNode();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void transactionSendsOneNotificationForAllChangedUsers() {
+        TransactionSynchronizationManager.initSynchronization();
+        analyticsCache.notifyOrderDataChanged(new OrderDataChangedEvent(1L, 2L, new Date()));
+        analyticsCache.notifyOrderDataChanged(new OrderDataChangedEvent(1L, 3L, new Date()));
+        verifyNoInteractions(jdbcTemplate);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.beforeCommit(false));
+
+        verify(jdbcTemplate).queryForList(eq("SELECT pg_notify(?, ?)"), eq("analytics_cache"), endsWith(" 1,2,3"));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void remoteWriteMakesCachedResultsUnreachable() {
+        AtomicInteger loads = new AtomicInteger();
+        analyticsCache.get(1L, null, null, "metric", loads::incrementAndGet);
+        analyticsCache.get(2L, null, null, "metric", loads::incrementAndGet);
+        long before = analyticsCache.currentVersion(1L);
+
+        analyticsCache.onNotification(OTHER_NODE + " 1,5");
+
+        assertThat(analyticsCache.currentVersion(1L)).isNotEqualTo(before);
+        analyticsCache.get(1L, null, null, "metric", loads::incrementAndGet);
+        analyticsCache.get(2L, null, null, "metric", loads::incrementAndGet);
+        assertThat(loads).hasValue(3);
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void remoteResetChangesEveryVersion() {
+        analyticsCache.onOrderDataChanged(new OrderDataChangedEvent(1L, 2L, new Date()));
+        long changed = analyticsCache.currentVersion(1L);
+        long unchanged = analyticsCache.currentVersion(3L);
+
+        analyticsCache.onNotification(OTHER_NODE + " *");
+
+        assertThat(analyticsCache.currentVersion(1L)).isNotEqualTo(changed);
+        assertThat(analyticsCache.currentVersion(3L)).isNotEqualTo(unchanged);
+    }
+
+    @Test
+    void invalidateAllIsSentToTheOtherNodes() {
+        analyticsCache.invalidateAll();
+
+        verify(jdbcTemplate).queryForList(eq("SELECT pg_notify(?, ?)"), eq("analytics_cache"), endsWith(" *"));
+    }
+
+    @Test
+    void ownNotificationsAndBadPayloadsAreSkipped() {
+        analyticsCache.onOrderDataChanged(new OrderDataChangedEvent(1L, 2L, new Date()));
+        long version = analyticsCache.currentVersion(1L);
+
+        analyticsCache.onNotification("no-separator");
+        assertThat(analyticsCache.currentVersion(1L)).isEqualTo(version);
+
+        analyticsCache.onNotification(OTHER_NODE + " 1,not-a-number");
+        assertThat(analyticsCache.currentVersion(1L)).isNotEqualTo(version);
+    }
+
+    @Test
+    void versionsAreNotSharedBetweenNodesOrRestarts() {
+        // Counters would both start at zero, and a client's entity tag from one would match the other
+        AnalyticsCache otherNode = newNode();
+
+        assertThat(otherNode.currentVersion(1L)).isNotEqualTo(analyticsCache.currentVersion(1L));
+    }
+
+    private AnalyticsCache newNode() {
+        return new AnalyticsCache(new SimpleMeterRegistry(), jdbcTemplate, 100, 60, true,
+                "jdbc:postgresql://localhost/test", "", "");
+    }
+}
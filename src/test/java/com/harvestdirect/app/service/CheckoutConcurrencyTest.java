@@ -0,0 +1,105 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.TestData;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Has 64 buyers check out one product over and over until it sells out, and
+ * checks that exactly the stock was sold, never more, and that the quantity
+ * never went negative. Prints the checkout rate. Needs a Postgres database.
+ */
+@SpringBootTest
+@Import(TestData.class)
+@EnabledIfEnvironmentVariable(named = "DATABASE_URL", matches = ".+")
+class CheckoutConcurrencyTest {
+
+    private static final int BUYERS = 64;
+    private static final int STOCK = 500;
+    private static final int ATTEMPTS_PER_BUYER = 20;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void concurrentCheckoutsNeverOversell() throws Exception {
+        User seller = testData.user(User.UserRole.FISHERMAN);
+        Product product = testData.product(seller, "Seafood", STOCK);
+        List<User> buyers = new ArrayList<>();
+        for (int i = 0; i < BUYERS; i++) {
+            buyers.add(testData.user(User.UserRole.WHOLESALER));
+        }
+
+        AtomicInteger checkouts = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(BUYERS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (User buyer : buyers) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int attempt = 0; attempt < ATTEMPTS_PER_BUYER; attempt++) {
+                        try {
+                            cartService.addToCart(buyer, product.getId(), 1);
+                        } catch (RuntimeException soldOut) {
+                            return null;
+                        }
+                        try {
+                            orderService.createOrdersFromCart(buyer, "1 Test Lane");
+                            checkouts.incrementAndGet();
+                        } catch (RuntimeException notEnoughStock) {
+                            rejected.incrementAndGet();
+                            jdbcTemplate.update("DELETE FROM cart_items WHERE user_id = ?", buyer.getId());
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            long startedAt = System.nanoTime();
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(2, TimeUnit.MINUTES);
+            }
+            double seconds = (System.nanoTime() - startedAt) / 1e9;
+            System.out.printf("%d buyers: %d checkouts, %d rejected, %.0f checkouts/s%n",
+                    BUYERS, checkouts.get(), rejected.get(), checkouts.get() / seconds);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, Object> stock = jdbcTemplate.queryForMap(
+                "SELECT quantity, is_available FROM products WHERE id = ?", product.getId());
+        Long sold = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(quantity), 0) FROM order_items WHERE product_id = ?", Long.class, product.getId());
+
+        assertThat(checkouts).hasValue(STOCK);
+        assertThat(sold).isEqualTo(STOCK);
+        assertThat(stock.get("quantity")).isEqualTo(0);
+        assertThat(stock.get("is_available")).isEqualTo(false);
+    }
+}
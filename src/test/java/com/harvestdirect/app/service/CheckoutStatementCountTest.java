@@ -0,0 +1,72 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.StatementRecorder;
+import com.harvestdirect.app.TestData;
+import com.harvestdirect.app.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that a checkout sends a fixed number of statements however many lines,
+ * sellers and categories the cart has. Needs a Postgres database.
+ */
+@SpringBootTest
+@Import({StatementRecorder.class, TestData.class})
+@EnabledIfEnvironmentVariable(named = "DATABASE_URL", matches = ".+")
+class CheckoutStatementCountTest {
+
+    private static final String[] CATEGORIES = {"Vegetables", "Fruits", "Seafood", "Dairy"};
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private StatementRecorder statementRecorder;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void checkoutWritesEachRollupAndNotificationOnce() {
+        List<String> statements = checkout(3, 4);
+
+        assertThat(statements).filteredOn(sql -> sql.contains("seller_daily_sales")).hasSize(1);
+        assertThat(statements).filteredOn(sql -> sql.contains("buyer_daily_purchases")).hasSize(1);
+        assertThat(statements).filteredOn(sql -> sql.contains("pg_notify")).hasSize(1);
+    }
+
+    @Test
+    void checkoutStatementsDoNotGrowWithTheCart() {
+        List<String> small = checkout(1, 1);
+        List<String> large = checkout(4, 5);
+
+        assertThat(withoutSequenceCalls(large)).hasSameSizeAs(withoutSequenceCalls(small));
+    }
+
+    private List<String> checkout(int sellers, int productsPerSeller) {
+        User buyer = testData.user(User.UserRole.WHOLESALER);
+        for (int s = 0; s < sellers; s++) {
+            User seller = testData.user(User.UserRole.FARMER);
+            for (int p = 0; p < productsPerSeller; p++) {
+                Long productId = testData.product(seller, CATEGORIES[p % CATEGORIES.length], 100).getId();
+                cartService.addToCart(buyer, productId, 2);
+            }
+        }
+        return statementRecorder.record(() -> orderService.createOrdersFromCart(buyer, "1 Test Lane"));
+    }
+
+    // Pooled sequences fetch a new block of ids now and then, whatever the cart size
+    private static List<String> withoutSequenceCalls(List<String> statements) {
+        return statements.stream().filter(sql -> !sql.contains("nextval")).toList();
+    }
+}
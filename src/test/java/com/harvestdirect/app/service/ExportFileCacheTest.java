@@ -0,0 +1,48 @@
+package com.harvestdirect.app.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ExportFileCacheTest {
+
+    private static final String KEY = "0123456789abcdef".repeat(4);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void startupDeletesOnlyTheCachesOwnFiles() throws IOException {
+        Path csv = Files.writeString(directory.resolve(KEY + ".csv"), "a");
+        Path gzip = Files.writeString(directory.resolve(KEY + ".csv.gz"), "a");
+        Path partial = Files.writeString(directory.resolve(KEY + ".xlsx.part"), "a");
+        Path foreign = Files.writeString(directory.resolve("notes.csv"), "a");
+        Path nested = Files.createDirectories(directory.resolve("reports"));
+        Path nestedExport = Files.writeString(nested.resolve(KEY + ".json"), "a");
+
+        new ExportFileCache(mock(AnalyticsExportService.class), mock(AnalyticsCache.class),
+                mock(AdminMetricsService.class), directory.toString(), 1024);
+
+        assertThat(csv).doesNotExist();
+        assertThat(gzip).doesNotExist();
+        assertThat(partial).doesNotExist();
+        assertThat(foreign).exists();
+        assertThat(nestedExport).exists();
+    }
+
+    @Test
+    void missingDirectoryIsCreated() throws IOException {
+        Path missing = directory.resolve("exports");
+
+        new ExportFileCache(mock(AnalyticsExportService.class), mock(AnalyticsCache.class),
+                mock(AdminMetricsService.class), missing.toString(), 1024);
+
+        assertThat(missing).isDirectory();
+    }
+}
@@ -0,0 +1,110 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.TestData;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.model.User;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sends 1000 buyers at once to check out a product with 100 units, once through
+ * the flash-sale sequencer and once through the plain conditional update, and
+ * reports throughput and latency of each. Needs a Postgres database and runs
+ * with -Dbenchmark=true.
+ */
+@SpringBootTest
+@Import(TestData.class)
+@EnabledIfEnvironmentVariable(named = "DATABASE_URL", matches = ".+")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class FlashSaleCheckoutBenchmarkTest {
+
+    private static final int BUYERS = 1000;
+    private static final int STOCK = 100;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestData testData;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void thousandBuyersOneProduct(boolean flashSale) throws Exception {
+        User seller = testData.user(User.UserRole.FISHERMAN);
+        Product product = testData.product(seller, "Seafood", STOCK, flashSale);
+        List<User> buyers = new ArrayList<>();
+        for (int i = 0; i < BUYERS; i++) {
+            User buyer = testData.user(User.UserRole.WHOLESALER);
+            cartService.addToCart(buyer, product.getId(), 1);
+            buyers.add(buyer);
+        }
+
+        AtomicInteger checkouts = new AtomicInteger();
+        long[] latencies = new long[BUYERS];
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(BUYERS);
+        double seconds;
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < BUYERS; i++) {
+                int buyer = i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    long startedAt = System.nanoTime();
+                    try {
+                        orderService.createOrdersFromCart(buyers.get(buyer), "1 Test Lane");
+                        checkouts.incrementAndGet();
+                    } catch (RuntimeException rejected) {
+                        // Sold out or too busy: the buyer got an answer, which is what is measured
+                    }
+                    latencies[buyer] = System.nanoTime() - startedAt;
+                    return null;
+                }));
+            }
+
+            long startedAt = System.nanoTime();
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(2, TimeUnit.MINUTES);
+            }
+            seconds = (System.nanoTime() - startedAt) / 1e9;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%s: %d of %d buyers served in %.2f s (%.0f answers/s), p50 %.1f ms, p99 %.1f ms%n",
+                flashSale ? "flash sale" : "plain checkout", checkouts.get(), BUYERS, seconds, BUYERS / seconds,
+                latencies[BUYERS / 2] / 1e6, latencies[BUYERS * 99 / 100] / 1e6);
+
+        Integer quantity = jdbcTemplate.queryForObject(
+                "SELECT quantity FROM products WHERE id = ?", Integer.class, product.getId());
+        Long sold = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(quantity), 0) FROM order_items WHERE product_id = ?", Long.class, product.getId());
+        assertThat(sold).isEqualTo((long) checkouts.get()).isLessThanOrEqualTo(STOCK);
+        assertThat(quantity).isEqualTo(STOCK - checkouts.get()).isNotNegative();
+        // Every grant was either consumed by its checkout or released
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stock_reservations WHERE product_id = ?",
+                Long.class, product.getId())).isZero();
+    }
+}
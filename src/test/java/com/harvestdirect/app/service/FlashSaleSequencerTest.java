@@ -0,0 +1,299 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.model.StockReservation;
+import com.harvestdirect.app.repository.ProductRepository;
+import com.harvestdirect.app.repository.StockReservationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the sequencer against in-memory stand-ins for the product row and the
+ * reservation table, whose statements behave like the real ones, and checks
+ * admission under contention: nothing is oversold, stock never goes negative,
+ * grants follow arrival order and waiting buyers are persisted together. Also
+ * checks that stock held by a checkout that never finished comes back exactly once.
+ */
+class FlashSaleSequencerTest {
+
+    private static final long PRODUCT_ID = 42L;
+    private static final Duration WAIT = Duration.ofSeconds(10);
+
+    private final AtomicInteger stock = new AtomicInteger();
+    private final AtomicInteger stockUpdates = new AtomicInteger();
+    private final Map<Long, StockReservation> reservationRows = new ConcurrentHashMap<>();
+    private final AtomicLong reservationIds = new AtomicLong();
+    private final CountDownLatch updateHeld = new CountDownLatch(1);
+    private volatile CountDownLatch nextUpdate;
+    private SimpleMeterRegistry meterRegistry;
+    private FlashSaleSequencer sequencer;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.takeStock(eq(PRODUCT_ID), anyInt()))
+                .thenAnswer(invocation -> takeStock(invocation.getArgument(1)));
+        when(productRepository.restoreStock(eq(PRODUCT_ID), anyInt()))
+                .thenAnswer(invocation -> restoreStock(invocation.getArgument(1)));
+
+        StockReservationRepository reservationRepository = mock(StockReservationRepository.class);
+        when(reservationRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<StockReservation> rows = invocation.getArgument(0);
+            rows.forEach(row -> {
+                row.setId(reservationIds.incrementAndGet());
+                reservationRows.put(row.getId(), row);
+            });
+            return rows;
+        });
+        when(reservationRepository.deleteReturningQuantity(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(reservationRows::remove).filter(Objects::nonNull)
+                    .map(StockReservation::getQuantity).toList();
+        });
+        when(reservationRepository.deleteExpired(any())).thenAnswer(invocation -> {
+            Date now = invocation.getArgument(0);
+            List<StockReservation> expired = reservationRows.values().stream()
+                    .filter(row -> row.getExpiresAt().before(now)).toList();
+            expired.forEach(row -> reservationRows.remove(row.getId()));
+            return expired;
+        });
+
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForList(anyString(), eq(Integer.class), eq(PRODUCT_ID)))
+                .thenAnswer(invocation -> List.of(stock.get()));
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+
+        meterRegistry = new SimpleMeterRegistry();
+        sequencer = new FlashSaleSequencer(productRepository, reservationRepository, jdbcTemplate, transactionManager,
+                mock(ApplicationEventPublisher.class), meterRegistry, true, 2, 4096, 256, WAIT.toMillis() * 3, 60_000);
+
+        product = new Product();
+        product.setId(PRODUCT_ID);
+        product.setName("Wild salmon");
+        product.setFlashSale(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sequencer.shutdown();
+    }
+
+    @Test
+    void thousandConcurrentBuyersNeverOversell() throws Exception {
+        stock.set(101);
+        // The first buyer's update is held back so that everyone else queues behind it
+        CountDownLatch firstUpdate = holdNextUpdate();
+        CompletableFuture<FlashSaleSequencer.Grant> first = buyInOrder(1);
+        updateHeld.await();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<CompletableFuture<FlashSaleSequencer.Grant>> outcomes = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            CompletableFuture<FlashSaleSequencer.Grant> outcome = new CompletableFuture<>();
+            threads.add(startBuyer(1, outcome, start));
+            outcomes.add(outcome);
+        }
+        start.countDown();
+        await().atMost(WAIT).until(() -> threads.stream().allMatch(FlashSaleSequencerTest::isWaiting));
+        firstUpdate.countDown();
+
+        assertThat(first.get().remaining()).isEqualTo(100);
+        CompletableFuture.allOf(outcomes.stream().map(outcome -> outcome.exceptionally(e -> null))
+                .toArray(CompletableFuture[]::new)).get();
+        long granted = outcomes.stream().filter(outcome -> !outcome.isCompletedExceptionally()).count();
+
+        assertThat(granted).isEqualTo(100);
+        assertThat(stock).hasValue(0);
+        assertThat(reservationRows).hasSize(101);
+        assertThat(reservations("granted")).isEqualTo(101);
+        assertThat(reservations("rejected")).isEqualTo(900);
+        // One update for the first buyer, one for the whole queue behind it
+        assertThat(stockUpdates).hasValue(2);
+    }
+
+    @Test
+    void grantsFollowArrivalOrder() throws Exception {
+        stock.set(6);
+        CountDownLatch firstUpdate = holdNextUpdate();
+        CompletableFuture<FlashSaleSequencer.Grant> first = buyInOrder(1);
+        updateHeld.await();
+        List<CompletableFuture<FlashSaleSequencer.Grant>> queued = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            queued.add(buyInOrder(1));
+        }
+        firstUpdate.countDown();
+
+        assertThat(first.get().remaining()).isEqualTo(5);
+        for (int i = 0; i < queued.size(); i++) {
+            CompletableFuture<Integer> outcome = queued.get(i).thenApply(FlashSaleSequencer.Grant::remaining)
+                    .exceptionally(e -> -1);
+            assertThat(outcome.get()).as("buyer %d", i).isEqualTo(i < 5 ? 0 : -1);
+        }
+        assertThat(stock).hasValue(0);
+    }
+
+    @Test
+    void smallerLaterRequestIsGrantedWhenLargerOneDoesNotFit() {
+        stock.set(10);
+
+        assertThat(sequencer.reserve(product, 8).remaining()).isEqualTo(2);
+        assertThatThrownBy(() -> sequencer.reserve(product, 5)).hasMessageContaining("Not enough quantity");
+        assertThat(sequencer.reserve(product, 2).remaining()).isEqualTo(0);
+        assertThatThrownBy(() -> sequencer.reserve(product, 1)).hasMessageContaining("Not enough quantity");
+        assertThat(stock).hasValue(0);
+    }
+
+    @Test
+    void releasedStockCanBeBoughtAgain() {
+        stock.set(10);
+        FlashSaleSequencer.Grant grant = sequencer.reserve(product, 4);
+        sequencer.reserve(product, 6);
+        assertThatThrownBy(() -> sequencer.reserve(product, 1)).hasMessageContaining("Not enough quantity");
+
+        sequencer.release(grant);
+
+        await().atMost(WAIT).until(() -> stock.get() == 4);
+        assertThat(reservationRows).doesNotContainKey(grant.reservationId());
+        await().atMost(WAIT).ignoreExceptions().until(() -> sequencer.reserve(product, 4).remaining() == 0);
+        assertThat(stock).hasValue(0);
+    }
+
+    @Test
+    void consumedGrantIsNeitherReturnedNorSwept() {
+        stock.set(10);
+        FlashSaleSequencer.Grant grant = sequencer.reserve(product, 3);
+
+        sequencer.consume(List.of(grant));
+        expireAllReservations();
+        sequencer.returnExpiredReservations();
+
+        assertThat(reservationRows).isEmpty();
+        assertThat(stock).hasValue(7);
+    }
+
+    @Test
+    void stockOfCheckoutThatNeverFinishedComesBackOnceItExpires() {
+        stock.set(10);
+        FlashSaleSequencer.Grant abandoned = sequencer.reserve(product, 3);
+        FlashSaleSequencer.Grant pending = sequencer.reserve(product, 2);
+        sequencer.returnExpiredReservations();
+        assertThat(stock).hasValue(5);
+
+        // The process died after admission: nothing consumes or releases the first grant
+        reservationRows.get(abandoned.reservationId()).setExpiresAt(new Date(0));
+        sequencer.returnExpiredReservations();
+
+        assertThat(stock).hasValue(8);
+        assertThat(reservationRows).containsOnlyKeys(pending.reservationId());
+        // A checkout that comes back too late fails, and its release returns nothing more
+        assertThatThrownBy(() -> sequencer.consume(List.of(abandoned))).hasMessageContaining("expired");
+        sequencer.release(abandoned);
+        sequencer.release(pending);
+        await().atMost(WAIT).until(reservationRows::isEmpty);
+        await().atMost(WAIT).until(() -> stock.get() == 10);
+    }
+
+    @Test
+    void stockTakenElsewhereIsReloadedRatherThanOversold() {
+        stock.set(10);
+        assertThat(sequencer.reserve(product, 1).remaining()).isEqualTo(9);
+
+        // Another path sells most of the stock without the sequencer hearing about it
+        stock.set(3);
+
+        assertThatThrownBy(() -> sequencer.reserve(product, 5)).hasMessageContaining("Not enough quantity");
+        assertThat(sequencer.reserve(product, 3).remaining()).isEqualTo(0);
+        assertThat(stock).hasValue(0);
+    }
+
+    private void expireAllReservations() {
+        reservationRows.values().forEach(row -> row.setExpiresAt(new Date(0)));
+    }
+
+    private CountDownLatch holdNextUpdate() {
+        CountDownLatch gate = new CountDownLatch(1);
+        nextUpdate = gate;
+        return gate;
+    }
+
+    private Optional<Integer> takeStock(int amount) throws InterruptedException {
+        CountDownLatch gate = nextUpdate;
+        if (gate != null) {
+            nextUpdate = null;
+            updateHeld.countDown();
+            gate.await();
+        }
+        stockUpdates.incrementAndGet();
+        int current;
+        do {
+            current = stock.get();
+            if (current < amount) {
+                return Optional.empty();
+            }
+        } while (!stock.compareAndSet(current, current - amount));
+        return Optional.of(current - amount);
+    }
+
+    private Optional<Integer> restoreStock(int amount) {
+        return Optional.of(stock.addAndGet(amount));
+    }
+
+    /**
+     * Start a buyer and wait until it is queued, so that buyers started one after
+     * the other arrive in that order
+     */
+    private CompletableFuture<FlashSaleSequencer.Grant> buyInOrder(int quantity) {
+        CompletableFuture<FlashSaleSequencer.Grant> outcome = new CompletableFuture<>();
+        Thread thread = startBuyer(quantity, outcome, new CountDownLatch(0));
+        await().atMost(WAIT).pollInterval(Duration.ofMillis(1))
+                .until(() -> isWaiting(thread) || outcome.isDone());
+        return outcome;
+    }
+
+    private Thread startBuyer(int quantity, CompletableFuture<FlashSaleSequencer.Grant> outcome, CountDownLatch start) {
+        Thread thread = new Thread(() -> {
+            try {
+                start.await();
+                outcome.complete(sequencer.reserve(product, quantity));
+            } catch (InterruptedException | RuntimeException e) {
+                outcome.completeExceptionally(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    // A buyer waits with a timeout only once its reservation is queued
+    private static boolean isWaiting(Thread thread) {
+        return thread.getState() == Thread.State.TIMED_WAITING;
+    }
+
+    private double reservations(String outcome) {
+        return meterRegistry.counter("flash-sale.reservations", "outcome", outcome).count();
+    }
+}
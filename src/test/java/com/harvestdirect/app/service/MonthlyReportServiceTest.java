@@ -0,0 +1,74 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.event.OrderDataChangedEvent;
+import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MonthlyReportServiceTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2024, 3);
+
+    @TempDir
+    Path directory;
+
+    private AnalyticsExportService analyticsExportService;
+    private MonthlyReportService monthlyReportService;
+    private User seller;
+
+    @BeforeEach
+    void setUp() {
+        analyticsExportService = mock(AnalyticsExportService.class);
+        UserRepository userRepository = mock(UserRepository.class);
+        monthlyReportService = new MonthlyReportService(analyticsExportService, userRepository,
+                directory.toString(), 1, 200);
+
+        seller = new User();
+        seller.setId(7L);
+        seller.setRole(User.UserRole.FARMER);
+        when(userRepository.findMaxId()).thenReturn(7L);
+        when(userRepository.findByRoleInAndIdBetweenOrderById(anyCollection(), anyLong(), anyLong()))
+                .thenReturn(List.of(seller));
+    }
+
+    @Test
+    void changedOrderDeletesTheReportOfItsMonth() {
+        monthlyReportService.generate(MONTH);
+        monthlyReportService.generate(MONTH.minusMonths(1));
+        assertThat(monthlyReportService.findReport(seller, MONTH)).isPresent();
+
+        monthlyReportService.onOrderDataChanged(new OrderDataChangedEvent(seller.getId(), 99L, dayOf(MONTH)));
+
+        assertThat(monthlyReportService.findReport(seller, MONTH)).isEmpty();
+        assertThat(monthlyReportService.findReport(seller, MONTH.minusMonths(1))).isPresent();
+    }
+
+    @Test
+    void reportWrittenWhileTheOrdersChangeIsNotKept() throws Exception {
+        doAnswer(invocation -> {
+            monthlyReportService.onOrderDataChanged(new OrderDataChangedEvent(seller.getId(), 99L, dayOf(MONTH)));
+            return null;
+        }).when(analyticsExportService).exportSellerAnalytics(eq(seller), any(), any(), any(), any());
+
+        MonthlyReportService.MonthlyReportRun run = monthlyReportService.generate(MONTH);
+
+        assertThat(run.reports()).isEqualTo(1);
+        assertThat(monthlyReportService.findReport(seller, MONTH)).isEmpty();
+    }
+
+    private static Date dayOf(YearMonth month) {
+        return Date.from(month.atDay(15).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,142 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.StatementRecorder;
+import com.harvestdirect.app.TestData;
+import com.harvestdirect.app.model.Order;
+import com.harvestdirect.app.model.OrderItem;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.OrderItemRepository;
+import com.harvestdirect.app.repository.OrderRepository;
+import com.harvestdirect.app.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares inserting order lines one statement per row with a returned id, as the
+ * identity columns forced, against saving them through the repository with pooled
+ * sequence ids and JDBC batching. Needs a Postgres database and runs with
+ * -Dbenchmark=true.
+ */
+@SpringBootTest
+@Import({StatementRecorder.class, TestData.class})
+@EnabledIfEnvironmentVariable(named = "DATABASE_URL", matches = ".+")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class OrderItemInsertBenchmarkTest {
+
+    private static final int ROUNDS = 5;
+    private static final int BATCH_SIZE = 50;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StatementRecorder statementRecorder;
+
+    @Autowired
+    private TestData testData;
+
+    private Long orderId;
+    private Long productId;
+
+    @BeforeEach
+    void createOrder() {
+        User seller = testData.user(User.UserRole.FARMER);
+        User buyer = testData.user(User.UserRole.WHOLESALER);
+        Product product = testData.product(seller, "Vegetables", 1_000_000);
+
+        Order order = new Order();
+        order.setBuyer(buyer);
+        order.setSeller(seller);
+        order.setTotalAmount(new BigDecimal("2.50"));
+        order.setDeliveryAddress("1 Test Lane");
+        order.setPaymentStatus(Order.PaymentStatus.PENDING);
+        order.setStatus(Order.OrderStatus.PENDING);
+        orderId = orderRepository.save(order).getId();
+        productId = product.getId();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {100, 1_000, 10_000})
+    void insertOrderLines(int lines) {
+        double rowByRowMillis = measure(() -> insertRowByRow(lines));
+        double batchedMillis = measure(() -> saveBatched(lines));
+        System.out.printf("%,d lines: row by row %.1f ms (%.0f rows/s), batched %.1f ms (%.0f rows/s), %.1fx%n",
+                lines, rowByRowMillis, lines / rowByRowMillis * 1000, batchedMillis, lines / batchedMillis * 1000,
+                rowByRowMillis / batchedMillis);
+
+        List<String> statements = statementRecorder.record(() -> saveBatched(lines));
+        assertThat(statements).filteredOn(sql -> sql.toLowerCase().startsWith("insert into order_items"))
+                .hasSize((lines + BATCH_SIZE - 1) / BATCH_SIZE);
+    }
+
+    // The previous behaviour: every insert is its own round trip and returns its id
+    private void insertRowByRow(int lines) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < lines; i++) {
+                jdbcTemplate.queryForObject("INSERT INTO order_items (id, order_id, product_id, quantity, unit_price, "
+                                + "subtotal) VALUES (nextval('order_items_seq'), ?, ?, 1, 2.50, 2.50) RETURNING id",
+                        Long.class, orderId, productId);
+            }
+        });
+    }
+
+    private void saveBatched(int lines) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Order order = orderRepository.getReferenceById(orderId);
+            Product product = productRepository.getReferenceById(productId);
+            List<OrderItem> items = new ArrayList<>(lines);
+            for (int i = 0; i < lines; i++) {
+                OrderItem item = new OrderItem();
+                item.setOrder(order);
+                item.setProduct(product);
+                item.setQuantity(1);
+                item.setUnitPrice(new BigDecimal("2.50"));
+                item.setSubtotal(new BigDecimal("2.50"));
+                items.add(item);
+            }
+            orderItemRepository.saveAll(items);
+        });
+    }
+
+    private double measure(Runnable insert) {
+        insert.run();
+        long[] samples = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            jdbcTemplate.update("DELETE FROM order_items WHERE order_id = ?", orderId);
+            long startedAt = System.nanoTime();
+            insert.run();
+            samples[i] = System.nanoTime() - startedAt;
+        }
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id = ?", orderId);
+        Arrays.sort(samples);
+        return samples[ROUNDS / 2] / 1e6;
+    }
+}
@@ -0,0 +1,187 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.TestData;
+import com.harvestdirect.app.dto.ProductCard;
+import com.harvestdirect.app.event.ProductChangedEvent;
+import com.harvestdirect.app.event.ProductStockChangedEvent;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.model.User;
+import com.harvestdirect.app.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Runs a second product cache next to the application's, with its own listening
+ * connection, as another node would, and checks what reaches it through Postgres
+ * notifications, and which product changes it republishes to its own listeners.
+ * Needs a Postgres database.
+ */
+@SpringBootTest
+@Import(TestData.class)
+@EnabledIfEnvironmentVariable(named = "DATABASE_URL", matches = ".+")
+class ProductCacheNotificationTest {
+
+    private static final Duration DELIVERY_TIMEOUT = Duration.ofSeconds(10);
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TestData testData;
+
+    @Value("${spring.datasource.url}")
+    private String databaseUrl;
+
+    @Value("${spring.datasource.username}")
+    private String databaseUsername;
+
+    @Value("${spring.datasource.password}")
+    private String databasePassword;
+
+    private final List<Object> otherNodeEvents = new CopyOnWriteArrayList<>();
+    private SimpleMeterRegistry otherNodeMetrics;
+    private ProductCache otherNode;
+    private User seller;
+
+    @BeforeEach
+    void startOtherNode() {
+        otherNodeMetrics = new SimpleMeterRegistry();
+        otherNode = new ProductCache(otherNodeMetrics, jdbcTemplate, productRepository, otherNodeEvents::add,
+                100, 10, 300, true, databaseUrl, databaseUsername, databasePassword);
+        otherNode.startListening();
+        seller = testData.user(User.UserRole.FISHERMAN);
+
+        // Notifications sent before the LISTEN are lost, so wait until one gets through
+        await().atMost(DELIVERY_TIMEOUT).until(() -> {
+            jdbcTemplate.queryForList("SELECT pg_notify('product_cache', 'probe 0')");
+            return remoteInvalidations() > 0;
+        });
+    }
+
+    @AfterEach
+    void stopOtherNode() {
+        otherNode.stopListening();
+    }
+
+    @Test
+    void committedStockChangeEvictsTheOtherNode() {
+        Product product = testData.product(seller, "Seafood", 10);
+        AtomicInteger loads = new AtomicInteger();
+        cacheOnOtherNode(product, loads);
+
+        productService.updateProductQuantity(product.getId(), 4);
+
+        await().atMost(DELIVERY_TIMEOUT).until(() -> {
+            cacheOnOtherNode(product, loads);
+            return loads.get() == 2;
+        });
+    }
+
+    @Test
+    void committedStockChangeReachesTheOtherNodesIndexes() {
+        Product product = testData.product(seller, "Seafood", 10);
+
+        productService.updateProductQuantity(product.getId(), 0);
+
+        await().atMost(DELIVERY_TIMEOUT).untilAsserted(() -> assertThat(otherNodeEvents)
+                .filteredOn(ProductChangedEvent.class::isInstance)
+                .map(ProductChangedEvent.class::cast)
+                .filteredOn(event -> event.productId().equals(product.getId()))
+                .singleElement()
+                .satisfies(event -> {
+                    assertThat(event.product().getQuantity()).isZero();
+                    assertThat(event.product().getIsAvailable()).isFalse();
+                    assertThat(event.product().getSeller().getId()).isEqualTo(seller.getId());
+                }));
+    }
+
+    @Test
+    void rolledBackChangeIsNotSent() {
+        Product rolledBack = testData.product(seller, "Seafood", 10);
+        Product committed = testData.product(seller, "Seafood", 10);
+        AtomicInteger rolledBackLoads = new AtomicInteger();
+        AtomicInteger committedLoads = new AtomicInteger();
+        cacheOnOtherNode(rolledBack, rolledBackLoads);
+        cacheOnOtherNode(committed, committedLoads);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            eventPublisher.publishEvent(new ProductStockChangedEvent(rolledBack.getId(), 1, true));
+            status.setRollbackOnly();
+        });
+        productService.updateProductQuantity(committed.getId(), 3);
+
+        // Notifications arrive in commit order, so once the later one is in the earlier one would be too
+        await().atMost(DELIVERY_TIMEOUT).until(() -> {
+            cacheOnOtherNode(committed, committedLoads);
+            return committedLoads.get() == 2;
+        });
+        cacheOnOtherNode(rolledBack, rolledBackLoads);
+        assertThat(rolledBackLoads).hasValue(1);
+    }
+
+    @Test
+    void transactionChangingSeveralProductsSendsOneNotification() {
+        Product first = testData.product(seller, "Seafood", 10);
+        Product second = testData.product(seller, "Seafood", 10);
+        AtomicInteger firstLoads = new AtomicInteger();
+        AtomicInteger secondLoads = new AtomicInteger();
+        cacheOnOtherNode(first, firstLoads);
+        cacheOnOtherNode(second, secondLoads);
+        double before = remoteInvalidations();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            eventPublisher.publishEvent(new ProductStockChangedEvent(first.getId(), 9, true));
+            eventPublisher.publishEvent(new ProductStockChangedEvent(second.getId(), 9, true));
+            eventPublisher.publishEvent(new ProductStockChangedEvent(first.getId(), 8, true));
+        });
+
+        await().atMost(DELIVERY_TIMEOUT).until(() -> remoteInvalidations() > before);
+        cacheOnOtherNode(first, firstLoads);
+        cacheOnOtherNode(second, secondLoads);
+        assertThat(firstLoads).hasValue(2);
+        assertThat(secondLoads).hasValue(2);
+        assertThat(remoteInvalidations()).isEqualTo(before + 1);
+    }
+
+    private void cacheOnOtherNode(Product product, AtomicInteger loads) {
+        otherNode.getProduct(product.getId(), () -> {
+            loads.incrementAndGet();
+            return Optional.of(ProductCard.from(product));
+        });
+    }
+
+    private double remoteInvalidations() {
+        return otherNodeMetrics.counter("catalog.cache.remote.invalidations").count();
+    }
+}
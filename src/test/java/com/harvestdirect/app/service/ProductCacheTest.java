@@ -0,0 +1,138 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.event.CatalogReloadEvent;
+import com.harvestdirect.app.event.ProductChangedEvent;
+import com.harvestdirect.app.event.ProductStockChangedEvent;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ProductCacheTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ProductRepository productRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private ProductCache productCache;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        productRepository = mock(ProductRepository.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        productCache = new ProductCache(new SimpleMeterRegistry(), jdbcTemplate, productRepository, eventPublisher,
+                100, 10, 60, true, "jdbc:postgresql://localhost/test", "", "");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void transactionSendsOneNotificationForAllChangedProducts() {
+        TransactionSynchronizationManager.initSynchronization();
+        productCache.notifyProductStockChanged(new ProductStockChangedEvent(1L, 5, true));
+        productCache.notifyProductStockChanged(new ProductStockChangedEvent(2L, 0, false));
+        productCache.notifyProductStockChanged(new ProductStockChangedEvent(1L, 4, true));
+        verifyNoInteractions(jdbcTemplate);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.beforeCommit(false));
+
+        verify(jdbcTemplate).queryForList(eq("SELECT pg_notify(?, ?)"), eq("product_cache"), endsWith(" 1,2"));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void rolledBackTransactionSendsNothing() {
+        TransactionSynchronizationManager.initSynchronization();
+        productCache.notifyProductStockChanged(new ProductStockChangedEvent(1L, 5, true));
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void changeOutsideTransactionNotifiesAtOnce() {
+        productCache.notifyProductStockChanged(new ProductStockChangedEvent(7L, 5, true));
+
+        verify(jdbcTemplate).queryForList(eq("SELECT pg_notify(?, ?)"), eq("product_cache"), endsWith(" 7"));
+    }
+
+    @Test
+    void tooManyProductsForOnePayloadNotifyAll() {
+        TransactionSynchronizationManager.initSynchronization();
+        for (long id = 1_000_000; id < 1_002_000; id++) {
+            productCache.notifyProductStockChanged(new ProductStockChangedEvent(id, 1, true));
+        }
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.beforeCommit(false));
+
+        verify(jdbcTemplate).queryForList(eq("SELECT pg_notify(?, ?)"), eq("product_cache"), endsWith(" *"));
+    }
+
+    @Test
+    void remoteChangeIsReloadedAndPublishedWithoutBeingSentBack() {
+        Product changed = new Product();
+        changed.setId(5L);
+        changed.setQuantity(3);
+        when(productRepository.findWithSellerByIdIn(List.of(5L, 6L))).thenReturn(List.of(changed));
+        // The application's own listener hears the republished events, as it would in the context
+        doAnswer(invocation -> {
+            productCache.notifyProductChanged(invocation.getArgument(0));
+            return null;
+        }).when(eventPublisher).publishEvent(any(ProductChangedEvent.class));
+
+        productCache.onNotification("other-node 5,6");
+
+        ArgumentCaptor<ProductChangedEvent> events = ArgumentCaptor.forClass(ProductChangedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertThat(events.getAllValues()).containsExactly(
+                new ProductChangedEvent(5L, changed), new ProductChangedEvent(6L, null));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void remoteChangeTooLargeToListReloadsTheCatalog() {
+        productCache.onNotification("other-node *");
+
+        verify(eventPublisher).publishEvent(any(CatalogReloadEvent.class));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void ownNotificationsAreIgnored() {
+        productCache.notifyProductStockChanged(new ProductStockChangedEvent(7L, 5, true));
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).queryForList(anyString(), eq("product_cache"), payload.capture());
+
+        productCache.onNotification(payload.getValue());
+
+        verifyNoInteractions(productRepository, eventPublisher);
+    }
+
+    @Test
+    void badPayloadIsLoggedAndSkipped() {
+        productCache.onNotification("other-node 5,x");
+        productCache.onNotification("other-node");
+
+        verifyNoInteractions(productRepository, eventPublisher);
+    }
+}
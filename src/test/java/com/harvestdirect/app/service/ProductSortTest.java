@@ -0,0 +1,80 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProductSortTest {
+
+    @ParameterizedTest
+    @EnumSource(ProductSort.class)
+    void cursorRoundTripsToTheLastProductsKeys(ProductSort sort) {
+        Product product = new Product();
+        product.setId(42L);
+        product.setCreatedAt(new Date(1_700_000_000_123L));
+        product.setPrice(new BigDecimal("12.50"));
+        product.setName("Crab, \"dressed\"\nwhole");
+
+        KeysetScrollPosition position = (KeysetScrollPosition) sort.positionOf(sort.cursorAfter(product));
+
+        assertThat(position.getDirection()).isEqualTo(ScrollPosition.Direction.FORWARD);
+        assertThat(position.getKeys()).containsEntry("id", 42L).hasSize(2);
+        Object key = position.getKeys().get(sort.toSort().iterator().next().getProperty());
+        switch (sort) {
+            case NEWEST -> assertThat(key).isEqualTo(product.getCreatedAt());
+            case PRICE_LOW, PRICE_HIGH -> assertThat(key).isEqualTo(new BigDecimal("12.50"));
+            case NAME -> assertThat(key).isEqualTo(product.getName());
+        }
+    }
+
+    @Test
+    void cursorsAreUrlSafe() {
+        Product product = new Product();
+        product.setId(7L);
+        product.setName("???>>>~~~");
+
+        assertThat(ProductSort.NAME.cursorAfter(product)).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void missingCursorStartsAtTheFirstPage() {
+        assertThat(ProductSort.NEWEST.positionOf(null).isInitial()).isTrue();
+        assertThat(ProductSort.NEWEST.positionOf("").isInitial()).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"not base64!", "bm8tc2VwYXJhdG9y", "YWJjCnh5eg"})
+    void rejectsInvalidCursors(String cursor) {
+        assertThatThrownBy(() -> ProductSort.PRICE_LOW.positionOf(cursor))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void sortsEndWithTheIdInTheSameDirection() {
+        for (ProductSort sort : ProductSort.values()) {
+            Sort.Order last = sort.toSort().toList().get(1);
+            assertThat(last.getProperty()).isEqualTo("id");
+            assertThat(last.getDirection()).isEqualTo(sort.toSort().toList().get(0).getDirection());
+        }
+    }
+
+    @Test
+    void parsesRequestParameters() {
+        assertThat(ProductSort.from("price_high")).isEqualTo(ProductSort.PRICE_HIGH);
+        assertThat(ProductSort.from("Name")).isEqualTo(ProductSort.NAME);
+        assertThat(ProductSort.from("popular")).isEqualTo(ProductSort.NEWEST);
+        assertThat(ProductSort.from(null)).isEqualTo(ProductSort.NEWEST);
+        assertThat(ProductSort.PRICE_LOW.getParameter()).isEqualTo("price_low");
+    }
+}
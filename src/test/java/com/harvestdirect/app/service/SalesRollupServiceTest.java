@@ -0,0 +1,122 @@
+package com.harvestdirect.app.service;
+
+import com.harvestdirect.app.model.Order;
+import com.harvestdirect.app.model.OrderItem;
+import com.harvestdirect.app.model.Product;
+import com.harvestdirect.app.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.*;
+
+class SalesRollupServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private SalesRollupService salesRollupService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        salesRollupService = new SalesRollupService(null, null, null, jdbcTemplate, null, 1, 1);
+    }
+
+    @Test
+    void recordOrdersSendsOneBatchPerRollupWithAmountsSummedPerRow() {
+        User buyer = user(1L);
+        Order first = order(buyer, user(20L), new Date());
+        Order second = order(buyer, user(10L), first.getOrderDate());
+
+        salesRollupService.recordOrders(List.of(
+                new SalesRollupService.PlacedOrder(first,
+                        List.of(item("Fruits", "2.00", 3), item("Fruits", "1.00", 1), item("Dairy", "4.00", 1))),
+                new SalesRollupService.PlacedOrder(second, List.of(item("Fruits", "5.00", 2)))));
+
+        List<Object[]> sellerRows = batch("seller_daily_sales");
+        assertThat(sellerRows).extracting(row -> row[0], row -> row[2], row -> row[3]).containsExactly(
+                tuple(10L, "Fruits", new BigDecimal("10.00")),
+                tuple(20L, "Dairy", new BigDecimal("4.00")),
+                tuple(20L, "Fruits", new BigDecimal("7.00")));
+
+        List<Object[]> buyerRows = batch("buyer_daily_purchases");
+        assertThat(buyerRows).extracting(row -> row[0], row -> row[2], row -> row[3]).containsExactly(
+                tuple(1L, "Dairy", new BigDecimal("4.00")),
+                tuple(1L, "Fruits", new BigDecimal("17.00")));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void ordersWhoseEntitiesReferToEachOtherAreRecorded() {
+        // The seller's products point back at the seller, so hashing the order never ends
+        User seller = user(2L);
+        Product product = new Product();
+        product.setCategory("Seafood");
+        product.setSeller(seller);
+        seller.setProducts(new HashSet<>());
+        seller.getProducts().add(product);
+        Order order = order(user(1L), seller, new Date());
+        OrderItem item = item("Seafood", "3.00", 1);
+        item.setProduct(product);
+        item.setOrder(order);
+
+        salesRollupService.recordOrder(order, List.of(item));
+
+        assertThat(batch("seller_daily_sales")).singleElement()
+                .satisfies(row -> assertThat(row[3]).isEqualTo(new BigDecimal("3.00")));
+    }
+
+    @Test
+    void reverseOrderSubtractsTheOrder() {
+        Order order = order(user(1L), user(2L), new Date());
+
+        salesRollupService.reverseOrder(order, List.of(item("Seafood", "3.00", 2)));
+
+        assertThat(batch("seller_daily_sales")).singleElement()
+                .satisfies(row -> assertThat(row[3]).isEqualTo(new BigDecimal("-6.00")));
+    }
+
+    @Test
+    void ordersWithoutItemsWriteNothing() {
+        salesRollupService.recordOrders(List.of(
+                new SalesRollupService.PlacedOrder(order(user(1L), user(2L), new Date()), List.of())));
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private List<Object[]> batch(String table) {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(contains(table), rows.capture());
+        return rows.getValue();
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    private static Order order(User buyer, User seller, Date orderDate) {
+        Order order = new Order();
+        order.setBuyer(buyer);
+        order.setSeller(seller);
+        order.setOrderDate(orderDate);
+        return order;
+    }
+
+    private static OrderItem item(String category, String unitPrice, int quantity) {
+        Product product = new Product();
+        product.setCategory(category);
+        OrderItem item = new OrderItem();
+        item.setProduct(product);
+        item.setUnitPrice(new BigDecimal(unitPrice));
+        item.setQuantity(quantity);
+        return item;
+    }
+}
@@ -0,0 +1,124 @@
+package com.harvestdirect.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdBitmapTest {
+
+    @Test
+    void addsRemovesAndCountsIds() {
+        IdBitmap bitmap = new IdBitmap();
+        bitmap.add(3);
+        bitmap.add(70_000);
+        bitmap.add(3);
+
+        assertThat(bitmap.contains(3)).isTrue();
+        assertThat(bitmap.contains(70_000)).isTrue();
+        assertThat(bitmap.contains(4)).isFalse();
+        assertThat(bitmap.contains(-1)).isFalse();
+        assertThat(bitmap.cardinality()).isEqualTo(2);
+
+        bitmap.remove(3);
+        bitmap.remove(70_000);
+        bitmap.remove(-5);
+        assertThat(bitmap.isEmpty()).isTrue();
+    }
+
+    @Test
+    void rejectsNegativeIds() {
+        assertThatThrownBy(() -> new IdBitmap().add(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void staysCorrectAcrossArrayAndBitmapGroups() {
+        Random random = new Random(3);
+        IdBitmap bitmap = new IdBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        // A dense group that turns into a bitmap, then thins out again, next to sparse ones
+        for (int i = 0; i < 20_000; i++) {
+            int id = random.nextBoolean() ? random.nextInt(10_000) : random.nextInt(1 << 24);
+            bitmap.add(id);
+            expected.add(id);
+        }
+        for (int i = 0; i < 9_000; i++) {
+            int id = random.nextInt(10_000);
+            bitmap.remove(id);
+            expected.remove(id);
+        }
+
+        assertThat(bitmap.cardinality()).isEqualTo(expected.size());
+        assertThat(bitmap.descendingBefore(Long.MAX_VALUE, expected.size() + 1))
+                .containsExactly(expected.descendingSet().stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    @Test
+    void intersectsAndUnitesLikeSets() {
+        Random random = new Random(5);
+        IdBitmap a = new IdBitmap();
+        IdBitmap b = new IdBitmap();
+        Set<Integer> setA = new HashSet<>();
+        Set<Integer> setB = new HashSet<>();
+        for (int i = 0; i < 30_000; i++) {
+            int id = random.nextInt(200_000);
+            if (random.nextBoolean()) {
+                a.add(id);
+                setA.add(id);
+            } else {
+                b.add(id);
+                setB.add(id);
+            }
+        }
+        // Sparse ids in groups only one side has
+        a.add(5_000_000);
+        setA.add(5_000_000);
+        b.add(9_000_000);
+        setB.add(9_000_000);
+
+        Set<Integer> intersection = new HashSet<>(setA);
+        intersection.retainAll(setB);
+        Set<Integer> union = new HashSet<>(setA);
+        union.addAll(setB);
+
+        assertThat(toSet(IdBitmap.and(a, b))).isEqualTo(intersection);
+        assertThat(IdBitmap.andCardinality(a, b)).isEqualTo(intersection.size());
+        assertThat(toSet(IdBitmap.or(a, b))).isEqualTo(union);
+        // The operands are left untouched
+        assertThat(toSet(a)).isEqualTo(setA);
+    }
+
+    @Test
+    void listsTheHighestIdsBelowABound() {
+        IdBitmap bitmap = new IdBitmap();
+        for (int id : new int[] {1, 5, 65_535, 65_536, 65_540, 200_000}) {
+            bitmap.add(id);
+        }
+
+        assertThat(bitmap.descendingBefore(65_540, 3)).containsExactly(65_536, 65_535, 5);
+        assertThat(bitmap.descendingBefore(2, 10)).containsExactly(1);
+        assertThat(bitmap.descendingBefore(0, 10)).isEmpty();
+    }
+
+    @Test
+    void copiesAreIndependent() {
+        IdBitmap bitmap = new IdBitmap();
+        bitmap.add(1);
+        IdBitmap copy = bitmap.copy();
+        copy.add(2);
+        bitmap.remove(1);
+
+        assertThat(copy.contains(1)).isTrue();
+        assertThat(bitmap.contains(2)).isFalse();
+    }
+
+    private static Set<Integer> toSet(IdBitmap bitmap) {
+        Set<Integer> ids = new HashSet<>();
+        for (int id : bitmap.descendingBefore(Long.MAX_VALUE, (int) bitmap.cardinality())) {
+            ids.add(id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,58 @@
+package com.harvestdirect.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongKeyedAccumulatorTest {
+
+    @Test
+    void sumsCountersPerKey() {
+        LongKeyedAccumulator accumulator = new LongKeyedAccumulator(4);
+        accumulator.add(7, 2, 10);
+        accumulator.add(3, 1, 5);
+        accumulator.add(7, 3, 1);
+
+        assertThat(accumulator.size()).isEqualTo(2);
+        assertThat(accumulator.top(2)).containsExactly(
+                new TopK.Entry(7, 5, 11),
+                new TopK.Entry(3, 1, 5));
+    }
+
+    @Test
+    void keepsEveryKeyWhenGrowingPastTheExpectedSize() {
+        LongKeyedAccumulator accumulator = new LongKeyedAccumulator(1);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(3_000) * 1_000_003L;
+            accumulator.add(key, 1, 0);
+            expected.merge(key, 1L, Long::sum);
+        }
+
+        assertThat(accumulator.size()).isEqualTo(expected.size());
+        assertThat(accumulator.top(expected.size()))
+                .allSatisfy(entry -> assertThat(entry.primary()).isEqualTo(expected.get(entry.key())));
+    }
+
+    @Test
+    void handlesZeroAndNegativeKeys() {
+        LongKeyedAccumulator accumulator = new LongKeyedAccumulator(2);
+        accumulator.add(0, 1, 0);
+        accumulator.add(-5, 2, 0);
+        accumulator.add(0, 1, 0);
+
+        assertThat(accumulator.top(5)).containsExactly(
+                new TopK.Entry(-5, 2, 0),
+                new TopK.Entry(0, 2, 0));
+    }
+
+    @Test
+    void topOfEmptyAccumulatorIsEmpty() {
+        assertThat(new LongKeyedAccumulator(10).top(5)).isEmpty();
+    }
+}
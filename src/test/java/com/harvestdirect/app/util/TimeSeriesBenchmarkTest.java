@@ -0,0 +1,105 @@
+package com.harvestdirect.app.util;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares building a year of daily sales as a zero-filled TreeMap of BigDecimals,
+ * as the analytics service did, against filling a TimeSeries, and reports the time
+ * and the bytes allocated per request, also when the series is then rendered for the
+ * dashboard. Run with -Dbenchmark=true.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TimeSeriesBenchmarkTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    private static final LocalDate LAST_DAY = LocalDate.of(2024, 12, 31);
+    private static final int WARMUP_ROUNDS = 2_000;
+    private static final int MEASURED_ROUNDS = 2_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // The rollup only has rows for days with sales
+    @ParameterizedTest
+    @ValueSource(ints = {10, 50, 100})
+    void fillOneYear(int percentOfDaysWithSales) {
+        List<LocalDate> days = new ArrayList<>();
+        List<Long> cents = new ArrayList<>();
+        Random random = new Random(percentOfDaysWithSales);
+        for (LocalDate day = FIRST_DAY; !day.isAfter(LAST_DAY); day = day.plusDays(1)) {
+            if (random.nextInt(100) < percentOfDaysWithSales) {
+                days.add(day);
+                cents.add(100L + random.nextInt(1_000_000));
+            }
+        }
+
+        Measurement treeMap = measure(() -> treeMap(days, cents));
+        Measurement timeSeries = measure(() -> timeSeries(days, cents));
+        Measurement byDay = measure(() -> timeSeries(days, cents).toMap(TimeSeries.Granularity.DAY));
+        Measurement byMonth = measure(() -> timeSeries(days, cents).toMap(TimeSeries.Granularity.MONTH));
+        System.out.printf("%d%% of days with sales: TreeMap %.1f us, %,d bytes; TimeSeries %.1f us, %,d bytes;"
+                        + " rendered by day %.1f us, %,d bytes; rendered by month %.1f us, %,d bytes%n",
+                percentOfDaysWithSales, treeMap.micros(), treeMap.bytes(), timeSeries.micros(), timeSeries.bytes(),
+                byDay.micros(), byDay.bytes(), byMonth.micros(), byMonth.bytes());
+
+        assertThat(inCents(timeSeries(days, cents).toMap(TimeSeries.Granularity.DAY)))
+                .isEqualTo(inCents(treeMap(days, cents)));
+        assertThat(timeSeries.bytes()).isLessThan(treeMap.bytes());
+    }
+
+    // The previous approach: a zero entry for every day, then one BigDecimal per day with sales
+    private static Map<LocalDate, BigDecimal> treeMap(List<LocalDate> days, List<Long> cents) {
+        Map<LocalDate, BigDecimal> amounts = new TreeMap<>();
+        for (LocalDate day = FIRST_DAY; !day.isAfter(LAST_DAY); day = day.plusDays(1)) {
+            amounts.put(day, BigDecimal.ZERO);
+        }
+        for (int i = 0; i < days.size(); i++) {
+            amounts.put(days.get(i), BigDecimal.valueOf(cents.get(i), 2));
+        }
+        return amounts;
+    }
+
+    private static TimeSeries timeSeries(List<LocalDate> days, List<Long> cents) {
+        TimeSeries series = TimeSeries.ofDays(FIRST_DAY, LAST_DAY);
+        for (int i = 0; i < days.size(); i++) {
+            series.addCents(days.get(i), cents.get(i));
+        }
+        return series;
+    }
+
+    private static Map<LocalDate, Long> inCents(Map<LocalDate, BigDecimal> amounts) {
+        Map<LocalDate, Long> cents = new TreeMap<>();
+        amounts.forEach((day, amount) -> cents.put(day, TimeSeries.toCents(amount)));
+        return cents;
+    }
+
+    private static Measurement measure(Supplier<Object> request) {
+        Object sink = null;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink = request.get();
+        }
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink = request.get();
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        assertThat(sink).isNotNull();
+        return new Measurement(elapsed / 1e3 / MEASURED_ROUNDS, allocated / MEASURED_ROUNDS);
+    }
+
+    private record Measurement(double micros, long bytes) {
+    }
+}
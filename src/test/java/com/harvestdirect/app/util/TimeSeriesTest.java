@@ -0,0 +1,84 @@
+package com.harvestdirect.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class TimeSeriesTest {
+
+    private static final LocalDate WEDNESDAY = LocalDate.of(2024, 1, 31);
+
+    @Test
+    void coversEveryDayOfTheRangeInclusive() {
+        TimeSeries series = TimeSeries.ofDays(WEDNESDAY, WEDNESDAY.plusDays(6));
+
+        assertThat(series.days()).isEqualTo(7);
+        assertThat(series.toMap(TimeSeries.Granularity.DAY)).hasSize(7)
+                .allSatisfy((day, amount) -> assertThat(amount).isEqualByComparingTo("0"));
+    }
+
+    @Test
+    void ignoresDaysOutsideTheRange() {
+        TimeSeries series = TimeSeries.ofDays(WEDNESDAY, WEDNESDAY.plusDays(1));
+        series.addCents(WEDNESDAY.minusDays(1), 100);
+        series.addCents(WEDNESDAY, 250);
+        series.addCents(WEDNESDAY.plusDays(2), 100);
+
+        assertThat(series.totalCents()).isEqualTo(250);
+        assertThat(series.total()).isEqualTo(new BigDecimal("2.50"));
+    }
+
+    @Test
+    void bucketsByMondayWeeks() {
+        TimeSeries series = TimeSeries.ofDays(WEDNESDAY, WEDNESDAY.plusDays(7));
+        series.addCents(WEDNESDAY, 100);
+        series.addCents(LocalDate.of(2024, 2, 4), 200);
+        series.addCents(LocalDate.of(2024, 2, 5), 300);
+
+        Map<LocalDate, BigDecimal> weeks = series.toMap(TimeSeries.Granularity.WEEK);
+
+        assertThat(weeks).containsExactly(
+                entry(LocalDate.of(2024, 1, 29), new BigDecimal("3.00")),
+                entry(LocalDate.of(2024, 2, 5), new BigDecimal("3.00")));
+    }
+
+    @Test
+    void bucketsByCalendarMonth() {
+        TimeSeries series = TimeSeries.ofDays(WEDNESDAY, LocalDate.of(2024, 3, 1));
+        series.addCents(WEDNESDAY, 1);
+        series.addCents(LocalDate.of(2024, 2, 29), 2);
+        series.addCents(LocalDate.of(2024, 3, 1), 4);
+
+        assertThat(series.toMap(TimeSeries.Granularity.MONTH)).containsExactly(
+                entry(LocalDate.of(2024, 1, 1), new BigDecimal("0.01")),
+                entry(LocalDate.of(2024, 2, 1), new BigDecimal("0.02")),
+                entry(LocalDate.of(2024, 3, 1), new BigDecimal("0.04")));
+    }
+
+    @Test
+    void emptyRangeRendersNothing() {
+        TimeSeries series = TimeSeries.ofDays(WEDNESDAY, WEDNESDAY.minusDays(1));
+
+        assertThat(series.days()).isZero();
+        assertThat(series.toMap(TimeSeries.Granularity.DAY)).isEmpty();
+    }
+
+    @Test
+    void convertsBetweenAmountsAndCents() {
+        assertThat(TimeSeries.toCents(new BigDecimal("12.345"))).isEqualTo(1235);
+        assertThat(TimeSeries.toCents(new BigDecimal("-0.5"))).isEqualTo(-50);
+        assertThat(TimeSeries.toAmount(1999)).isEqualTo(new BigDecimal("19.99"));
+    }
+
+    @Test
+    void parsesGranularityLeniently() {
+        assertThat(TimeSeries.Granularity.from(" week ")).isEqualTo(TimeSeries.Granularity.WEEK);
+        assertThat(TimeSeries.Granularity.from("fortnight")).isEqualTo(TimeSeries.Granularity.DAY);
+        assertThat(TimeSeries.Granularity.from(null)).isEqualTo(TimeSeries.Granularity.DAY);
+    }
+}
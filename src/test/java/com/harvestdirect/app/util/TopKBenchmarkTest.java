@@ -0,0 +1,90 @@
+package com.harvestdirect.app.util;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares ranking sold products with the accumulator and top-K selector against
+ * the map-per-product and full sort it replaced. Run with -Dbenchmark=true.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TopKBenchmarkTest {
+
+    private static final int LIMIT = 10;
+    private static final int LINES_PER_PRODUCT = 3;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    @ParameterizedTest
+    @ValueSource(ints = {10_000, 100_000, 1_000_000})
+    void rankTopSellingProducts(int distinctProducts) {
+        long[][] lines = orderLines(distinctProducts);
+
+        double sortMillis = measure(() -> sortAll(lines));
+        double topKMillis = measure(() -> selectTopK(lines));
+        System.out.printf("%,d products: full sort %.1f ms, top-K %.1f ms (%.1fx)%n",
+                distinctProducts, sortMillis, topKMillis, sortMillis / topKMillis);
+
+        assertThat(selectTopK(lines)).containsExactlyElementsOf(sortAll(lines));
+    }
+
+    private static long[][] orderLines(int distinctProducts) {
+        Random random = new Random(distinctProducts);
+        long[][] lines = new long[distinctProducts * LINES_PER_PRODUCT][];
+        for (int i = 0; i < lines.length; i++) {
+            long quantity = 1 + random.nextInt(50);
+            lines[i] = new long[] {i % distinctProducts, quantity, quantity * (100 + random.nextInt(900))};
+        }
+        return lines;
+    }
+
+    private static List<Long> selectTopK(long[][] lines) {
+        LongKeyedAccumulator totals = new LongKeyedAccumulator(lines.length / LINES_PER_PRODUCT);
+        for (long[] line : lines) {
+            totals.add(line[0], line[1], line[2]);
+        }
+        return totals.top(LIMIT).stream().map(TopK.Entry::key).toList();
+    }
+
+    // The previous approach: one map per product, every product sorted, then cut to the limit
+    private static List<Long> sortAll(long[][] lines) {
+        Map<Long, Map<String, Object>> byProduct = new HashMap<>();
+        for (long[] line : lines) {
+            Map<String, Object> row = byProduct.computeIfAbsent(line[0], id -> {
+                Map<String, Object> created = new HashMap<>();
+                created.put("productId", id);
+                created.put("quantity", 0L);
+                created.put("revenue", 0L);
+                return created;
+            });
+            row.put("quantity", (Long) row.get("quantity") + line[1]);
+            row.put("revenue", (Long) row.get("revenue") + line[2]);
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(byProduct.values());
+        rows.sort((a, b) -> {
+            int byQuantity = Long.compare((Long) b.get("quantity"), (Long) a.get("quantity"));
+            if (byQuantity != 0) {
+                return byQuantity;
+            }
+            int byRevenue = Long.compare((Long) b.get("revenue"), (Long) a.get("revenue"));
+            return byRevenue != 0 ? byRevenue : Long.compare((Long) a.get("productId"), (Long) b.get("productId"));
+        });
+        return rows.subList(0, Math.min(LIMIT, rows.size())).stream().map(row -> (Long) row.get("productId")).toList();
+    }
+
+    private static double measure(Runnable action) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            action.run();
+        }
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            action.run();
+        }
+        return (System.nanoTime() - startedAt) / 1e6 / MEASURED_ROUNDS;
+    }
+}
@@ -0,0 +1,78 @@
+package com.harvestdirect.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TopKTest {
+
+    private static final Comparator<TopK.Entry> RANKING = Comparator.comparingLong(TopK.Entry::primary).reversed()
+            .thenComparing(Comparator.comparingLong(TopK.Entry::secondary).reversed())
+            .thenComparingLong(TopK.Entry::key);
+
+    @Test
+    void keepsTheHighestRankedEntriesBestFirst() {
+        TopK topK = new TopK(3);
+        topK.offer(1, 10, 0);
+        topK.offer(2, 50, 0);
+        topK.offer(3, 30, 0);
+        topK.offer(4, 40, 0);
+        topK.offer(5, 20, 0);
+
+        assertThat(topK.toSortedList()).extracting(TopK.Entry::key).containsExactly(2L, 4L, 3L);
+    }
+
+    @Test
+    void breaksTiesBySecondaryScoreThenLowerKey() {
+        TopK topK = new TopK(3);
+        topK.offer(9, 5, 1);
+        topK.offer(7, 5, 2);
+        topK.offer(3, 5, 1);
+        topK.offer(1, 4, 100);
+
+        assertThat(topK.toSortedList()).extracting(TopK.Entry::key).containsExactly(7L, 3L, 9L);
+    }
+
+    @Test
+    void returnsEverythingWhenFewerCandidatesThanCapacity() {
+        TopK topK = new TopK(10);
+        topK.offer(1, 1, 0);
+        topK.offer(2, 2, 0);
+
+        assertThat(topK.size()).isEqualTo(2);
+        assertThat(topK.toSortedList()).extracting(TopK.Entry::key).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void zeroCapacitySelectsNothing() {
+        TopK topK = new TopK(0);
+        topK.offer(1, 1, 1);
+
+        assertThat(topK.toSortedList()).isEmpty();
+    }
+
+    @Test
+    void rejectsNegativeCapacity() {
+        assertThatThrownBy(() -> new TopK(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void matchesAFullSortOnRandomInput() {
+        Random random = new Random(42);
+        List<TopK.Entry> candidates = IntStream.range(0, 5_000)
+                .mapToObj(key -> new TopK.Entry(key, random.nextInt(100), random.nextInt(10)))
+                .toList();
+
+        TopK topK = new TopK(25);
+        candidates.forEach(entry -> topK.offer(entry.key(), entry.primary(), entry.secondary()));
+
+        assertThat(topK.toSortedList()).containsExactlyElementsOf(
+                candidates.stream().sorted(RANKING).limit(25).toList());
+    }
+}